@@ -0,0 +1,247 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Колоночное хранилище меток: параллельные массивы координат и остальных полей, отсортированные
+// по long-геохэшу максимальной точности; объектов Marker хранилище не держит. Ячейка любой точности - это непрерывный диапазон ключей, который
+// находится бинарным поиском, поэтому точность при добавлении не важна, а искать можно с любой.
+// Новые метки копятся в неотсортированном хвосте и вливаются в отсортированную часть перед поиском.
+// Поиск собирает новые объекты Marker со всеми полями из колонок. Ключ, проверка расстояния
+// и координаты найденной метки берутся из колонок: с форматом FLOAT/FIXED_POINT они округлены,
+// и метка у самой границы круга может отличаться от результата точного поиска по исходным координатам
+public class ColumnarGeohashStorage implements MarkerStore {
+
+    // Как хранить координаты: double (16 байт на метку), float (8 байт, ~1 м) или
+    // целые в 1e-7 градуса (8 байт, ~1 см)
+    public enum CoordinateFormat {
+        DOUBLE, FLOAT, FIXED_POINT
+    }
+
+    private static final int KEY_PRECISION = GeoHashConverter.MAX_PRECISION;
+    private static final double FIXED_POINT_SCALE = 1e7;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final CoordinateFormat format;
+    private long[] hashes;
+    private double[] latDouble, lonDouble;
+    private float[] latFloat, lonFloat;
+    private int[] latFixed, lonFixed;
+    // Строки не копируются: колонка держит те же ссылки, что и добавленная метка
+    private String[] ids, names, userIds, statuses;
+    private long[] timestamps;
+    private int size;
+    // Метки [0, sortedSize) упорядочены по геохэшу, [sortedSize, size) ждут слияния
+    private int sortedSize;
+
+    public ColumnarGeohashStorage() {
+        this(CoordinateFormat.DOUBLE);
+    }
+
+    public ColumnarGeohashStorage(CoordinateFormat format) {
+        this.format = format;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // Точность игнорируется: метка всегда индексируется с максимальной точностью
+    @Override
+    public void addMarker(Marker marker, int precision) {
+        if (size == hashes.length) {
+            resize(size * 2);
+        }
+        setCoordinates(size, marker.lat, marker.lon);
+        hashes[size] = GeoHashConverter.encodeToLong(lat(size), lon(size), KEY_PRECISION);
+        ids[size] = marker.id;
+        names[size] = marker.name;
+        userIds[size] = marker.userId;
+        statuses[size] = marker.status;
+        timestamps[size] = marker.timestamp;
+        size++;
+    }
+
+    @Override
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm, int precision) {
+        mergePending();
+
+        LongList ranges = new LongList();
+        GeohashCovering.coverKeyRanges(centerLat, centerLon, radiusKm, precision, ranges);
+
+        List<Marker> result = new ArrayList<>();
+        for (int r = 0; r < ranges.size(); r += 2) {
+            long end = ranges.get(r + 1);
+            for (int j = GeohashSort.lowerBound(hashes, 0, size, ranges.get(r)); j < size && hashes[j] < end; j++) {
+                double lat = lat(j);
+                double lon = lon(j);
+                if (GeoMath.distanceKm(centerLat, centerLon, lat, lon) <= radiusKm) {
+                    Marker marker = new Marker(ids[j], lat, lon, names[j]);
+                    marker.userId = userIds[j];
+                    marker.status = statuses[j];
+                    marker.timestamp = timestamps[j];
+                    result.add(marker);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Освобождает запас емкости массивов после загрузки
+    public void trimToSize() {
+        mergePending();
+        resize(Math.max(size, 1));
+    }
+
+    @Override
+    public long estimatedMemoryBytes() {
+        int capacity = hashes.length;
+        long coordinates = format == CoordinateFormat.DOUBLE
+                ? 2 * MemoryFootprint.array(capacity, 8)
+                : 2 * MemoryFootprint.array(capacity, 4);
+        // Сами строки общие с вызывающим кодом и не считаются
+        return MemoryFootprint.object(13 * MemoryFootprint.REFERENCE + 2 * 4)
+                + 2 * MemoryFootprint.array(capacity, 8)
+                + coordinates
+                + 4 * MemoryFootprint.array(capacity, MemoryFootprint.REFERENCE);
+    }
+
+    // Вливает неотсортированный хвост в отсортированную часть за O(n) после сортировки хвоста
+    private void mergePending() {
+        if (sortedSize == size) {
+            return;
+        }
+        int[] pending = GeohashSort.sortedOrder(hashes, sortedSize, size);
+        int[] order = new int[size];
+        int a = 0;
+        int b = 0;
+        for (int k = 0; k < size; k++) {
+            // При равных ключах раньше идут старые метки
+            if (b == pending.length || (a < sortedSize && hashes[a] <= hashes[pending[b]])) {
+                order[k] = a++;
+            } else {
+                order[k] = pending[b++];
+            }
+        }
+        permute(order);
+        sortedSize = size;
+    }
+
+    private double lat(int i) {
+        switch (format) {
+            case FLOAT:
+                return latFloat[i];
+            case FIXED_POINT:
+                return latFixed[i] / FIXED_POINT_SCALE;
+            default:
+                return latDouble[i];
+        }
+    }
+
+    private double lon(int i) {
+        switch (format) {
+            case FLOAT:
+                return lonFloat[i];
+            case FIXED_POINT:
+                return lonFixed[i] / FIXED_POINT_SCALE;
+            default:
+                return lonDouble[i];
+        }
+    }
+
+    private void setCoordinates(int i, double lat, double lon) {
+        switch (format) {
+            case FLOAT:
+                latFloat[i] = (float) lat;
+                lonFloat[i] = (float) lon;
+                break;
+            case FIXED_POINT:
+                latFixed[i] = (int) Math.round(lat * FIXED_POINT_SCALE);
+                lonFixed[i] = (int) Math.round(lon * FIXED_POINT_SCALE);
+                break;
+            default:
+                latDouble[i] = lat;
+                lonDouble[i] = lon;
+        }
+    }
+
+    private void allocate(int capacity) {
+        hashes = new long[capacity];
+        ids = new String[capacity];
+        names = new String[capacity];
+        userIds = new String[capacity];
+        statuses = new String[capacity];
+        timestamps = new long[capacity];
+        switch (format) {
+            case FLOAT:
+                latFloat = new float[capacity];
+                lonFloat = new float[capacity];
+                break;
+            case FIXED_POINT:
+                latFixed = new int[capacity];
+                lonFixed = new int[capacity];
+                break;
+            default:
+                latDouble = new double[capacity];
+                lonDouble = new double[capacity];
+        }
+    }
+
+    private void resize(int capacity) {
+        hashes = Arrays.copyOf(hashes, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        names = Arrays.copyOf(names, capacity);
+        userIds = Arrays.copyOf(userIds, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        switch (format) {
+            case FLOAT:
+                latFloat = Arrays.copyOf(latFloat, capacity);
+                lonFloat = Arrays.copyOf(lonFloat, capacity);
+                break;
+            case FIXED_POINT:
+                latFixed = Arrays.copyOf(latFixed, capacity);
+                lonFixed = Arrays.copyOf(lonFixed, capacity);
+                break;
+            default:
+                latDouble = Arrays.copyOf(latDouble, capacity);
+                lonDouble = Arrays.copyOf(lonDouble, capacity);
+        }
+    }
+
+    // Переставляет все колонки: новая позиция k получает метку order[k]
+    private void permute(int[] order) {
+        long[] oldHashes = hashes;
+        String[] oldIds = ids, oldNames = names, oldUserIds = userIds, oldStatuses = statuses;
+        long[] oldTimestamps = timestamps;
+        double[] oldLatDouble = latDouble, oldLonDouble = lonDouble;
+        float[] oldLatFloat = latFloat, oldLonFloat = lonFloat;
+        int[] oldLatFixed = latFixed, oldLonFixed = lonFixed;
+        allocate(oldHashes.length);
+
+        for (int k = 0; k < order.length; k++) {
+            int from = order[k];
+            hashes[k] = oldHashes[from];
+            ids[k] = oldIds[from];
+            names[k] = oldNames[from];
+            userIds[k] = oldUserIds[from];
+            statuses[k] = oldStatuses[from];
+            timestamps[k] = oldTimestamps[from];
+            switch (format) {
+                case FLOAT:
+                    latFloat[k] = oldLatFloat[from];
+                    lonFloat[k] = oldLonFloat[from];
+                    break;
+                case FIXED_POINT:
+                    latFixed[k] = oldLatFixed[from];
+                    lonFixed[k] = oldLonFixed[from];
+                    break;
+                default:
+                    latDouble[k] = oldLatDouble[from];
+                    lonDouble[k] = oldLonDouble[from];
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Потокобезопасный вариант GeohashStorage для записи из колбэков Firebase параллельно с поиском.
+// Каждая ячейка - массив только на добавление со своим замком для писателей; читатели не берут
+// замков и никогда не блокируют писателей, а писатели разных ячеек не ждут друг друга.
+// Метка помечается текущей эпохой, эпоху сдвигает поиск в начале и видит только метки прошлых
+// эпох. Запись, закончившаяся до начала поиска, в снимок попадает, а начавшаяся после - нет,
+// поэтому вместе с меткой поиск видит и все записи, закончившиеся раньше нее: снимок согласован.
+// Записи, идущие одновременно с поиском, могут попасть в него в любом сочетании
+public class ConcurrentGeohashStorage implements MarkerStore {
+
+    private static final int INITIAL_CELL_CAPACITY = 4;
+    // Младшие 60 бит ключа ячейки - сам геохэш
+    private static final long PRECISION_MASK = (1L << 60) - 1;
+
+    // Содержимое ячейки. Массивы растут копированием; записанные элементы больше не меняются,
+    // поэтому читатель со старым сегментом видит корректный префикс
+    private static final class Segment {
+        final Marker[] markers;
+        final long[] epochs;
+        volatile int size;
+
+        Segment(Marker[] markers, long[] epochs, int size) {
+            this.markers = markers;
+            this.epochs = epochs;
+            this.size = size;
+        }
+    }
+
+    private static final class Cell {
+        volatile Segment segment = new Segment(new Marker[INITIAL_CELL_CAPACITY], new long[INITIAL_CELL_CAPACITY], 0);
+
+        synchronized void append(Marker marker, long epoch) {
+            Segment current = segment;
+            int size = current.size;
+            if (size == current.markers.length) {
+                current = new Segment(Arrays.copyOf(current.markers, size * 2),
+                        Arrays.copyOf(current.epochs, size * 2), size);
+            }
+            current.markers[size] = marker;
+            current.epochs[size] = epoch;
+            // Запись size публикует элемент для читателей этого сегмента
+            current.size = size + 1;
+            segment = current;
+        }
+    }
+
+    // Ключ ячейки - long-геохэш с точностью в старших битах, чтобы ключи разной длины не совпадали
+    private final ConcurrentHashMap<Long, Cell> storage = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    private final LongAdder count = new LongAdder();
+
+    @Override
+    public void addMarker(Marker marker, int precision) {
+        long cellKey = key(GeoHashConverter.encodeToLong(marker.lat, marker.lon, precision), precision);
+        Cell cell = storage.get(cellKey);
+        if (cell == null) {
+            cell = storage.computeIfAbsent(cellKey, k -> new Cell());
+        }
+        cell.append(marker, epoch.get());
+        count.increment();
+    }
+
+    @Override
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm, int precision) {
+        long snapshot = epoch.getAndIncrement();
+
+        LongList cells = new LongList();
+        int coverPrecision = GeohashCovering.cover(centerLat, centerLon, radiusKm, precision,
+                GeohashCovering.DEFAULT_MAX_CELLS, cells);
+        List<Marker> result = new ArrayList<>();
+        if (coverPrecision == precision) {
+            for (int i = 0; i < cells.size(); i++) {
+                Cell cell = storage.get(key(cells.get(i), precision));
+                if (cell != null) {
+                    collect(cell, snapshot, centerLat, centerLon, radiusKm, result);
+                }
+            }
+            return result;
+        }
+
+        // Покрытие огрублено: берем все ячейки нужной точности с подходящим префиксом
+        cells.sort();
+        int shift = (precision - coverPrecision) * 5;
+        long precisionBits = (long) precision << 60;
+        for (ConcurrentHashMap.Entry<Long, Cell> entry : storage.entrySet()) {
+            long cellKey = entry.getKey();
+            if ((cellKey & ~PRECISION_MASK) == precisionBits
+                    && cells.binarySearch((cellKey & PRECISION_MASK) >>> shift) >= 0) {
+                collect(entry.getValue(), snapshot, centerLat, centerLon, radiusKm, result);
+            }
+        }
+        return result;
+    }
+
+    // Число добавленных меток
+    public long size() {
+        return count.sum();
+    }
+
+    @Override
+    public long estimatedMemoryBytes() {
+        long bytes = MemoryFootprint.object(3 * MemoryFootprint.REFERENCE)
+                + MemoryFootprint.array(Integer.highestOneBit(Math.max(1, storage.size() * 4 / 3)) * 2L,
+                MemoryFootprint.REFERENCE);
+        for (Cell cell : storage.values()) {
+            Segment segment = cell.segment;
+            bytes += MemoryFootprint.object(4 + 3 * MemoryFootprint.REFERENCE)
+                    + MemoryFootprint.object(8)
+                    + MemoryFootprint.object(MemoryFootprint.REFERENCE)
+                    + MemoryFootprint.object(2 * MemoryFootprint.REFERENCE + 4)
+                    + MemoryFootprint.array(segment.markers.length, MemoryFootprint.REFERENCE)
+                    + MemoryFootprint.array(segment.epochs.length, 8)
+                    + segment.size * MemoryFootprint.MARKER;
+        }
+        return bytes;
+    }
+
+    private static long key(long cell, int precision) {
+        return ((long) precision << 60) | cell;
+    }
+
+    private static void collect(Cell cell, long snapshot, double centerLat, double centerLon, double radiusKm,
+                                List<Marker> result) {
+        Segment segment = cell.segment;
+        int size = segment.size;
+        for (int i = 0; i < size; i++) {
+            if (segment.epochs[i] > snapshot) {
+                continue;
+            }
+            Marker marker = segment.markers[i];
+            if (GeoMath.distanceKm(centerLat, centerLon, marker.lat, marker.lon) <= radiusKm) {
+                result.add(marker);
+            }
+        }
+    }
+}
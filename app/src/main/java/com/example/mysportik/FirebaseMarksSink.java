@@ -0,0 +1,48 @@
+package com.example.mysportik;
+
+import com.google.firebase.database.DatabaseReference;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// MarksSink поверх Firebase Realtime Database: пачка уходит одним updateChildren
+// с путем на каждую метку, ключи - обычные push-ключи, сгенерированные локально.
+// timestamp - время создания метки на устройстве, а не время загрузки: метка, пролежавшая
+// в журнале до появления сети, сохраняет свое время
+public class FirebaseMarksSink implements MarksSink {
+
+    private final DatabaseReference marks;
+
+    public FirebaseMarksSink(DatabaseReference marks) {
+        this.marks = marks;
+    }
+
+    @Override
+    public String newKey() {
+        return marks.push().getKey();
+    }
+
+    @Override
+    public void write(List<PendingMark> batch, Callback callback) {
+        Map<String, Object> updates = new HashMap<>();
+        for (PendingMark mark : batch) {
+            HashMap<String, Object> marker = new HashMap<>();
+            marker.put("latitude", mark.lat);
+            marker.put("longitude", mark.lon);
+            marker.put("geohash", GeoHashConverter.encode(mark.lat, mark.lon, MarksSource.GEOHASH_PRECISION));
+            marker.put("status", mark.status);
+            marker.put("userId", mark.userId);
+            marker.put("note", mark.note);
+            marker.put("timestamp", mark.timestamp);
+            updates.put(mark.key, marker);
+        }
+        marks.updateChildren(updates).addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                callback.onSuccess();
+            } else {
+                callback.onFailure(task.getException());
+            }
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.mysportik;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+
+// MarksSource поверх Firebase Realtime Database: диапазон геохэшей - запрос
+// orderByChild("geohash").startAt(start).endAt(end) с ChildEventListener
+public class FirebaseMarksSource implements MarksSource {
+
+    private final DatabaseReference marks;
+
+    public FirebaseMarksSource(DatabaseReference marks) {
+        this.marks = marks;
+    }
+
+    @Override
+    public Subscription subscribe(String startGeohash, String endGeohash, Listener listener) {
+        Query query = marks.orderByChild("geohash").startAt(startGeohash).endAt(endGeohash);
+        ChildEventListener childListener = query.addChildEventListener(new ChildEventListener() {
+            @Override
+            public void onChildAdded(@NonNull DataSnapshot snapshot, String previousChildName) {
+                Marker marker = toMarker(snapshot);
+                if (marker != null) {
+                    listener.onMarkAdded(snapshot.getKey(), marker);
+                }
+            }
+
+            @Override
+            public void onChildChanged(@NonNull DataSnapshot snapshot, String previousChildName) {
+                Marker marker = toMarker(snapshot);
+                if (marker != null) {
+                    listener.onMarkChanged(snapshot.getKey(), marker);
+                } else {
+                    listener.onMarkRemoved(snapshot.getKey());
+                }
+            }
+
+            @Override
+            public void onChildRemoved(@NonNull DataSnapshot snapshot) {
+                listener.onMarkRemoved(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(@NonNull DataSnapshot snapshot, String previousChildName) {
+                // Порядок внутри диапазона для индекса не важен
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                listener.onCancelled(error.toException());
+            }
+        });
+        return () -> query.removeEventListener(childListener);
+    }
+
+    // Запись без координат пропускается
+    private static Marker toMarker(DataSnapshot snapshot) {
+        Double lat = snapshot.child("latitude").getValue(Double.class);
+        Double lon = snapshot.child("longitude").getValue(Double.class);
+        if (lat == null || lon == null) {
+            return null;
+        }
+        Marker marker = new Marker(snapshot.getKey(), lat, lon, snapshot.child("note").getValue(String.class));
+        marker.userId = snapshot.child("userId").getValue(String.class);
+        marker.status = snapshot.child("status").getValue(String.class);
+        Long timestamp = snapshot.child("timestamp").getValue(Long.class);
+        if (timestamp != null) {
+            marker.timestamp = timestamp;
+        }
+        return marker;
+    }
+}
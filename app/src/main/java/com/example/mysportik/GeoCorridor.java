@@ -0,0 +1,116 @@
+package com.example.mysportik;
+
+// Коридор вдоль маршрута: точки не дальше bufferKm от ломаной (ширина коридора 2 * bufferKm).
+// Отрезки ломаной - дуги большого круга; расстояние до отрезка считается на сфере через
+// единичные векторы, поэтому коридор корректен и у антимеридиана
+public final class GeoCorridor implements GeoShape {
+
+    private final int points;
+    private final double[] lats;
+    private final double[] lons;
+    // Единичные векторы вершин и нормали к плоскостям отрезков (нулевые у вырожденных отрезков)
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    private final double[] nx;
+    private final double[] ny;
+    private final double[] nz;
+    private final double bufferKm;
+
+    public GeoCorridor(double[] lats, double[] lons, double bufferKm) {
+        if (lats.length != lons.length || lats.length == 0) {
+            throw new IllegalArgumentException("Route needs at least one point with both coordinates");
+        }
+        if (!(bufferKm >= 0)) {
+            throw new IllegalArgumentException("Buffer must be non-negative: " + bufferKm);
+        }
+        points = lats.length;
+        this.lats = lats.clone();
+        this.lons = lons.clone();
+        this.bufferKm = bufferKm;
+        xs = new double[points];
+        ys = new double[points];
+        zs = new double[points];
+        for (int i = 0; i < points; i++) {
+            double latRad = Math.toRadians(lats[i]);
+            double lonRad = Math.toRadians(lons[i]);
+            xs[i] = Math.cos(latRad) * Math.cos(lonRad);
+            ys[i] = Math.cos(latRad) * Math.sin(lonRad);
+            zs[i] = Math.sin(latRad);
+        }
+        nx = new double[Math.max(points - 1, 0)];
+        ny = new double[nx.length];
+        nz = new double[nx.length];
+        for (int i = 0; i + 1 < points; i++) {
+            double cx = ys[i] * zs[i + 1] - zs[i] * ys[i + 1];
+            double cy = zs[i] * xs[i + 1] - xs[i] * zs[i + 1];
+            double cz = xs[i] * ys[i + 1] - ys[i] * xs[i + 1];
+            double norm = Math.sqrt(cx * cx + cy * cy + cz * cz);
+            if (norm > 1e-15) {
+                nx[i] = cx / norm;
+                ny[i] = cy / norm;
+                nz[i] = cz / norm;
+            }
+        }
+    }
+
+    public double bufferKm() {
+        return bufferKm;
+    }
+
+    @Override
+    public boolean contains(double lat, double lon) {
+        return distanceKm(lat, lon) <= bufferKm;
+    }
+
+    // Все точки ячейки не дальше ее радиуса (максимум расстояний от центра до углов) от центра,
+    // поэтому по неравенству треугольника ячейка внутри, если d + radius <= bufferKm,
+    // и снаружи, если d - radius > bufferKm
+    @Override
+    public int classify(double minLat, double maxLat, double minLon, double maxLon) {
+        double centerLat = (minLat + maxLat) / 2;
+        double centerLon = (minLon + maxLon) / 2;
+        double radius = Math.max(
+                Math.max(GeoMath.distanceKm(centerLat, centerLon, minLat, minLon),
+                        GeoMath.distanceKm(centerLat, centerLon, minLat, maxLon)),
+                Math.max(GeoMath.distanceKm(centerLat, centerLon, maxLat, minLon),
+                        GeoMath.distanceKm(centerLat, centerLon, maxLat, maxLon)));
+        double distance = distanceKm(centerLat, centerLon);
+        if (distance + radius <= bufferKm) {
+            return INSIDE;
+        }
+        if (distance - radius > bufferKm) {
+            return OUTSIDE;
+        }
+        return PARTIAL;
+    }
+
+    // Расстояние от точки до ломаной
+    public double distanceKm(double lat, double lon) {
+        double latRad = Math.toRadians(lat);
+        double lonRad = Math.toRadians(lon);
+        double px = Math.cos(latRad) * Math.cos(lonRad);
+        double py = Math.cos(latRad) * Math.sin(lonRad);
+        double pz = Math.sin(latRad);
+        double best = GeoMath.distanceKm(lat, lon, lats[0], lons[0]);
+        for (int i = 0; i + 1 < points; i++) {
+            best = Math.min(best, GeoMath.distanceKm(lat, lon, lats[i + 1], lons[i + 1]));
+            // Проекция точки на большой круг отрезка лежит внутри отрезка, если точка
+            // с нужной стороны от плоскостей, проходящих через концы перпендикулярно отрезку
+            double dot = px * nx[i] + py * ny[i] + pz * nz[i];
+            if ((nx[i] != 0 || ny[i] != 0 || nz[i] != 0)
+                    && side(xs[i], ys[i], zs[i], px, py, pz, i) >= 0
+                    && side(px, py, pz, xs[i + 1], ys[i + 1], zs[i + 1], i) >= 0) {
+                double crossTrack = Math.abs(Math.asin(Math.max(-1.0, Math.min(1.0, dot))));
+                best = Math.min(best, crossTrack * GeoMath.EARTH_RADIUS_KM);
+            }
+        }
+        return best;
+    }
+
+    // Знак (a x b) . n для нормали отрезка segment
+    private double side(double ax, double ay, double az, double bx, double by, double bz, int segment) {
+        return (ay * bz - az * by) * nx[segment] + (az * bx - ax * bz) * ny[segment]
+                + (ax * by - ay * bx) * nz[segment];
+    }
+}
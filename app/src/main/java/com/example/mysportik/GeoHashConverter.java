@@ -1,117 +1,241 @@
 package com.example.mysportik;
 
-import androidx.annotation.NonNull;
-
-import org.jetbrains.annotations.Contract;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 public class GeoHashConverter {
     //стандартный алфавит для геохэша
     private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
     // Каждый символ геохэша кодирует 5 бит информации
     private static final int BITS_PER_CHAR = 5;
+    // Максимальная точность, которая помещается в long (12 символов * 5 бит = 60 бит)
+    public static final int MAX_PRECISION = 12;
+    // С какого числа координат пакетное кодирование идет в несколько потоков, и по сколько
+    // координат получает одна задача
+    public static final int PARALLEL_ENCODE_THRESHOLD = 1 << 15;
+    private static final int PARALLEL_ENCODE_CHUNK = 1 << 13;
 
-    public static String encode(double lat, double lon, int precision) {
-        double[] latInterval = {-90.0, 90.0};
-        double[] lonInterval = {-180.0, 180.0};
-        StringBuilder hash = new StringBuilder();
-        boolean isEven = true;
-        int bit = 0;
-        int ch = 0;
-
-        while (hash.length() < precision) {
-            // Если обрабатываем долготу (четный шаг)
-            if (isEven) {
-                // Находим середину текущего интервала долготы
-                double mid = (lonInterval[0] + lonInterval[1]) / 2;
-                // Если долгота больше середины
-                if (lon > mid) {
-                    // Устанавливаем соответствующий бит
-                    ch |= (1 << (4 - bit));
-                    // Сужаем интервал до верхней половины
-                    lonInterval[0] = mid;
-                } else {
-                    //сужаем интервал до нижней половины
-                    lonInterval[1] = mid;
-                }
-            } else {
-                // Обрабатываем широту (нечетный шаг)
-                // Находим середину текущего интервала широты
-                double mid = (latInterval[0] + latInterval[1]) / 2;
-                if (lat > mid) {
-                    ch |= (1 << (4 - bit));
-                    latInterval[0] = mid;
-                } else {
-                    latInterval[1] = mid;
-                }
-            }
-            // Переключаем флаг для следующей итерации (широта/долгота)
-            isEven = !isEven;
-            if (bit < 4) {
-                // Если еще не набрали 5 бит, увеличиваем счетчик
-                bit++;
-            } else {
-                // Если набрали 5 бит, добавляем соответствующий символ из BASE32
-                hash.append(BASE32.charAt(ch));
-                // Сбрасываем счетчик битов и накопленные биты
-                bit = 0;
-                ch = 0;
-            }
+    // Геохэш как SpatialKeyEncoder (Z-order): кодировка по умолчанию
+    public static final SpatialKeyEncoder INSTANCE = new SpatialKeyEncoder() {
+        @Override
+        public long encodeToLong(double lat, double lon, int precision) {
+            return GeoHashConverter.encodeToLong(lat, lon, precision);
+        }
+
+        @Override
+        public long fromIndices(int latIdx, int lonIdx, int precision) {
+            return GeoHashConverter.fromIndices(latIdx, lonIdx, precision);
+        }
+
+        @Override
+        public int latIndex(long key, int precision) {
+            return GeoHashConverter.latIndex(key, precision);
+        }
+
+        @Override
+        public int lonIndex(long key, int precision) {
+            return GeoHashConverter.lonIndex(key, precision);
+        }
+
+        @Override
+        public boolean isPrefixPrecision(int precision) {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "geohash";
+        }
+    };
+
+    // Таблицы перевода: 5-битное значение -> символ и символ -> 5-битное значение (-1 для чужих символов)
+    private static final char[] BASE32_CHARS = BASE32.toCharArray();
+    private static final byte[] BASE32_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE32_VALUES, (byte) -1);
+        for (int i = 0; i < BASE32_CHARS.length; i++) {
+            BASE32_VALUES[BASE32_CHARS[i]] = (byte) i;
         }
-        return hash.toString();
+    }
+
+    public static String encode(double lat, double lon, int precision) {
+        return toBase32(encodeToLong(lat, lon, precision), precision);
     }
 
     //Декодирует геохаш в координаты (центр ячейки)
     public static double[] decode(String geohash) {
-        boolean isEven = true;
-        double[] latInterval = {-90.0, 90.0};
-        double[] lonInterval = {-180.0, 180.0};
-
-        for (char c : geohash.toCharArray()) {
-            int val = BASE32.indexOf(c);
-            for (int i = 0; i < BITS_PER_CHAR; i++) {
-                int mask = 1 << (4 - i);
-                if (isEven) {
-                    refineInterval(lonInterval, (val & mask) != 0);
-                } else {
-                    refineInterval(latInterval, (val & mask) != 0);
-                }
-                isEven = !isEven;
-            }
-        }
-        return new double[] {
-                (latInterval[0] + latInterval[1]) / 2,
-                (lonInterval[0] + lonInterval[1]) / 2
-        };
-    }
-
-    //Уточняет интервал на основе текущего бита
-    private static void refineInterval(double[] interval, boolean bit) {
-        double mid = (interval[0] + interval[1]) / 2;
-        if (bit) {
-            interval[0] = mid;
-        } else {
-            interval[1] = mid;
-        }
+        double[] center = new double[2];
+        decode(fromBase32(geohash), geohash.length(), center);
+        return center;
     }
 
     //Рассчитывает bounding box для геохаша, аналогично decode но возвращает гарницы вместо центра
     public static double[][] getBoundingBox(String geohash) {
-        double[] latInterval = {-90.0, 90.0};
-        double[] lonInterval = {-180.0, 180.0};
-        boolean isEven = true;
-
-        for (char c : geohash.toCharArray()) {
-            int val = BASE32.indexOf(c);
-            for (int i = 0; i < BITS_PER_CHAR; i++) {
-                int mask = 1 << (4 - i);
-                if (isEven) {
-                    refineInterval(lonInterval, (val & mask) != 0);
-                } else {
-                    refineInterval(latInterval, (val & mask) != 0);
-                }
-                isEven = !isEven;
+        double[] box = new double[4];
+        getBoundingBox(fromBase32(geohash), geohash.length(), box);
+        return new double[][]{{box[0], box[1]}, {box[2], box[3]}};
+    }
+
+    // Кодирует координаты в геохэш, упакованный в long.
+    // Биты долготы и широты чередуются (Z-order), первый бит (долгота) - старший
+    // из 5 * precision младших бит. Ничего не выделяет в куче.
+    // Номера строки и столбца вычисляются делением, а не бисекцией по битам; результат тот же,
+    // что у бисекции: точка на границе ячеек относится к нижней ячейке
+    public static long encodeToLong(double lat, double lon, int precision) {
+        checkPrecision(precision);
+        int latIdx = quantize(lat, -90.0, 180.0, latBits(precision));
+        int lonIdx = quantize(lon, -180.0, 360.0, lonBits(precision));
+        return fromIndices(latIdx, lonIdx, precision);
+    }
+
+    // Номер ячейки значения на оси [min, min + range), разбитой на 2^bits равных частей.
+    // Границы ячеек - двоичные дроби, они вычисляются точно, поэтому погрешность деления
+    // исправляется одной проверкой соседней границы
+    private static int quantize(double value, double min, double range, int bits) {
+        int cells = 1 << bits;
+        double size = range / cells;
+        double estimate = Math.ceil((value - min) / size) - 1;
+        int index = (int) Math.max(0, Math.min(estimate, cells - 1));
+        if (index > 0 && !(value > min + index * size)) {
+            index--;
+        } else if (index < cells - 1 && value > min + (index + 1) * size) {
+            index++;
+        }
+        return index;
+    }
+
+    // Пакетное кодирование: out[i] = encodeToLong(lats[i], lons[i], precision) для первых count координат
+    public static void encodeAll(double[] lats, double[] lons, int count, int precision, long[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = encodeToLong(lats[i], lons[i], precision);
+        }
+    }
+
+    // То же, но большие массивы кодируются кусками параллельно в общем пуле fork/join.
+    // Куски не пересекаются, так что потоки пишут в out без синхронизации
+    public static void parallelEncodeAll(double[] lats, double[] lons, int count, int precision, long[] out) {
+        if (count < PARALLEL_ENCODE_THRESHOLD) {
+            encodeAll(lats, lons, count, precision, out);
+            return;
+        }
+        checkPrecision(precision);
+        int chunks = (count + PARALLEL_ENCODE_CHUNK - 1) / PARALLEL_ENCODE_CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int end = Math.min(count, (c + 1) * PARALLEL_ENCODE_CHUNK);
+            for (int i = c * PARALLEL_ENCODE_CHUNK; i < end; i++) {
+                out[i] = encodeToLong(lats[i], lons[i], precision);
+            }
+        });
+    }
+
+    // Декодирует long-геохэш в центр ячейки: out[0] - широта, out[1] - долгота
+    public static void decode(long hash, int precision, double[] out) {
+        checkPrecision(precision);
+        double latHeight = 180.0 / (1L << latBits(precision));
+        double lonWidth = 360.0 / (1L << lonBits(precision));
+        out[0] = -90.0 + (latIndex(hash, precision) + 0.5) * latHeight;
+        out[1] = -180.0 + (lonIndex(hash, precision) + 0.5) * lonWidth;
+    }
+
+    // Границы ячейки long-геохэша: out = {minLat, maxLat, minLon, maxLon}
+    public static void getBoundingBox(long hash, int precision, double[] out) {
+        checkPrecision(precision);
+        double latHeight = 180.0 / (1L << latBits(precision));
+        double lonWidth = 360.0 / (1L << lonBits(precision));
+        int latIdx = latIndex(hash, precision);
+        int lonIdx = lonIndex(hash, precision);
+        out[0] = -90.0 + latIdx * latHeight;
+        out[1] = -90.0 + (latIdx + 1) * latHeight;
+        out[2] = -180.0 + lonIdx * lonWidth;
+        out[3] = -180.0 + (lonIdx + 1) * lonWidth;
+    }
+
+    // Переводит long-геохэш в символы BASE32, записывая их в out начиная с offset.
+    // Возвращает позицию сразу после последнего записанного символа
+    public static int toBase32(long hash, int precision, char[] out, int offset) {
+        checkPrecision(precision);
+        for (int i = precision - 1; i >= 0; i--) {
+            out[offset + i] = BASE32_CHARS[(int) (hash & 0x1F)];
+            hash >>>= BITS_PER_CHAR;
+        }
+        return offset + precision;
+    }
+
+    public static String toBase32(long hash, int precision) {
+        char[] chars = new char[precision];
+        toBase32(hash, precision, chars, 0);
+        return new String(chars);
+    }
+
+    // Разбирает строковый геохэш в long, точность равна длине строки
+    public static long fromBase32(CharSequence geohash) {
+        int precision = geohash.length();
+        checkPrecision(precision);
+        long hash = 0;
+        for (int i = 0; i < precision; i++) {
+            char c = geohash.charAt(i);
+            int val = c < BASE32_VALUES.length ? BASE32_VALUES[c] : -1;
+            if (val < 0) {
+                throw new IllegalArgumentException("Invalid geohash character '" + c + "' in " + geohash);
             }
+            hash = (hash << BITS_PER_CHAR) | val;
+        }
+        return hash;
+    }
+
+    // Количество бит долготы и широты в геохэше заданной точности (долгота получает лишний бит)
+    public static int lonBits(int precision) {
+        return (precision * BITS_PER_CHAR + 1) / 2;
+    }
+
+    public static int latBits(int precision) {
+        return precision * BITS_PER_CHAR / 2;
+    }
+
+    // Номер столбца (долгота) и строки (широта) ячейки в сетке данной точности
+    public static int lonIndex(long hash, int precision) {
+        return compact((precision & 1) == 0 ? hash >>> 1 : hash);
+    }
+
+    public static int latIndex(long hash, int precision) {
+        return compact((precision & 1) == 0 ? hash : hash >>> 1);
+    }
+
+    // Собирает long-геохэш из номеров строки и столбца сетки
+    public static long fromIndices(int latIdx, int lonIdx, int precision) {
+        // При четной точности общее число бит четное и старший бит долготы стоит на нечетной позиции
+        if ((precision & 1) == 0) {
+            return (spread(lonIdx) << 1) | spread(latIdx);
+        }
+        return spread(lonIdx) | (spread(latIdx) << 1);
+    }
+
+    static void checkPrecision(int precision) {
+        if (precision < 0 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be in [0, " + MAX_PRECISION + "]: " + precision);
         }
-        return new double[][]{latInterval, lonInterval};
+    }
+
+    // Раздвигает 32 бита числа по четным позициям long
+    private static long spread(int value) {
+        long x = value & 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    // Обратная операция к spread: собирает биты с четных позиций
+    private static int compact(long x) {
+        x &= 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+        return (int) x;
     }
 }
@@ -0,0 +1,23 @@
+package com.example.mysportik;
+
+// Общие геодезические расчеты
+public class GeoMath {
+    // Радиус Земли в километрах
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    // Расчет расстояния между двумя точками по формуле гаверсинусов
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        // Разница координат в радианах
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+
+        // Формула гаверсинусов:
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) *
+                        Math.cos(Math.toRadians(lat2)) *
+                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+
+        // Расчет расстояния
+        return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
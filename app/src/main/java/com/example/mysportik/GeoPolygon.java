@@ -0,0 +1,73 @@
+package com.example.mysportik;
+
+// Полигон (например, граница парка): вершины в градусах, ребра - отрезки в координатах
+// широта/долгота, как и границы ячеек геохэша. Принадлежность точки - по правилу четности,
+// так что полигон может быть невыпуклым. Полигоны через антимеридиан не поддерживаются
+public final class GeoPolygon implements GeoShape {
+
+    private final double[] lats;
+    private final double[] lons;
+
+    public GeoPolygon(double[] lats, double[] lons) {
+        if (lats.length != lons.length || lats.length < 3) {
+            throw new IllegalArgumentException("Polygon needs at least 3 vertices with both coordinates");
+        }
+        this.lats = lats.clone();
+        this.lons = lons.clone();
+    }
+
+    @Override
+    public boolean contains(double lat, double lon) {
+        boolean inside = false;
+        int n = lats.length;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)
+                    && lon < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lons[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    // Если ни одно ребро не касается прямоугольника, все его точки по одну сторону границы
+    // и достаточно проверить центр
+    @Override
+    public int classify(double minLat, double maxLat, double minLon, double maxLon) {
+        int n = lats.length;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            if (segmentTouchesBox(lats[j], lons[j], lats[i], lons[i], minLat, maxLat, minLon, maxLon)) {
+                return PARTIAL;
+            }
+        }
+        return contains((minLat + maxLat) / 2, (minLon + maxLon) / 2) ? INSIDE : OUTSIDE;
+    }
+
+    // Пересекает ли отрезок замкнутый прямоугольник (отсечение Лианга - Барски)
+    private static boolean segmentTouchesBox(double lat1, double lon1, double lat2, double lon2,
+                                             double minLat, double maxLat, double minLon, double maxLon) {
+        double dLat = lat2 - lat1;
+        double dLon = lon2 - lon1;
+        double[] t = {0.0, 1.0};
+        return clip(-dLon, lon1 - minLon, t) && clip(dLon, maxLon - lon1, t)
+                && clip(-dLat, lat1 - minLat, t) && clip(dLat, maxLat - lat1, t);
+    }
+
+    private static boolean clip(double p, double q, double[] t) {
+        if (p == 0) {
+            return q >= 0;
+        }
+        double r = q / p;
+        if (p < 0) {
+            if (r > t[1]) {
+                return false;
+            }
+            t[0] = Math.max(t[0], r);
+        } else {
+            if (r < t[0]) {
+                return false;
+            }
+            t[1] = Math.min(t[1], r);
+        }
+        return true;
+    }
+}
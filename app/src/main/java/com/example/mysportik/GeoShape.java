@@ -0,0 +1,17 @@
+package com.example.mysportik;
+
+// Область на карте для запросов по форме (полигон, коридор вдоль маршрута)
+public interface GeoShape {
+    // Результаты classify: прямоугольник целиком вне области, пересекает ее границу, целиком внутри
+    int OUTSIDE = 0;
+    int PARTIAL = 1;
+    int INSIDE = 2;
+
+    // Лежит ли точка в области
+    boolean contains(double lat, double lon);
+
+    // Положение прямоугольника (ячейки геохэша) относительно области. Ответы INSIDE и OUTSIDE
+    // должны быть гарантированными: для каждой точки прямоугольника contains вернет true или
+    // false соответственно. В сомнительных случаях допустимо отвечать PARTIAL
+    int classify(double minLat, double maxLat, double minLon, double maxLon);
+}
@@ -0,0 +1,152 @@
+package com.example.mysportik;
+
+// Покрытие круга ячейками геохэша: по bounding box круга вычисляются диапазоны строк и столбцов
+// сетки нужной точности, и перебираются только эти ячейки (без обхода дерева от корня)
+public class GeohashCovering {
+    // Сколько ячеек допускается в покрытии, прежде чем точность будет понижена
+    public static final int DEFAULT_MAX_CELLS = 1024;
+
+    // Bounding box круга: out = {minLat, maxLat, minLon, maxLon}.
+    // Долготы не нормализуются: у круга возле антимеридиана minLon < -180 или maxLon > 180.
+    // Если круг накрывает полюс, возвращается полный диапазон долгот
+    public static void boundingBox(double lat, double lon, double radiusKm, double[] out) {
+        double angularRadius = radiusKm / GeoMath.EARTH_RADIUS_KM;
+        double deltaLat = Math.toDegrees(angularRadius);
+        double minLat = lat - deltaLat;
+        double maxLat = lat + deltaLat;
+
+        if (minLat <= -90.0 || maxLat >= 90.0) {
+            // Полюс внутри круга: по долготе ограничений нет
+            out[0] = Math.max(minLat, -90.0);
+            out[1] = Math.min(maxLat, 90.0);
+            out[2] = -180.0;
+            out[3] = 180.0;
+            return;
+        }
+
+        // Точная полуширина круга по долготе на сфере (касательные меридианы)
+        double sinDeltaLon = Math.sin(angularRadius) / Math.cos(Math.toRadians(lat));
+        out[0] = minLat;
+        out[1] = maxLat;
+        if (sinDeltaLon >= 1.0) {
+            out[2] = -180.0;
+            out[3] = 180.0;
+        } else {
+            double deltaLon = Math.toDegrees(Math.asin(sinDeltaLon));
+            out[2] = lon - deltaLon;
+            out[3] = lon + deltaLon;
+        }
+    }
+
+    // Заполняет out ячейками (long-геохэшами), пересекающими bounding box круга.
+    // Если ячеек точности precision больше maxCells, точность понижается, пока покрытие не уложится
+    // в лимит. Возвращает точность, с которой построено покрытие
+    public static int cover(double lat, double lon, double radiusKm, int precision, int maxCells, LongList out) {
+        double[] box = new double[4];
+        boundingBox(lat, lon, radiusKm, box);
+        return coverBox(box[0], box[1], box[2], box[3], precision, maxCells, out);
+    }
+
+    // То же для произвольного прямоугольника (долготы могут выходить за [-180, 180])
+    public static int coverBox(double minLat, double maxLat, double minLon, double maxLon,
+                               int precision, int maxCells, LongList out) {
+        return coverBox(minLat, maxLat, minLon, maxLon, precision, maxCells, GeoHashConverter.INSTANCE, out);
+    }
+
+    // То же с ключами ячеек в кодировке encoder
+    public static int coverBox(double minLat, double maxLat, double minLon, double maxLon,
+                               int precision, int maxCells, SpatialKeyEncoder encoder, LongList out) {
+        if (maxCells < 1) {
+            throw new IllegalArgumentException("maxCells must be positive: " + maxCells);
+        }
+        int p = precision;
+        while (p > 0 && cellCount(minLat, maxLat, minLon, maxLon, p) > maxCells) {
+            p--;
+        }
+
+        int lonCells = 1 << GeoHashConverter.lonBits(p);
+        int latCells = 1 << GeoHashConverter.latBits(p);
+        double lonWidth = 360.0 / lonCells;
+        double latHeight = 180.0 / latCells;
+
+        int minRow = clamp(cellIndex(minLat + 90.0, latHeight), latCells);
+        int maxRow = clamp(cellIndex(maxLat + 90.0, latHeight), latCells);
+        int minCol = cellIndex(minLon + 180.0, lonWidth);
+        int maxCol = cellIndex(maxLon + 180.0, lonWidth);
+        if (maxCol - minCol + 1 >= lonCells) {
+            minCol = 0;
+            maxCol = lonCells - 1;
+        }
+
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                // Столбцы за антимеридианом заворачиваются на другую сторону сетки
+                int wrapped = Math.floorMod(col, lonCells);
+                out.add(encoder.fromIndices(row, wrapped, p));
+            }
+        }
+        return p;
+    }
+
+    // Покрытие круга в виде диапазонов ключей точности 12: ячейка точности p - это
+    // диапазон [cell << 5(12 - p), (cell + 1) << 5(12 - p)). Соседние по порядку ячейки склеиваются.
+    // В out попадают пары (начало включительно, конец не включительно)
+    public static void coverKeyRanges(double lat, double lon, double radiusKm, int precision, LongList out) {
+        coverKeyRanges(lat, lon, radiusKm, precision, GeoHashConverter.INSTANCE, out);
+    }
+
+    // То же для ключей в кодировке encoder. Если на выбранной точности ячейки кодировки не являются
+    // диапазонами (нечетная точность у кривой Гильберта), покрытие строится на соседней точности:
+    // мельче, если там ячеек не больше лимита, иначе крупнее
+    public static void coverKeyRanges(double lat, double lon, double radiusKm, int precision,
+                                      SpatialKeyEncoder encoder, LongList out) {
+        double[] box = new double[4];
+        boundingBox(lat, lon, radiusKm, box);
+        LongList cells = new LongList();
+        int coverPrecision = coverBox(box[0], box[1], box[2], box[3],
+                Math.min(precision, GeoHashConverter.MAX_PRECISION), DEFAULT_MAX_CELLS, encoder, cells);
+        if (!encoder.isPrefixPrecision(coverPrecision)) {
+            int finer = coverPrecision + 1;
+            int neighbour = cellCount(box[0], box[1], box[2], box[3], finer) <= DEFAULT_MAX_CELLS
+                    ? finer : coverPrecision - 1;
+            cells.clear();
+            coverPrecision = coverBox(box[0], box[1], box[2], box[3], neighbour, Integer.MAX_VALUE, encoder, cells);
+        }
+        cells.sort();
+        int shift = (GeoHashConverter.MAX_PRECISION - coverPrecision) * 5;
+        int i = 0;
+        while (i < cells.size()) {
+            long first = cells.get(i);
+            long last = first;
+            while (i + 1 < cells.size() && cells.get(i + 1) == last + 1) {
+                last = cells.get(++i);
+            }
+            i++;
+            out.add(first << shift);
+            out.add((last + 1) << shift);
+        }
+    }
+
+    // Сколько ячеек точности precision занимает прямоугольник
+    public static long cellCount(double minLat, double maxLat, double minLon, double maxLon, int precision) {
+        int lonCells = 1 << GeoHashConverter.lonBits(precision);
+        int latCells = 1 << GeoHashConverter.latBits(precision);
+        double latHeight = 180.0 / latCells;
+        double lonWidth = 360.0 / lonCells;
+        long rows = clamp(cellIndex(maxLat + 90.0, latHeight), latCells)
+                - clamp(cellIndex(minLat + 90.0, latHeight), latCells) + 1;
+        long cols = Math.min((long) cellIndex(maxLon + 180.0, lonWidth) - cellIndex(minLon + 180.0, lonWidth) + 1,
+                lonCells);
+        return rows * cols;
+    }
+
+    // Номер ячейки для смещения offset от начала оси. Точка на границе относится к нижней ячейке,
+    // так же как при кодировании (сравнение "больше середины")
+    static int cellIndex(double offset, double cellSize) {
+        return (int) Math.ceil(offset / cellSize) - 1;
+    }
+
+    private static int clamp(int index, int cells) {
+        return Math.max(0, Math.min(index, cells - 1));
+    }
+}
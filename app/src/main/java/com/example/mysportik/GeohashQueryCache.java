@@ -0,0 +1,228 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// LRU-кэш запросов в радиусе для GeohashStorage. Ключ - центр, квантованный сеткой
+// CENTER_QUANTUM_DEGREES, радиус, округленный вверх до RADIUS_QUANTUM_KM, и точность.
+// Запись хранит метки-кандидаты круга вокруг центра ячейки квантования с запасом на смещение
+// центра, вместе с их единичными векторами, и ячейки покрытия, от которых она зависит.
+// Добавление или удаление метки сбрасывает ровно записи, чье покрытие содержит ее ячейку
+public class GeohashQueryCache {
+
+    public static final double CENTER_QUANTUM_DEGREES = 1e-4;
+    public static final double RADIUS_QUANTUM_KM = 0.01;
+    // Градус дуги большого круга в километрах
+    private static final double KM_PER_DEGREE = Math.PI * GeoMath.EARTH_RADIUS_KM / 180.0;
+
+    // Ключ запроса
+    public static final class Key {
+        final long latStep;
+        final long lonStep;
+        final long radiusStep;
+        final int precision;
+
+        Key(long latStep, long lonStep, long radiusStep, int precision) {
+            this.latStep = latStep;
+            this.lonStep = lonStep;
+            this.radiusStep = radiusStep;
+            this.precision = precision;
+        }
+
+        // Центр ячейки квантования (на полюсе - сам полюс)
+        double centerLat() {
+            return Math.max(-90.0, Math.min(90.0, (latStep + 0.5) * CENTER_QUANTUM_DEGREES));
+        }
+
+        double centerLon() {
+            return (lonStep + 0.5) * CENTER_QUANTUM_DEGREES;
+        }
+
+        // Радиус круга записи: округленный радиус плюс наибольшее расстояние от точки ячейки
+        // квантования до ее центра (полшага по меридиану и полшага по параллели)
+        double coverRadiusKm() {
+            return radiusStep * RADIUS_QUANTUM_KM + CENTER_QUANTUM_DEGREES * KM_PER_DEGREE * 1.0001;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return latStep == other.latStep && lonStep == other.lonStep && radiusStep == other.radiusStep
+                    && precision == other.precision;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Long.hashCode(latStep);
+            hash = hash * 31 + Long.hashCode(lonStep);
+            hash = hash * 31 + Long.hashCode(radiusStep);
+            return hash * 31 + precision;
+        }
+    }
+
+    // Метки-кандидаты записи и ячейки покрытия ((точность << 60) | геохэш)
+    static final class Entry {
+        final Key key;
+        final Marker[] markers;
+        final double[] xs;
+        final double[] ys;
+        final double[] zs;
+        final long[] dependencies;
+
+        Entry(Key key, List<Marker> candidates, long[] dependencies) {
+            this.key = key;
+            this.dependencies = dependencies;
+            int n = candidates.size();
+            markers = candidates.toArray(new Marker[0]);
+            xs = new double[n];
+            ys = new double[n];
+            zs = new double[n];
+            for (int i = 0; i < n; i++) {
+                double latRad = Math.toRadians(markers[i].lat);
+                double lonRad = Math.toRadians(markers[i].lon);
+                double cosLat = Math.cos(latRad);
+                xs[i] = cosLat * Math.cos(lonRad);
+                ys[i] = cosLat * Math.sin(lonRad);
+                zs[i] = Math.sin(latRad);
+            }
+        }
+    }
+
+    private final int maxEntries;
+    private final int maxMarkers;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Для каждой точности запроса: ячейка покрытия -> записи, которые от нее зависят
+    private final List<Map<Long, List<Entry>>> dependents = new ArrayList<>();
+    private int cachedMarkers;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public GeohashQueryCache(int maxEntries, int maxMarkers) {
+        if (maxEntries < 1 || maxMarkers < 0) {
+            throw new IllegalArgumentException("Cache limits must be positive: " + maxEntries + ", " + maxMarkers);
+        }
+        this.maxEntries = maxEntries;
+        this.maxMarkers = maxMarkers;
+        for (int p = 0; p <= GeoHashConverter.MAX_PRECISION; p++) {
+            dependents.add(new HashMap<>());
+        }
+    }
+
+    static Key key(double centerLat, double centerLon, double radiusKm, int precision) {
+        return new Key((long) Math.floor(centerLat / CENTER_QUANTUM_DEGREES),
+                (long) Math.floor(centerLon / CENTER_QUANTUM_DEGREES),
+                (long) Math.ceil(radiusKm / RADIUS_QUANTUM_KM), precision);
+    }
+
+    Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    // Кладет запись и вытесняет самые давние, пока кэш не уложится в лимиты
+    Entry put(Key key, List<Marker> candidates, long[] dependencies) {
+        Entry entry = new Entry(key, candidates, dependencies);
+        entries.put(key, entry);
+        cachedMarkers += entry.markers.length;
+        Map<Long, List<Entry>> byCell = dependents.get(key.precision);
+        for (long dependency : dependencies) {
+            List<Entry> list = byCell.get(dependency);
+            if (list == null) {
+                list = new ArrayList<>(2);
+                byCell.put(dependency, list);
+            }
+            list.add(entry);
+        }
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || cachedMarkers > maxMarkers) && eldest.hasNext()) {
+            Entry victim = eldest.next();
+            if (victim == entry) {
+                // Новую запись не вытесняем, даже если она одна больше лимита меток
+                continue;
+            }
+            eldest.remove();
+            unlink(victim);
+            evictions++;
+        }
+        return entry;
+    }
+
+    // Ячейка hash точности precision изменилась: сбрасываем записи запросов той же точности,
+    // в покрытии которых есть эта ячейка или ее префикс
+    void invalidate(long hash, int precision) {
+        Map<Long, List<Entry>> byCell = dependents.get(precision);
+        if (byCell.isEmpty()) {
+            return;
+        }
+        for (int p = precision; p >= 0; p--) {
+            List<Entry> list = byCell.get(GeohashShapeCovering.key(hash >>> (5 * (precision - p)), p));
+            if (list == null) {
+                continue;
+            }
+            for (Entry entry : new ArrayList<>(list)) {
+                if (entries.remove(entry.key) != null) {
+                    unlink(entry);
+                    invalidations++;
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        for (Map<Long, List<Entry>> byCell : dependents) {
+            byCell.clear();
+        }
+        cachedMarkers = 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    // Записи, вытесненные по лимиту (LRU)
+    public long evictions() {
+        return evictions;
+    }
+
+    // Записи, сброшенные из-за изменения ячеек, от которых они зависят
+    public long invalidations() {
+        return invalidations;
+    }
+
+    private void unlink(Entry entry) {
+        cachedMarkers -= entry.markers.length;
+        Map<Long, List<Entry>> byCell = dependents.get(entry.key.precision);
+        for (long dependency : entry.dependencies) {
+            List<Entry> list = byCell.get(dependency);
+            if (list != null) {
+                list.remove(entry);
+                if (list.isEmpty()) {
+                    byCell.remove(dependency);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// Инкрементальная загрузка меток из узла Marks в локальный GeohashStorage по области видимости.
+// Ячейки, покрывающие область, склеиваются в диапазоны соседних геохэшей, и на каждый диапазон
+// оформляется одна подписка. При смене области подписки на ушедшие диапазоны снимаются,
+// а метки вне новой области удаляются из индекса. Метка принадлежит подписке, которая сообщила
+// о ней последней: удаление от другой подписки (метка переехала в соседний диапазон) игнорируется.
+// Не потокобезопасен: все вызовы и события источника должны идти из одного потока (главного)
+public class GeohashRangeSync {
+
+    // Ошибки подписок; диапазон с ошибкой переподписывается при следующем setViewport
+    public interface ErrorListener {
+        void onRangeFailed(String startGeohash, String endGeohash, Exception error);
+    }
+
+    // Лимит ячеек покрытия области: при большем числе точность подписок понижается
+    public static final int MAX_VIEWPORT_CELLS = 64;
+    // Символ после любого символа геохэша: конец диапазона "все строки с данным префиксом"
+    private static final char RANGE_END = '\uf8ff';
+
+    private final MarksSource source;
+    private final GeohashStorage storage;
+    private final int precision;
+
+    // Активные подписки по ключу "начало..конец" диапазона
+    private final Map<String, RangeListener> subscriptions = new HashMap<>();
+    // Загруженные метки по ключу записи в Marks
+    private final Map<String, Loaded> loaded = new HashMap<>();
+    private ErrorListener errorListener;
+
+    // precision - точность, с которой метки кладутся в storage; она же верхняя граница
+    // точности подписок (в Marks геохэш хранится с точностью 7)
+    public GeohashRangeSync(MarksSource source, GeohashStorage storage, int precision) {
+        this.source = source;
+        this.storage = storage;
+        this.precision = precision;
+    }
+
+    public void setErrorListener(ErrorListener errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    // Новая область видимости; долготы могут выходить за [-180, 180] у антимеридиана
+    public void setViewport(double minLat, double maxLat, double minLon, double maxLon) {
+        LongList cells = new LongList();
+        int cellPrecision = GeohashCovering.coverBox(minLat, maxLat, minLon, maxLon,
+                Math.min(precision, MarksSource.GEOHASH_PRECISION), MAX_VIEWPORT_CELLS, cells);
+        cells.sort();
+
+        // Диапазоны соседних ячеек: [первая ячейка, последняя ячейка + RANGE_END]
+        Map<String, String[]> ranges = new HashMap<>();
+        int i = 0;
+        while (i < cells.size()) {
+            long first = cells.get(i);
+            long last = first;
+            while (i + 1 < cells.size() && cells.get(i + 1) == last + 1) {
+                last = cells.get(++i);
+            }
+            i++;
+            String start = GeoHashConverter.toBase32(first, cellPrecision);
+            String end = GeoHashConverter.toBase32(last, cellPrecision) + RANGE_END;
+            ranges.put(start + ".." + end, new String[]{start, end});
+        }
+
+        // Сначала подписываемся на новые диапазоны, потом снимаем старые: метки на стыке
+        // приходят повторно и просто заменяют уже загруженные
+        for (Map.Entry<String, String[]> range : ranges.entrySet()) {
+            if (!subscriptions.containsKey(range.getKey())) {
+                String[] bounds = range.getValue();
+                RangeListener listener = new RangeListener(range.getKey(), bounds[0], bounds[1]);
+                subscriptions.put(range.getKey(), listener);
+                listener.subscription = source.subscribe(bounds[0], bounds[1], listener);
+            }
+        }
+        Iterator<Map.Entry<String, RangeListener>> active = subscriptions.entrySet().iterator();
+        while (active.hasNext()) {
+            Map.Entry<String, RangeListener> entry = active.next();
+            if (!ranges.containsKey(entry.getKey())) {
+                entry.getValue().cancel();
+                active.remove();
+            }
+        }
+
+        // Метки из ячеек, ушедших из области, больше не обновляются - убираем их из индекса
+        List<String> outside = new ArrayList<>();
+        for (Map.Entry<String, Loaded> entry : loaded.entrySet()) {
+            Marker marker = entry.getValue().marker;
+            if (cells.binarySearch(GeoHashConverter.encodeToLong(marker.lat, marker.lon, cellPrecision)) < 0) {
+                outside.add(entry.getKey());
+            }
+        }
+        for (String key : outside) {
+            storage.removeMarker(loaded.remove(key).marker, precision);
+        }
+    }
+
+    // Снимает все подписки; загруженные метки остаются в индексе
+    public void stop() {
+        for (RangeListener listener : subscriptions.values()) {
+            listener.cancel();
+        }
+        subscriptions.clear();
+    }
+
+    public int subscriptionCount() {
+        return subscriptions.size();
+    }
+
+    public int loadedCount() {
+        return loaded.size();
+    }
+
+    private void put(String key, Marker marker, RangeListener owner) {
+        Loaded old = loaded.put(key, new Loaded(marker, owner));
+        if (old != null) {
+            storage.removeMarker(old.marker, precision);
+        }
+        storage.addMarker(marker, precision);
+    }
+
+    private void remove(String key, RangeListener reporter) {
+        Loaded old = loaded.get(key);
+        // Метка уже пришла от другой подписки - это ее выход из диапазона reporter, а не удаление
+        if (old != null && old.owner == reporter) {
+            loaded.remove(key);
+            storage.removeMarker(old.marker, precision);
+        }
+    }
+
+    // Загруженная метка и подписка, которая сообщила о ней последней
+    private static final class Loaded {
+        final Marker marker;
+        final RangeListener owner;
+
+        Loaded(Marker marker, RangeListener owner) {
+            this.marker = marker;
+            this.owner = owner;
+        }
+    }
+
+    // События одной подписки. После cancel события (запоздавшие у источника) игнорируются
+    private final class RangeListener implements MarksSource.Listener {
+        final String range;
+        final String start;
+        final String end;
+        MarksSource.Subscription subscription;
+        boolean cancelled;
+
+        RangeListener(String range, String start, String end) {
+            this.range = range;
+            this.start = start;
+            this.end = end;
+        }
+
+        void cancel() {
+            cancelled = true;
+            subscription.cancel();
+        }
+
+        @Override
+        public void onMarkAdded(String key, Marker marker) {
+            if (!cancelled) {
+                put(key, marker, this);
+            }
+        }
+
+        @Override
+        public void onMarkChanged(String key, Marker marker) {
+            if (!cancelled) {
+                put(key, marker, this);
+            }
+        }
+
+        @Override
+        public void onMarkRemoved(String key) {
+            if (!cancelled) {
+                remove(key, this);
+            }
+        }
+
+        // Источник сам снял подписку: диапазон забывается, чтобы следующий setViewport подписался
+        // заново; загруженные метки остаются до тех пор
+        @Override
+        public void onCancelled(Exception error) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            if (subscriptions.get(range) == this) {
+                subscriptions.remove(range);
+            }
+            if (errorListener != null) {
+                errorListener.onRangeFailed(start, end, error);
+            }
+        }
+    }
+}
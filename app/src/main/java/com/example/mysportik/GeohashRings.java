@@ -0,0 +1,139 @@
+package com.example.mysportik;
+
+// Обход сетки геохэша кольцами вокруг ячейки, содержащей центр: кольцо k - ячейки,
+// у которых смещение строки или столбца равно k. Столбцы заворачиваются через антимеридиан,
+// строки обрезаются у полюсов. После каждого кольца известна нижняя граница расстояния
+// от центра до любой еще не обойденной ячейки
+public class GeohashRings {
+    private final double centerLat;
+    private final double centerLon;
+    private final int precision;
+    private final int latCells;
+    private final int lonCells;
+    private final double latHeight;
+    private final double lonWidth;
+    private final int centerRow;
+    private final int centerCol;
+    // Номер последнего выданного кольца (-1 - еще ничего не обойдено)
+    private int ring = -1;
+
+    public GeohashRings(double centerLat, double centerLon, int precision) {
+        this.centerLat = centerLat;
+        this.centerLon = centerLon;
+        this.precision = precision;
+        latCells = 1 << GeoHashConverter.latBits(precision);
+        lonCells = 1 << GeoHashConverter.lonBits(precision);
+        latHeight = 180.0 / latCells;
+        lonWidth = 360.0 / lonCells;
+        long centerCell = GeoHashConverter.encodeToLong(centerLat, centerLon, precision);
+        centerRow = GeoHashConverter.latIndex(centerCell, precision);
+        centerCol = GeoHashConverter.lonIndex(centerCell, precision);
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    // Номер последнего обойденного кольца
+    public int ring() {
+        return ring;
+    }
+
+    // Обойдена ли уже вся сетка
+    public boolean isComplete() {
+        return ring >= 0 && rowsComplete(ring) && westColumns(ring) + eastColumns(ring) + 1 == lonCells;
+    }
+
+    // Добавляет в out ячейки следующего кольца. Возвращает false, если сетка уже обойдена целиком
+    public boolean nextRing(LongList out) {
+        if (isComplete()) {
+            return false;
+        }
+        int k = ++ring;
+        int west = westColumns(k);
+        int east = eastColumns(k);
+        for (int dRow = -k; dRow <= k; dRow++) {
+            int row = centerRow + dRow;
+            if (row < 0 || row >= latCells) {
+                continue;
+            }
+            if (dRow == -k || dRow == k) {
+                // Новая строка целиком
+                for (int dCol = -west; dCol <= east; dCol++) {
+                    out.add(cell(row, dCol));
+                }
+            } else {
+                // В уже обойденных строках добавляются только новые крайние столбцы
+                if (west == k) {
+                    out.add(cell(row, -k));
+                }
+                if (east == k && k > 0) {
+                    out.add(cell(row, k));
+                }
+            }
+        }
+        return true;
+    }
+
+    // Нижняя граница расстояния (км) от центра до любой точки вне обойденных колец.
+    // Такая точка лежит либо за крайней параллелью (расстояние не меньше разницы широт),
+    // либо за крайним меридианом (не меньше расстояния до большого круга этого меридиана)
+    public double unvisitedDistanceKm() {
+        if (ring < 0) {
+            return 0;
+        }
+        if (isComplete()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double bound = Double.POSITIVE_INFINITY;
+        int southRow = centerRow - ring;
+        if (southRow > 0) {
+            bound = Math.min(bound, Math.toRadians(centerLat - (-90.0 + southRow * latHeight)));
+        }
+        int northRow = centerRow + ring + 1;
+        if (northRow < latCells) {
+            bound = Math.min(bound, Math.toRadians(-90.0 + northRow * latHeight - centerLat));
+        }
+        int west = westColumns(ring);
+        int east = eastColumns(ring);
+        if (west + east + 1 < lonCells) {
+            double cosLat = Math.cos(Math.toRadians(centerLat));
+            double westLon = -180.0 + (centerCol - west) * lonWidth;
+            double eastLon = -180.0 + (centerCol + east + 1) * lonWidth;
+            bound = Math.min(bound, Math.asin(Math.abs(Math.sin(Math.toRadians(centerLon - westLon))) * cosLat));
+            bound = Math.min(bound, Math.asin(Math.abs(Math.sin(Math.toRadians(eastLon - centerLon))) * cosLat));
+        }
+        return Math.max(0, bound) * GeoMath.EARTH_RADIUS_KM;
+    }
+
+    // Попадает ли ячейка той же точности в уже обойденную область
+    public boolean isVisited(long cell) {
+        if (ring < 0) {
+            return false;
+        }
+        int dRow = GeoHashConverter.latIndex(cell, precision) - centerRow;
+        if (dRow < -ring || dRow > ring) {
+            return false;
+        }
+        int dCol = Math.floorMod(GeoHashConverter.lonIndex(cell, precision) - centerCol, lonCells);
+        return dCol <= eastColumns(ring) || lonCells - dCol <= westColumns(ring);
+    }
+
+    // Сколько столбцов к западу и востоку от центра покрыто кольцами до k включительно;
+    // на узкой у полюса сетке столбцы не должны повторяться
+    private int westColumns(int k) {
+        return Math.min(k, (lonCells - 1) / 2);
+    }
+
+    private int eastColumns(int k) {
+        return Math.min(k, lonCells - 1 - westColumns(k));
+    }
+
+    private boolean rowsComplete(int k) {
+        return centerRow - k <= 0 && centerRow + k >= latCells - 1;
+    }
+
+    private long cell(int row, int dCol) {
+        return GeoHashConverter.fromIndices(row, Math.floorMod(centerCol + dCol, lonCells), precision);
+    }
+}
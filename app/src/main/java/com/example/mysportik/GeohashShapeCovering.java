@@ -0,0 +1,68 @@
+package com.example.mysportik;
+
+// Покрытие произвольной области ячейками геохэша разной точности. Обход идет от 32 ячеек
+// точности 1 вглубь: ячейки вне области отбрасываются, ячейки целиком внутри больше не делятся,
+// а пересекающие границу делятся на 32 дочерних, пока не достигнута нужная точность или лимит
+// ячеек. Внутренняя часть области покрывается крупными ячейками, а мелкие остаются только
+// вдоль границы, поэтому длинный узкий маршрут стоит намного меньше своего bounding box.
+// Ячейки записываются вместе с точностью: (точность << 60) | геохэш
+public class GeohashShapeCovering {
+
+    private static final long CELL_MASK = (1L << 60) - 1;
+
+    // Заполняет inside ячейками целиком внутри области, partial - пересекающими ее границу.
+    // Ячеек в сумме будет не больше maxCells (но не меньше, чем нужно на точности 1)
+    public static void cover(GeoShape shape, int precision, int maxCells, LongList inside, LongList partial) {
+        if (precision < 1 || precision > GeoHashConverter.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be in [1, " + GeoHashConverter.MAX_PRECISION + "]: "
+                    + precision);
+        }
+        double[] box = new double[4];
+        LongList level = new LongList(32);
+        for (int i = 0; i < 32; i++) {
+            level.add(i);
+        }
+        int p = 1;
+        while (true) {
+            // Классифицируем ячейки текущего уровня
+            LongList boundary = new LongList();
+            for (int i = 0; i < level.size(); i++) {
+                long cell = level.get(i);
+                GeoHashConverter.getBoundingBox(cell, p, box);
+                int position = shape.classify(box[0], box[1], box[2], box[3]);
+                if (position == GeoShape.INSIDE) {
+                    inside.add(key(cell, p));
+                } else if (position == GeoShape.PARTIAL) {
+                    boundary.add(cell);
+                }
+            }
+            if (p == precision || inside.size() + partial.size() + boundary.size() * 32L > maxCells) {
+                for (int i = 0; i < boundary.size(); i++) {
+                    partial.add(key(boundary.get(i), p));
+                }
+                return;
+            }
+            // Граничные ячейки делятся на дочерние следующей точности
+            level = new LongList(boundary.size() * 32);
+            for (int i = 0; i < boundary.size(); i++) {
+                long first = boundary.get(i) << 5;
+                for (int child = 0; child < 32; child++) {
+                    level.add(first | child);
+                }
+            }
+            p++;
+        }
+    }
+
+    public static long key(long cell, int precision) {
+        return ((long) precision << 60) | cell;
+    }
+
+    public static long cell(long key) {
+        return key & CELL_MASK;
+    }
+
+    public static int precision(long key) {
+        return (int) (key >>> 60);
+    }
+}
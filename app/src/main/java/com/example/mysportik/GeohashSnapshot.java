@@ -0,0 +1,166 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Неизменяемый компактный индекс меток для чтения: колонки ключей точности 12 и координат,
+// отсортированные по ключу. Строится целиком за один проход (bulk load) и безопасно читается
+// из любого числа потоков без синхронизации. Порядок ключей задает SpatialKeyEncoder
+// (по умолчанию геохэш)
+public final class GeohashSnapshot {
+
+    public static final GeohashSnapshot EMPTY = new GeohashSnapshot(GeoHashConverter.INSTANCE, new long[0],
+            new double[0], new double[0], new Marker[0]);
+
+    private static final int KEY_PRECISION = GeoHashConverter.MAX_PRECISION;
+
+    private final SpatialKeyEncoder encoder;
+    private final long[] hashes;
+    private final double[] lats;
+    private final double[] lons;
+    private final Marker[] markers;
+
+    private GeohashSnapshot(SpatialKeyEncoder encoder, long[] hashes, double[] lats, double[] lons,
+                            Marker[] markers) {
+        this.encoder = encoder;
+        this.hashes = hashes;
+        this.lats = lats;
+        this.lons = lons;
+        this.markers = markers;
+    }
+
+    // Строит снимок: координаты копируются одним плотным проходом и кодируются,
+    // затем метки сортируются по ключу (на больших объемах то и другое - параллельно)
+    public static GeohashSnapshot build(Collection<? extends Marker> source) {
+        return build(source, GeoHashConverter.INSTANCE);
+    }
+
+    // То же с ключами в кодировке encoder: координаты кодируются в геохэш и перекладываются
+    // в номера строки и столбца сетки, так что границы ячеек у всех кодировок одинаковые
+    public static GeohashSnapshot build(Collection<? extends Marker> source, SpatialKeyEncoder encoder) {
+        int n = source.size();
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        Marker[] unsorted = new Marker[n];
+        int i = 0;
+        for (Marker marker : source) {
+            lats[i] = marker.lat;
+            lons[i] = marker.lon;
+            unsorted[i] = marker;
+            i++;
+        }
+        long[] keys = new long[n];
+        GeoHashConverter.parallelEncodeAll(lats, lons, n, KEY_PRECISION, keys);
+        if (encoder != GeoHashConverter.INSTANCE) {
+            IntStream indices = IntStream.range(0, n);
+            if (n >= GeoHashConverter.PARALLEL_ENCODE_THRESHOLD) {
+                indices = indices.parallel();
+            }
+            indices.forEach(k -> keys[k] = encoder.fromIndices(GeoHashConverter.latIndex(keys[k], KEY_PRECISION),
+                    GeoHashConverter.lonIndex(keys[k], KEY_PRECISION), KEY_PRECISION));
+        }
+        return fromUnsorted(encoder, keys, lats, lons, unsorted);
+    }
+
+    // Новый снимок, содержащий метки этого и добавленные: сортируются только новые метки,
+    // потом обе упорядоченные последовательности сливаются за O(n)
+    public GeohashSnapshot withAdded(Collection<? extends Marker> added) {
+        if (added.isEmpty()) {
+            return this;
+        }
+        GeohashSnapshot other = build(added, encoder);
+        int n = size() + other.size();
+        long[] mergedHashes = new long[n];
+        double[] mergedLats = new double[n];
+        double[] mergedLons = new double[n];
+        Marker[] mergedMarkers = new Marker[n];
+        int a = 0;
+        int b = 0;
+        for (int k = 0; k < n; k++) {
+            GeohashSnapshot from;
+            int index;
+            if (b == other.size() || (a < size() && hashes[a] <= other.hashes[b])) {
+                from = this;
+                index = a++;
+            } else {
+                from = other;
+                index = b++;
+            }
+            mergedHashes[k] = from.hashes[index];
+            mergedLats[k] = from.lats[index];
+            mergedLons[k] = from.lons[index];
+            mergedMarkers[k] = from.markers[index];
+        }
+        return new GeohashSnapshot(encoder, mergedHashes, mergedLats, mergedLons, mergedMarkers);
+    }
+
+    // Поиск в радиусе; точность покрытия может быть любой от 0 до 12
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm, int precision) {
+        List<Marker> result = new ArrayList<>();
+        searchInRadius(centerLat, centerLon, radiusKm, precision, result);
+        return result;
+    }
+
+    // Поиск с добавлением результатов в готовый список
+    public void searchInRadius(double centerLat, double centerLon, double radiusKm, int precision, List<Marker> result) {
+        LongList ranges = new LongList();
+        GeohashCovering.coverKeyRanges(centerLat, centerLon, radiusKm, precision, encoder, ranges);
+        int n = hashes.length;
+        for (int r = 0; r < ranges.size(); r += 2) {
+            long end = ranges.get(r + 1);
+            for (int j = GeohashSort.lowerBound(hashes, 0, n, ranges.get(r)); j < n && hashes[j] < end; j++) {
+                if (GeoMath.distanceKm(centerLat, centerLon, lats[j], lons[j]) <= radiusKm) {
+                    result.add(markers[j]);
+                }
+            }
+        }
+    }
+
+    // Сколько меток просмотрит поиск в радиусе (для сравнения кодировок)
+    int candidateCount(double centerLat, double centerLon, double radiusKm, int precision) {
+        LongList ranges = new LongList();
+        GeohashCovering.coverKeyRanges(centerLat, centerLon, radiusKm, precision, encoder, ranges);
+        int n = hashes.length;
+        int count = 0;
+        for (int r = 0; r < ranges.size(); r += 2) {
+            count += GeohashSort.lowerBound(hashes, 0, n, ranges.get(r + 1))
+                    - GeohashSort.lowerBound(hashes, 0, n, ranges.get(r));
+        }
+        return count;
+    }
+
+    public SpatialKeyEncoder encoder() {
+        return encoder;
+    }
+
+    public int size() {
+        return hashes.length;
+    }
+
+    public long estimatedMemoryBytes() {
+        int n = hashes.length;
+        return MemoryFootprint.object(5 * MemoryFootprint.REFERENCE)
+                + MemoryFootprint.array(n, 8) * 3
+                + MemoryFootprint.array(n, MemoryFootprint.REFERENCE)
+                + n * MemoryFootprint.MARKER;
+    }
+
+    private static GeohashSnapshot fromUnsorted(SpatialKeyEncoder encoder, long[] keys, double[] lats, double[] lons, Marker[] unsorted) {
+        int n = keys.length;
+        int[] order = GeohashSort.parallelSortedOrder(keys, n);
+        long[] sortedKeys = new long[n];
+        double[] sortedLats = new double[n];
+        double[] sortedLons = new double[n];
+        Marker[] sortedMarkers = new Marker[n];
+        for (int k = 0; k < n; k++) {
+            int from = order[k];
+            sortedKeys[k] = keys[from];
+            sortedLats[k] = lats[from];
+            sortedLons[k] = lons[from];
+            sortedMarkers[k] = unsorted[from];
+        }
+        return new GeohashSnapshot(encoder, sortedKeys, sortedLats, sortedLons, sortedMarkers);
+    }
+}
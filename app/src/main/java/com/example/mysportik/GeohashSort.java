@@ -0,0 +1,135 @@
+package com.example.mysportik;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Сортировка меток по long-геохэшу без упаковки ключей в объекты
+public class GeohashSort {
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    // На маленьких массивах поразрядная сортировка не окупается
+    private static final int INSERTION_SORT_THRESHOLD = 64;
+    // С какого размера имеет смысл сортировать в несколько потоков
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+    // Число старших бит, по которым ключи раскладываются на независимые корзины
+    private static final int BUCKET_BITS = 10;
+
+    // Возвращает перестановку индексов [from, to), упорядочивающую keys по возрастанию.
+    // Сортировка устойчивая: метки с одинаковым ключом сохраняют порядок добавления
+    public static int[] sortedOrder(long[] keys, int from, int to) {
+        int n = to - from;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = from + i;
+        }
+        sort(keys, order, new int[n], 0, n);
+        return order;
+    }
+
+    // То же для ключей [0, n), но большие массивы сортируются параллельно: индексы раскладываются
+    // по корзинам старших различающихся бит, и корзины сортируются независимо в общем пуле fork/join
+    public static int[] parallelSortedOrder(long[] keys, int n) {
+        if (n < PARALLEL_THRESHOLD) {
+            return sortedOrder(keys, 0, n);
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            min = Math.min(min, keys[i]);
+            max = Math.max(max, keys[i]);
+        }
+        // Корзины строятся по битам ниже общего префикса, иначе кластерные данные упадут в одну корзину
+        int shift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(min ^ max) - BUCKET_BITS);
+        final long base = min;
+        int buckets = 1 << BUCKET_BITS;
+
+        int[] starts = new int[buckets + 1];
+        for (int i = 0; i < n; i++) {
+            starts[bucket(keys[i], base, shift) + 1]++;
+        }
+        for (int b = 0; b < buckets; b++) {
+            starts[b + 1] += starts[b];
+        }
+        int[] order = new int[n];
+        int[] fill = Arrays.copyOf(starts, buckets);
+        for (int i = 0; i < n; i++) {
+            order[fill[bucket(keys[i], base, shift)]++] = i;
+        }
+
+        final int[] sorted = order;
+        final int[] buffer = new int[n];
+        IntStream.range(0, buckets).parallel().forEach(b -> sort(keys, sorted, buffer, starts[b], starts[b + 1]));
+        return sorted;
+    }
+
+    private static int bucket(long key, long base, int shift) {
+        return (int) ((key - base) >>> shift);
+    }
+
+    // Сортирует order[from, to) по ключам keys[order[i]]; buffer - рабочий массив того же размера
+    private static void sort(long[] keys, int[] order, int[] buffer, int from, int to) {
+        int n = to - from;
+        if (n < INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, order, from, to);
+            return;
+        }
+
+        // Поразрядная сортировка по 8 бит, начиная с младших; разряды, одинаковые у всех ключей, пропускаются
+        int[] counts = new int[RADIX + 1];
+        int[] source = order;
+        int[] target = buffer;
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = from; i < to; i++) {
+                counts[digit(keys[source[i]], shift) + 1]++;
+            }
+            if (counts[digit(keys[source[from]], shift) + 1] == n) {
+                continue;
+            }
+            for (int d = 0; d < RADIX; d++) {
+                counts[d + 1] += counts[d];
+            }
+            for (int i = from; i < to; i++) {
+                target[from + counts[digit(keys[source[i]], shift)]++] = source[i];
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != order) {
+            System.arraycopy(source, from, order, from, n);
+        }
+    }
+
+    private static int digit(long key, int shift) {
+        return (int) (key >>> shift) & (RADIX - 1);
+    }
+
+    private static void insertionSort(long[] keys, int[] order, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int current = order[i];
+            long key = keys[current];
+            int j = i - 1;
+            while (j >= from && keys[order[j]] > key) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+    // Первая позиция в [from, to) отсортированного массива, где ключ >= key
+    public static int lowerBound(long[] keys, int from, int to, long key) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -1,30 +1,563 @@
 package com.example.mysportik;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
-public class GeohashStorage {
+public class GeohashStorage implements MarkerStore {
 
-    // Ключ - геохэш строкой, значение - список меток в этой зоне
-    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
-    private Map<String, List<Marker>> storage = new HashMap<>();
+    // Получатель пар меток из proximityJoin
+    public interface PairConsumer {
+        void accept(Marker a, Marker b);
+    }
+
+    // Получатель изменений содержимого: ключ ячейки и добавленная или удаленная метка
+    public interface ChangeListener {
+        void onMarkerAdded(String geohash, Marker marker);
+
+        void onMarkerRemoved(String geohash, Marker marker);
+    }
+
+    // Относительный и абсолютный запас быстрой проверки по хорде: точки, чей квадрат хорды
+    // ближе к порогу, проверяются точной формулой, поэтому результат совпадает с ней бит в бит
+    private static final double CHORD_RELATIVE_MARGIN = 1e-9;
+    private static final double CHORD_ABSOLUTE_MARGIN = 1e-15;
+    // Параллельный поиск: с какого числа меток-кандидатов он включается и сколько кандидатов
+    // достается одной задаче
+    public static final int PARALLEL_SEARCH_THRESHOLD = 1 << 14;
+    private static final int PARALLEL_SEARCH_CHUNK = 1 << 12;
+    // Размер страницы nearestFirst без явного limit
+    public static final int NEAREST_PAGE_SIZE = 100;
+    // Кэш запросов в радиусе; null - кэш выключен
+    private GeohashQueryCache cache;
+    // Счетчики поиска в радиусе; null - замеры выключены и не стоят ничего, кроме одной проверки
+    private QueryMetrics metrics;
+    // Слушатель изменений (например, MarkerTextSearch); null - не задан
+    private ChangeListener changeListener;
+
+    // Ключ - геохэш строкой, значение - метки в этой зоне
+    private Map<String, Cell> storage = new HashMap<>();
+    // Те же ячейки в порядке ключей: ячейки с общим префиксом идут подряд (запросы по форме)
+    private NavigableMap<String, Cell> ordered = new TreeMap<>();
+    // Агрегаты ячеек всех точностей от 1 до точности ключа метки: (точность << 60) | геохэш
+    private Map<Long, Aggregate> aggregates = new HashMap<>();
+    // Битовая маска точностей, с которыми добавлялись метки (бит p - длина ключа p)
+    private int indexedPrecisions;
+    // Номера владельцев (userId) для ячеек; 0 - метка без владельца
+    private final Map<String, Integer> ownerIds = new HashMap<>();
 
     // Добавление метки в хранилище
+    @Override
     public void addMarker(Marker marker, int precision) {
-        String geohash = GeoHashConverter.encode(marker.lat, marker.lon, precision);
-        // Если для данного геохэша нет записи, создаем новый список, добавляем метку в список
-        storage.computeIfAbsent(geohash, k -> new ArrayList<>()).add(marker);
+        long hash = GeoHashConverter.encodeToLong(marker.lat, marker.lon, precision);
+        String geohash = GeoHashConverter.toBase32(hash, precision);
+        indexedPrecisions |= 1 << precision;
+        // Если для данного геохэша нет записи, создаем новую ячейку, добавляем метку в нее
+        Cell cell = storage.get(geohash);
+        if (cell == null) {
+            cell = new Cell(Cell.INITIAL_CAPACITY);
+            storage.put(geohash, cell);
+            ordered.put(geohash, cell);
+        }
+        int index = cell.add(marker, ownerId(marker.userId));
+        addToAggregates(cell, index, hash, precision);
+        if (changeListener != null) {
+            changeListener.onMarkerAdded(geohash, marker);
+        }
+        if (cache != null) {
+            cache.invalidate(hash, precision);
+        }
+    }
+
+    // Удаление метки (сравнение по ссылке), добавленной с той же точностью.
+    // Пустая ячейка удаляется из таблицы
+    public boolean removeMarker(Marker marker, int precision) {
+        long hash = GeoHashConverter.encodeToLong(marker.lat, marker.lon, precision);
+        String geohash = GeoHashConverter.toBase32(hash, precision);
+        Cell cell = storage.get(geohash);
+        if (cell == null || !cell.remove(marker)) {
+            return false;
+        }
+        if (cell.size == 0) {
+            storage.remove(geohash);
+            ordered.remove(geohash);
+        }
+        removeFromAggregates(marker, hash, precision);
+        if (changeListener != null) {
+            changeListener.onMarkerRemoved(geohash, marker);
+        }
+        if (cache != null) {
+            cache.invalidate(hash, precision);
+        }
+        return true;
+    }
+
+    // Пакетное добавление: все координаты кодируются одним проходом в long, метки сортируются
+    // по ключу, и на каждую ячейку создается одна строка-ключ и одна ячейка нужного размера
+    public void addAll(Collection<? extends Marker> markers, int precision) {
+        int n = markers.size();
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        Marker[] source = new Marker[n];
+        int i = 0;
+        for (Marker marker : markers) {
+            lats[i] = marker.lat;
+            lons[i] = marker.lon;
+            source[i] = marker;
+            i++;
+        }
+        long[] keys = new long[n];
+        GeoHashConverter.parallelEncodeAll(lats, lons, n, precision, keys);
+        int[] order = GeohashSort.parallelSortedOrder(keys, n);
+        if (n > 0) {
+            indexedPrecisions |= 1 << precision;
+        }
+
+        int start = 0;
+        while (start < n) {
+            long cell = keys[order[start]];
+            int end = start + 1;
+            while (end < n && keys[order[end]] == cell) {
+                end++;
+            }
+            String geohash = GeoHashConverter.toBase32(cell, precision);
+            Cell target = storage.get(geohash);
+            if (target == null) {
+                target = new Cell(end - start);
+                storage.put(geohash, target);
+                ordered.put(geohash, target);
+            }
+            for (int k = start; k < end; k++) {
+                Marker marker = source[order[k]];
+                int index = target.add(marker, ownerId(marker.userId));
+                addToAggregates(target, index, cell, precision);
+                if (changeListener != null) {
+                    changeListener.onMarkerAdded(geohash, marker);
+                }
+            }
+            if (cache != null) {
+                cache.invalidate(cell, precision);
+            }
+            start = end;
+        }
     }
 
-    // Поиск в радиусе (возвращает список меток)
+    // Поиск в радиусе (возвращает список меток).
+    // Содержимое ячеек просматривается без промежуточного списка; каждая метка сначала сравнивается
+    // по квадрату хорды между единичными векторами, посчитанными при добавлении (три умножения
+    // без тригонометрии), и только метки у самой границы круга проверяются точной формулой.
+    // Результат, включая порядок, совпадает с searchInRadiusReference
+    @Override
     public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm, int precision) {
+        double angle = radiusKm / GeoMath.EARTH_RADIUS_KM;
+        if (!(angle > 0 && angle < Math.PI)) {
+            // Радиус не меньше половины окружности Земли (или некорректный): хорда не монотонна
+            return searchInRadiusReference(centerLat, centerLon, radiusKm, precision);
+        }
+        QueryMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        if (cache != null) {
+            GeohashQueryCache.Key key = GeohashQueryCache.key(centerLat, centerLon, radiusKm, precision);
+            if (key.coverRadiusKm() / GeoMath.EARTH_RADIUS_KM < Math.PI) {
+                List<Marker> result = searchCached(key, centerLat, centerLon, radiusKm, precision);
+                if (metrics != null) {
+                    metrics.recordCached(result.size(), System.nanoTime() - start);
+                }
+                return result;
+            }
+        }
+        List<String> coveringGeohashes = getGeohashesCoveringRadius(centerLat, centerLon, radiusKm, precision);
+        long covered = metrics == null ? 0 : System.nanoTime();
+        RadiusFilter filter = new RadiusFilter(centerLat, centerLon, radiusKm);
+        List<Marker> result = new ArrayList<>();
+        int cellsHit = 0;
+        int candidates = 0;
+        for (String geohash : coveringGeohashes) {
+            Cell cell = storage.get(geohash);
+            if (cell != null) {
+                cellsHit++;
+                candidates += cell.size;
+                filter.collect(cell.markers, cell.xs, cell.ys, cell.zs, cell.size, result);
+            }
+        }
+        if (metrics != null) {
+            metrics.record(coveringGeohashes.size(), cellsHit, candidates, filter.exactChecks, result.size(),
+                    covered - start, System.nanoTime() - covered);
+        }
+        return result;
+    }
+
+    // Поиск в радиусе для больших областей: ячейки покрытия делятся на куски примерно по
+    // PARALLEL_SEARCH_CHUNK кандидатов, каждый кусок фильтруется задачей fork/join в свой список,
+    // и списки склеиваются в исходном порядке, поэтому результат совпадает с searchInRadius без кэша.
+    // Если кандидатов меньше PARALLEL_SEARCH_THRESHOLD, поиск идет в вызывающем потоке.
+    // Хранилище не должно меняться во время поиска
+    public List<Marker> searchInRadiusParallel(double centerLat, double centerLon, double radiusKm, int precision,
+                                               ForkJoinPool pool) {
+        double angle = radiusKm / GeoMath.EARTH_RADIUS_KM;
+        if (!(angle > 0 && angle < Math.PI)) {
+            return searchInRadiusReference(centerLat, centerLon, radiusKm, precision);
+        }
+        QueryMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        List<String> coveringGeohashes = getGeohashesCoveringRadius(centerLat, centerLon, radiusKm, precision);
+        long covered = metrics == null ? 0 : System.nanoTime();
+        Cell[] cells = new Cell[coveringGeohashes.size()];
+        int cellsHit = 0;
+        int candidates = 0;
+        for (String geohash : coveringGeohashes) {
+            Cell cell = storage.get(geohash);
+            if (cell != null) {
+                cells[cellsHit++] = cell;
+                candidates += cell.size;
+            }
+        }
+
+        // Границы кусков: кусок закрывается, как только набрал достаточно кандидатов
+        int[] bounds = new int[Math.max(1, cellsHit) + 1];
+        int chunks = 0;
+        if (candidates < PARALLEL_SEARCH_THRESHOLD) {
+            bounds[++chunks] = cellsHit;
+        } else {
+            int filled = 0;
+            for (int i = 0; i < cellsHit; i++) {
+                filled += cells[i].size;
+                if (filled >= PARALLEL_SEARCH_CHUNK || i == cellsHit - 1) {
+                    bounds[++chunks] = i + 1;
+                    filled = 0;
+                }
+            }
+        }
+        RadiusFilter[] filters = new RadiusFilter[chunks];
+        List<Marker>[] parts = newPartArray(chunks);
+        FilterTask task = new FilterTask(centerLat, centerLon, radiusKm, cells, bounds, filters, parts, 0, chunks);
+        if (chunks == 1) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+
+        int total = 0;
+        for (List<Marker> part : parts) {
+            total += part.size();
+        }
+        List<Marker> result = new ArrayList<>(total);
+        int exactChecks = 0;
+        for (int c = 0; c < chunks; c++) {
+            result.addAll(parts[c]);
+            exactChecks += filters[c].exactChecks;
+        }
+        if (metrics != null) {
+            metrics.record(coveringGeohashes.size(), cellsHit, candidates, exactChecks, result.size(),
+                    covered - start, System.nanoTime() - covered);
+        }
+        return result;
+    }
+
+    // То же в общем пуле fork/join
+    public List<Marker> searchInRadiusParallel(double centerLat, double centerLon, double radiusKm, int precision) {
+        return searchInRadiusParallel(centerLat, centerLon, radiusKm, precision, ForkJoinPool.commonPool());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Marker>[] newPartArray(int size) {
+        return new List[size];
+    }
+
+    // Все пары меток (добавленных с точностью precision), расстояние между которыми не больше
+    // thresholdKm; каждая пара передается один раз. Ячейки обрабатываются параллельно в пуле,
+    // поэтому consumer должен быть потокобезопасным. Хранилище не должно меняться во время обхода
+    public void proximityJoin(double thresholdKm, int precision, ForkJoinPool pool, PairConsumer consumer) {
+        ProximityJoin join = buildJoin(thresholdKm, precision);
+        join.run(pool, (i, j) -> consumer.accept(join.marker(i), join.marker(j)));
+    }
+
+    // То же в вызывающем потоке
+    public void proximityJoin(double thresholdKm, int precision, PairConsumer consumer) {
+        proximityJoin(thresholdKm, precision, null, consumer);
+    }
+
+    // Группы меток, связанных цепочками пар ближе thresholdKm (дубликаты точек, места встреч),
+    // в порядке ключей ячеек. Одиночные метки не возвращаются. Пары объединяются в системе
+    // непересекающихся множеств без блокировок: корень подвешивается к корню с меньшим номером
+    // через compareAndSet, так что параллельные задачи не мешают друг другу
+    public List<List<Marker>> proximityClusters(double thresholdKm, int precision, ForkJoinPool pool) {
+        ProximityJoin join = buildJoin(thresholdKm, precision);
+        int n = join.size();
+        AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) {
+            parent.set(i, i);
+        }
+        join.run(pool, (i, j) -> union(parent, i, j));
+
+        int[] roots = new int[n];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            roots[i] = find(parent, i);
+            counts[roots[i]]++;
+        }
+        List<List<Marker>> clusters = new ArrayList<>();
+        int[] clusterOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            int root = roots[i];
+            if (counts[root] < 2) {
+                continue;
+            }
+            if (root == i) {
+                clusterOf[root] = clusters.size();
+                clusters.add(new ArrayList<>(counts[root]));
+            }
+            // Корень - наименьший номер в группе, поэтому группа уже создана
+            clusters.get(clusterOf[root]).add(join.marker(i));
+        }
+        return clusters;
+    }
+
+    public List<List<Marker>> proximityClusters(double thresholdKm, int precision) {
+        return proximityClusters(thresholdKm, precision, ForkJoinPool.commonPool());
+    }
+
+    // Метки точности precision, сгруппированные по ячейкам соединения. Ячейка соединения - префикс
+    // ключа хранилища, а в ordered ключи с общим префиксом идут подряд, так что группы собираются
+    // одним проходом без сортировки
+    private ProximityJoin buildJoin(double thresholdKm, int precision) {
+        if (!(thresholdKm > 0 && thresholdKm / GeoMath.EARTH_RADIUS_KM < Math.PI)) {
+            throw new IllegalArgumentException("Threshold must be in (0, pi * R): " + thresholdKm);
+        }
+        int joinPrecision = ProximityJoin.joinPrecision(thresholdKm, precision);
+        int shift = (precision - joinPrecision) * 5;
+        int total = 0;
+        int cellCount = 0;
+        long previous = -1;
+        for (Map.Entry<String, Cell> entry : ordered.entrySet()) {
+            if (entry.getKey().length() == precision && entry.getValue().size > 0) {
+                long hash = GeoHashConverter.fromBase32(entry.getKey()) >>> shift;
+                if (hash != previous) {
+                    cellCount++;
+                    previous = hash;
+                }
+                total += entry.getValue().size;
+            }
+        }
+        long[] hashes = new long[cellCount];
+        int[] starts = new int[cellCount + 1];
+        Marker[] markers = new Marker[total];
+        double[] xs = new double[total];
+        double[] ys = new double[total];
+        double[] zs = new double[total];
+        int c = -1;
+        int filled = 0;
+        for (Map.Entry<String, Cell> entry : ordered.entrySet()) {
+            Cell cell = entry.getValue();
+            if (entry.getKey().length() == precision && cell.size > 0) {
+                long hash = GeoHashConverter.fromBase32(entry.getKey()) >>> shift;
+                if (c < 0 || hash != hashes[c]) {
+                    hashes[++c] = hash;
+                    starts[c] = filled;
+                }
+                System.arraycopy(cell.markers, 0, markers, filled, cell.size);
+                System.arraycopy(cell.xs, 0, xs, filled, cell.size);
+                System.arraycopy(cell.ys, 0, ys, filled, cell.size);
+                System.arraycopy(cell.zs, 0, zs, filled, cell.size);
+                filled += cell.size;
+            }
+        }
+        starts[cellCount] = total;
+        return new ProximityJoin(joinPrecision, thresholdKm, hashes, starts, markers, xs, ys, zs);
+    }
+
+    private static int find(AtomicIntegerArray parent, int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) {
+                return x;
+            }
+            // Сокращение пути вдвое; гонка здесь безопасна, ссылка все равно ведет к предку
+            int grandparent = parent.get(p);
+            parent.compareAndSet(x, p, grandparent);
+            x = grandparent;
+        }
+    }
+
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b) {
+                return;
+            }
+            if (a < b) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            if (parent.compareAndSet(a, a, b)) {
+                return;
+            }
+        }
+    }
+
+    // Выгружает метки, добавленные с точностью precision, в порядке ключей ячеек: поток писателя
+    // получается упорядоченным по ячейкам без сортировки всего хранилища
+    public void writeTo(MarkerBatchWriter writer, int precision) throws IOException {
+        for (Map.Entry<String, Cell> entry : ordered.entrySet()) {
+            if (entry.getKey().length() == precision) {
+                Cell cell = entry.getValue();
+                for (int i = 0; i < cell.size; i++) {
+                    writer.write(cell.markers[i]);
+                }
+            }
+        }
+    }
+
+    // Включает сбор счетчиков и гистограмм поиска в радиусе (прежние значения сбрасываются)
+    public void enableMetrics() {
+        metrics = new QueryMetrics();
+    }
+
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    // Счетчики поиска; null, если замеры выключены
+    public QueryMetrics metrics() {
+        return metrics;
+    }
+
+    // Поиск в радиусе только среди меток, подходящих под filter. Публичные метки ячейки берутся
+    // по списку их позиций, личные метки владельца - непрерывный диапазон, найденный двоичным
+    // поиском по номерам владельцев; координаты остальных меток не читаются. В каждой ячейке
+    // публичные метки идут раньше личных, порядок добавления сохраняется внутри каждой из групп.
+    // Кэш запросов не используется
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm, int precision,
+                                       MarkerFilter filter) {
+        double angle = radiusKm / GeoMath.EARTH_RADIUS_KM;
+        if (!(angle > 0 && angle < Math.PI)) {
+            List<Marker> result = new ArrayList<>();
+            for (Marker marker : searchInRadiusReference(centerLat, centerLon, radiusKm, precision)) {
+                if (filter.accepts(marker)) {
+                    result.add(marker);
+                }
+            }
+            return result;
+        }
+        QueryMetrics metrics = this.metrics;
+        long start = metrics == null ? 0 : System.nanoTime();
+        List<String> coveringGeohashes = getGeohashesCoveringRadius(centerLat, centerLon, radiusKm, precision);
+        long covered = metrics == null ? 0 : System.nanoTime();
+        // Владелец, которого нет в хранилище, не совпадает ни с одной меткой
+        Integer known = filter.owner == null ? null : ownerIds.get(filter.owner);
+        int owner = known == null ? -1 : known;
+        RadiusFilter radius = new RadiusFilter(centerLat, centerLon, radiusKm);
+        List<Marker> result = new ArrayList<>();
+        int cellsHit = 0;
+        int candidates = 0;
+        for (String geohash : coveringGeohashes) {
+            Cell cell = storage.get(geohash);
+            if (cell == null) {
+                continue;
+            }
+            cellsHit++;
+            if (filter.publicMarkers) {
+                radius.collectAt(cell.markers, cell.xs, cell.ys, cell.zs, cell.publicPositions, 0, cell.publicCount,
+                        result);
+                candidates += cell.publicCount;
+            } else if (owner >= 0) {
+                candidates += radius.collectOwned(cell.markers, cell.xs, cell.ys, cell.zs, cell.owners,
+                        cell.publicPositions, 0, cell.publicCount, owner, result);
+            }
+            if (owner >= 0) {
+                int from = cell.ownerFrom(owner);
+                int to = cell.ownerTo(owner);
+                radius.collectAt(cell.markers, cell.xs, cell.ys, cell.zs, cell.privatePositions, from, to, result);
+                candidates += to - from;
+                // Недавно добавленные личные метки еще не упорядочены по владельцу
+                candidates += radius.collectOwned(cell.markers, cell.xs, cell.ys, cell.zs, cell.owners,
+                        cell.privatePositions, cell.privateSorted, cell.privateCount, owner, result);
+            }
+        }
+        if (metrics != null) {
+            metrics.record(coveringGeohashes.size(), cellsHit, candidates, radius.exactChecks, result.size(),
+                    covered - start, System.nanoTime() - covered);
+        }
+        return result;
+    }
+
+    // Задает слушателя изменений (null - снять). Новый слушатель сразу получает onMarkerAdded
+    // для всех меток, которые уже лежат в хранилище; прежний слушатель больше ничего не получает
+    public void setChangeListener(ChangeListener listener) {
+        if (listener != null) {
+            for (Map.Entry<String, Cell> entry : storage.entrySet()) {
+                Cell cell = entry.getValue();
+                for (int i = 0; i < cell.size; i++) {
+                    listener.onMarkerAdded(entry.getKey(), cell.markers[i]);
+                }
+            }
+        }
+        changeListener = listener;
+    }
+
+    // Включает кэш запросов в радиусе не больше чем на maxEntries запросов и maxMarkers меток-кандидатов
+    public void enableQueryCache(int maxEntries, int maxMarkers) {
+        cache = new GeohashQueryCache(maxEntries, maxMarkers);
+    }
+
+    public void disableQueryCache() {
+        cache = null;
+    }
+
+    // Кэш запросов (для счетчиков попаданий); null, если кэш выключен
+    public GeohashQueryCache queryCache() {
+        return cache;
+    }
+
+    // Поиск через кэш. Результат совпадает с поиском без кэша как множество, но порядок меток
+    // задается покрытием записи кэша. Запись кэша строится для центра ячейки сетки квантования и радиуса,
+    // округленного вверх, с запасом на смещение центра: ее кандидаты заведомо содержат ответ
+    // на любой запрос с тем же ключом, и остается только точно отфильтровать их
+    private List<Marker> searchCached(GeohashQueryCache.Key key, double centerLat, double centerLon, double radiusKm,
+                                      int precision) {
+        GeohashQueryCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            double coverLat = key.centerLat();
+            double coverLon = key.centerLon();
+            double coverRadius = key.coverRadiusKm();
+            LongList cells = new LongList();
+            int coverPrecision = GeohashCovering.cover(coverLat, coverLon, coverRadius, precision,
+                    GeohashCovering.DEFAULT_MAX_CELLS, cells);
+            RadiusFilter filter = new RadiusFilter(coverLat, coverLon, coverRadius);
+            List<Marker> candidates = new ArrayList<>();
+            long[] dependencies = new long[cells.size()];
+            for (int i = 0; i < cells.size(); i++) {
+                dependencies[i] = GeohashShapeCovering.key(cells.get(i), coverPrecision);
+                for (Cell cell : cellsWithPrefix(dependencies[i], precision)) {
+                    filter.collect(cell.markers, cell.xs, cell.ys, cell.zs, cell.size, candidates);
+                }
+            }
+            entry = cache.put(key, candidates, dependencies);
+        }
+        RadiusFilter filter = new RadiusFilter(centerLat, centerLon, radiusKm);
+        List<Marker> result = new ArrayList<>();
+        filter.collect(entry.markers, entry.xs, entry.ys, entry.zs, entry.markers.length, result);
+        return result;
+    }
+
+    // Эталонный поиск: кандидаты собираются в список и каждый проверяется формулой гаверсинусов.
+    // Оставлен для проверки быстрого пути в тестах
+    List<Marker> searchInRadiusReference(double centerLat, double centerLon, double radiusKm, int precision) {
         // Получаем список геохэшей, покрывающих искомую область
-        Set<String> coveringGeohashes = getGeohashesCoveringRadius(centerLat, centerLon, radiusKm, precision);
+        List<String> coveringGeohashes = getGeohashesCoveringRadius(centerLat, centerLon, radiusKm, precision);
 
         // Собираем все метки из найденных геохэшей
         List<Marker> candidates = new ArrayList<>();
         for (String geohash : coveringGeohashes) {
             // Добавляем все метки из текущего геохэша (если есть)
-            candidates.addAll(storage.getOrDefault(geohash, Collections.emptyList()));
+            Cell cell = storage.get(geohash);
+            if (cell != null) {
+                candidates.addAll(Arrays.asList(cell.markers).subList(0, cell.size));
+            }
         }
 
         // Точная фильтрация: оставляем только метки в заданном радиусе
@@ -37,84 +570,814 @@ public class GeohashStorage {
         return result;
     }
 
-    // Метод для определения геохэшей, покрывающих заданный радиус
-    private Set<String> getGeohashesCoveringRadius(double lat, double lon, double radiusKm, int precision) {
-        double[] bbox = calculateBoundingBox(lat, lon, radiusKm);
-        double minLat = bbox[0], maxLat = bbox[1];
-        double minLon = bbox[2], maxLon = bbox[3];
-
-        // 2. Поиск всех геохашей, пересекающихся с bounding box
-        Set<String> hashes = new HashSet<>();
-        Queue<String> queue = new LinkedList<>();
-        queue.add("");
+    // Метки внутри полигона (например, границы парка), вершины в градусах
+    public List<Marker> searchInPolygon(double[] lats, double[] lons, int precision) {
+        return searchInShape(new GeoPolygon(lats, lons), precision);
+    }
 
-        while (!queue.isEmpty()) {
-            String hash = queue.poll();
-            double[][] cellBox = GeoHashConverter.getBoundingBox(hash);
+    // Метки не дальше bufferKm от маршрута (ломаной по точкам трека)
+    public List<Marker> searchAlongRoute(double[] lats, double[] lons, double bufferKm, int precision) {
+        return searchInShape(new GeoCorridor(lats, lons, bufferKm), precision);
+    }
 
-            // Проверка пересечения ячейки с bounding box
-            if (intersects(cellBox, minLat, maxLat, minLon, maxLon)) {
-                if (hash.length() == precision) {
-                    hashes.add(hash);
-                } else {
-                    // Генерация дочерних геохашей
-                    for (char c : BASE32.toCharArray()) {
-                        queue.add(hash + c);
+    // Поиск в произвольной области по ключам длины precision. Область покрывается ячейками
+    // разной точности; метки ячеек целиком внутри берутся без проверки, проверяются только
+    // метки ячеек на границе. Ячейка грубее ключей - это диапазон ключей с ее префиксом
+    public List<Marker> searchInShape(GeoShape shape, int precision) {
+        LongList inside = new LongList();
+        LongList partial = new LongList();
+        GeohashShapeCovering.cover(shape, precision, GeohashCovering.DEFAULT_MAX_CELLS, inside, partial);
+        List<Marker> result = new ArrayList<>();
+        for (int i = 0; i < inside.size(); i++) {
+            for (Cell cell : cellsWithPrefix(inside.get(i), precision)) {
+                result.addAll(Arrays.asList(cell.markers).subList(0, cell.size));
+            }
+        }
+        for (int i = 0; i < partial.size(); i++) {
+            for (Cell cell : cellsWithPrefix(partial.get(i), precision)) {
+                for (int j = 0; j < cell.size; j++) {
+                    Marker marker = cell.markers[j];
+                    if (shape.contains(marker.lat, marker.lon)) {
+                        result.add(marker);
                     }
                 }
             }
         }
-        return hashes;
+        return result;
+    }
+
+    // Ячейки хранилища с ключами длины precision внутри ячейки покрытия
+    private Collection<Cell> cellsWithPrefix(long coverKey, int precision) {
+        int coverPrecision = GeohashShapeCovering.precision(coverKey);
+        String prefix = GeoHashConverter.toBase32(GeohashShapeCovering.cell(coverKey), coverPrecision);
+        if (coverPrecision == precision) {
+            Cell cell = storage.get(prefix);
+            return cell == null ? Collections.<Cell>emptyList() : Collections.singletonList(cell);
+        }
+        // Все строки с префиксом лежат между prefix и prefix + символ больше любого символа BASE32
+        List<Cell> cells = new ArrayList<>();
+        for (Map.Entry<String, Cell> entry : ordered.subMap(prefix, true, prefix + '~', false).entrySet()) {
+            if (entry.getKey().length() == precision) {
+                cells.add(entry.getValue());
+            }
+        }
+        return cells;
+    }
+
+    // Кластеры для отрисовки карты: по каждой непустой ячейке, пересекающей прямоугольник, -
+    // число меток, центр масс и представитель. Берутся из агрегатов, которые поддерживаются
+    // при добавлении и удалении, поэтому время зависит только от числа ячеек, а не меток.
+    // Если ячеек точности precision больше maxCells, точность понижается. Учитываются метки,
+    // добавленные с точностью не меньше precision
+    public List<MarkerCluster> clusters(double minLat, double maxLat, double minLon, double maxLon,
+                                        int precision, int maxCells) {
+        LongList cells = new LongList();
+        int p = GeohashCovering.coverBox(minLat, maxLat, minLon, maxLon, Math.max(precision, 1), maxCells, cells);
+        if (p == 0) {
+            // Весь мир одной ячейкой не агрегируется: берем 32 ячейки точности 1
+            p = 1;
+            cells.clear();
+            GeohashCovering.coverBox(minLat, maxLat, minLon, maxLon, 1, Integer.MAX_VALUE, cells);
+        }
+        List<MarkerCluster> result = new ArrayList<>();
+        for (int i = 0; i < cells.size(); i++) {
+            Aggregate aggregate = aggregates.get(GeohashShapeCovering.key(cells.get(i), p));
+            if (aggregate != null) {
+                double norm = Math.sqrt(aggregate.x * aggregate.x + aggregate.y * aggregate.y
+                        + aggregate.z * aggregate.z);
+                double centroidLat = Math.toDegrees(Math.asin(Math.max(-1.0, Math.min(1.0, aggregate.z / norm))));
+                double centroidLon = Math.toDegrees(Math.atan2(aggregate.y, aggregate.x));
+                result.add(new MarkerCluster(GeoHashConverter.toBase32(cells.get(i), p), aggregate.count,
+                        centroidLat, centroidLon, aggregate.representative));
+            }
+        }
+        return result;
+    }
+
+    public List<MarkerCluster> clusters(double minLat, double maxLat, double minLon, double maxLon, int precision) {
+        return clusters(minLat, maxLat, minLon, maxLon, precision, GeohashCovering.DEFAULT_MAX_CELLS);
+    }
+
+    // Точность кластеров для уровня масштаба карты (0 - весь мир на одном тайле 256 px):
+    // самая мелкая ячейка не уже четверти тайла
+    public static int precisionForZoom(int zoom) {
+        int precision = 1;
+        while (precision < GeoHashConverter.MAX_PRECISION && GeoHashConverter.lonBits(precision + 1) <= zoom + 2) {
+            precision++;
+        }
+        return precision;
     }
 
-    // Расчет bounding box радиуса
-    private double[] calculateBoundingBox(double lat, double lon, double radiusKm) {
-        final double R = 6371.0;
-        double deltaLat = Math.toDegrees(radiusKm / R);
-        double deltaLon = Math.toDegrees(radiusKm / (R * Math.cos(Math.toRadians(lat))));
+    // Номер владельца для ячеек: 0 - без владельца, остальные выдаются по мере появления
+    private int ownerId(String userId) {
+        if (userId == null) {
+            return 0;
+        }
+        Integer id = ownerIds.get(userId);
+        if (id == null) {
+            id = ownerIds.size() + 1;
+            ownerIds.put(userId, id);
+        }
+        return id;
+    }
+
+    // Метка добавлена в ячейку cell с ключом hash: обновляем агрегаты всех ее префиксов
+    private void addToAggregates(Cell cell, int index, long hash, int precision) {
+        Marker marker = cell.markers[index];
+        for (int p = precision; p >= 1; p--) {
+            long key = GeohashShapeCovering.key(hash >>> (5 * (precision - p)), p);
+            Aggregate aggregate = aggregates.get(key);
+            if (aggregate == null) {
+                aggregate = new Aggregate(marker);
+                aggregates.put(key, aggregate);
+            }
+            aggregate.count++;
+            aggregate.x += cell.xs[index];
+            aggregate.y += cell.ys[index];
+            aggregate.z += cell.zs[index];
+        }
+    }
+
+    // Обратная операция. Агрегаты обновляются от мелких к крупным, поэтому если удаленная метка
+    // была представителем, замена берется из уже исправленных дочерних агрегатов
+    private void removeFromAggregates(Marker marker, long hash, int precision) {
+        double latRad = Math.toRadians(marker.lat);
+        double lonRad = Math.toRadians(marker.lon);
+        double cosLat = Math.cos(latRad);
+        for (int p = precision; p >= 1; p--) {
+            long prefix = hash >>> (5 * (precision - p));
+            long key = GeohashShapeCovering.key(prefix, p);
+            Aggregate aggregate = aggregates.get(key);
+            if (--aggregate.count == 0) {
+                aggregates.remove(key);
+                continue;
+            }
+            aggregate.x -= cosLat * Math.cos(lonRad);
+            aggregate.y -= cosLat * Math.sin(lonRad);
+            aggregate.z -= Math.sin(latRad);
+            if (aggregate.representative == marker) {
+                aggregate.representative = replacement(prefix, p);
+            }
+        }
+    }
+
+    // Любая метка ячейки: из ячейки хранилища с этим ключом или из дочернего агрегата
+    private Marker replacement(long prefix, int precision) {
+        Cell cell = storage.get(GeoHashConverter.toBase32(prefix, precision));
+        if (cell != null) {
+            return cell.markers[0];
+        }
+        for (int child = 0; child < 32 && precision < GeoHashConverter.MAX_PRECISION; child++) {
+            Aggregate aggregate = aggregates.get(GeohashShapeCovering.key((prefix << 5) | child, precision + 1));
+            if (aggregate != null) {
+                return aggregate.representative;
+            }
+        }
+        return null;
+    }
+
+    // Метки в радиусе по возрастанию расстояния, не больше limit штук (limit >= 1). resumeToken - токен
+    // предыдущей страницы (null для первой). Ячейки обходятся кольцами от центра, метка выдается,
+    // как только ни одна необойденная ячейка не может содержать метку ближе. Кандидатов хранится
+    // не больше limit, поэтому память зависит от размера страницы, а не от радиуса.
+    // Токен хранит только расстояние последней метки, и каждая страница заново обходит ячейки
+    // от центра до этого расстояния: страница k стоит как поиск в радиусе ее дальней метки, а
+    // выдача N меток страницами по limit - O(N * N / limit). Если нужны все метки подряд, дешевле
+    // один курсор с большим limit, чем много коротких страниц
+    public MarkerCursor nearestFirst(double centerLat, double centerLon, double radiusKm, int precision,
+                                     int limit, String resumeToken) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        return new NearestCursor(centerLat, centerLon, radiusKm, precision, limit, resumeToken);
+    }
+
+    // Первая страница из NEAREST_PAGE_SIZE ближайших меток
+    public MarkerCursor nearestFirst(double centerLat, double centerLon, double radiusKm, int precision) {
+        return nearestFirst(centerLat, centerLon, radiusKm, precision, NEAREST_PAGE_SIZE, null);
+    }
+
+    // k ближайших меток не дальше maxRadiusKm, отсортированных по расстоянию.
+    // Ячейки обходятся кольцами от центра; обход прекращается, как только ни одна
+    // необойденная ячейка не может содержать метку ближе k-й найденной
+    public List<Marker> nearest(double centerLat, double centerLon, int k, double maxRadiusKm) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        // Куча с наибольшим расстоянием наверху: k лучших кандидатов
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(k, (a, b) -> Double.compare(b.distanceKm, a.distanceKm));
+        for (int precision = 0; precision <= GeoHashConverter.MAX_PRECISION; precision++) {
+            if ((indexedPrecisions & (1 << precision)) != 0) {
+                collectNearest(centerLat, centerLon, k, maxRadiusKm, precision, best);
+            }
+        }
+
+        List<Neighbor> sorted = new ArrayList<>(best);
+        Collections.sort(sorted, (a, b) -> Double.compare(a.distanceKm, b.distanceKm));
+        List<Marker> result = new ArrayList<>(sorted.size());
+        for (Neighbor neighbor : sorted) {
+            result.add(neighbor.marker);
+        }
+        return result;
+    }
+
+    // Обход кольцами по ключам одной точности
+    private void collectNearest(double centerLat, double centerLon, int k, double maxRadiusKm, int precision,
+                                PriorityQueue<Neighbor> best) {
+        GeohashRings rings = new GeohashRings(centerLat, centerLon, precision);
+        LongList cells = new LongList();
+        long visitedCells = 0;
+        while (rings.nextRing(cells)) {
+            for (int i = 0; i < cells.size(); i++) {
+                Cell cell = storage.get(GeoHashConverter.toBase32(cells.get(i), precision));
+                if (cell != null) {
+                    offerAll(cell, centerLat, centerLon, k, maxRadiusKm, best);
+                }
+            }
+            visitedCells += cells.size();
+            cells.clear();
+
+            double unvisited = rings.unvisitedDistanceKm();
+            if (unvisited > maxRadiusKm || (best.size() == k && unvisited >= best.peek().distanceKm)) {
+                return;
+            }
+            // Кольца стали больше, чем занятых ячеек: дешевле просмотреть оставшиеся ключи напрямую
+            if (visitedCells > storage.size()) {
+                for (Map.Entry<String, Cell> entry : storage.entrySet()) {
+                    String geohash = entry.getKey();
+                    if (geohash.length() == precision && !rings.isVisited(GeoHashConverter.fromBase32(geohash))) {
+                        offerAll(entry.getValue(), centerLat, centerLon, k, maxRadiusKm, best);
+                    }
+                }
+                return;
+            }
+        }
+    }
 
-        return new double[] {
-                lat - deltaLat,  // minLat
-                lat + deltaLat,  // maxLat
-                lon - deltaLon,  // minLon
-                lon + deltaLon   // maxLon
-        };
+    private void offerAll(Cell cell, double centerLat, double centerLon, int k, double maxRadiusKm,
+                          PriorityQueue<Neighbor> best) {
+        for (int i = 0; i < cell.size; i++) {
+            Marker marker = cell.markers[i];
+            double distance = calculateDistance(centerLat, centerLon, marker.lat, marker.lon);
+            if (distance > maxRadiusKm) {
+                continue;
+            }
+            if (best.size() < k) {
+                best.add(new Neighbor(marker, distance));
+            } else if (distance < best.peek().distanceKm) {
+                best.poll();
+                best.add(new Neighbor(marker, distance));
+            }
+        }
     }
 
-    // Проверка пересечения двух прямоугольников
-    private boolean intersects(double[][] cellBox, double minLat, double maxLat, double minLon, double maxLon) {
+    // Метод для определения геохэшей, покрывающих заданный радиус.
+    // Ячейки перебираются напрямую по сетке bounding box; если их слишком много, покрытие строится
+    // на более грубой точности, и тогда берутся все ключи хранилища с подходящим префиксом
+    List<String> getGeohashesCoveringRadius(double lat, double lon, double radiusKm, int precision) {
+        LongList cells = new LongList();
+        int coverPrecision = GeohashCovering.cover(lat, lon, radiusKm, precision,
+                GeohashCovering.DEFAULT_MAX_CELLS, cells);
 
-        double cellMinLat = cellBox[0][0];
-        double cellMaxLat = cellBox[0][1];
-        double cellMinLon = cellBox[1][0];
-        double cellMaxLon = cellBox[1][1];
+        List<String> hashes = new ArrayList<>(cells.size());
+        if (coverPrecision == precision) {
+            for (int i = 0; i < cells.size(); i++) {
+                hashes.add(GeoHashConverter.toBase32(cells.get(i), precision));
+            }
+            return hashes;
+        }
 
-        return !(cellMaxLat < minLat ||
-                cellMinLat > maxLat ||
-                cellMaxLon < minLon ||
-                cellMinLon > maxLon);
+        cells.sort();
+        int shift = (precision - coverPrecision) * 5;
+        for (String geohash : storage.keySet()) {
+            if (geohash.length() == precision
+                    && cells.binarySearch(GeoHashConverter.fromBase32(geohash) >>> shift) >= 0) {
+                hashes.add(geohash);
+            }
+        }
+        return hashes;
+    }
 
-        /*return !(cellBox[0][1] < minLat ||
-                cellBox[0][0] > maxLat ||
-                cellBox[1][1] < minLon ||
-                cellBox[1][0] > maxLon);*/
+    // Оценка памяти: таблица HashMap и узел TreeMap, узел HashMap и строка-ключ на каждую ячейку,
+    // ячейка с массивами меток и единичных векторов, объект Marker на каждую метку
+    // и агрегаты ячеек (узел, ключ Long и сам агрегат). Память слушателя изменений не входит
+    @Override
+    public long estimatedMemoryBytes() {
+        long bytes = MemoryFootprint.object(3 * MemoryFootprint.REFERENCE + 4)
+                + MemoryFootprint.object(3 * MemoryFootprint.REFERENCE + 4 * 4)
+                + MemoryFootprint.array(Integer.highestOneBit(Math.max(1, aggregates.size() * 4 / 3)) * 2L,
+                MemoryFootprint.REFERENCE)
+                + aggregates.size() * (MemoryFootprint.object(4 + 3 * MemoryFootprint.REFERENCE)
+                + MemoryFootprint.object(8) + MemoryFootprint.object(4 + 3 * 8 + MemoryFootprint.REFERENCE))
+                + MemoryFootprint.object(3 * MemoryFootprint.REFERENCE + 4 * 4)
+                + MemoryFootprint.object(3 * MemoryFootprint.REFERENCE + 2 * 4)
+                + storage.size() * MemoryFootprint.object(5 * MemoryFootprint.REFERENCE + 1)
+                + MemoryFootprint.array(Integer.highestOneBit(Math.max(1, storage.size() * 4 / 3)) * 2L,
+                MemoryFootprint.REFERENCE);
+        // Номера владельцев: узел таблицы и Integer на владельца (строки принадлежат меткам)
+        bytes += MemoryFootprint.object(3 * MemoryFootprint.REFERENCE + 4 * 4)
+                + MemoryFootprint.array(Integer.highestOneBit(Math.max(1, ownerIds.size() * 4 / 3)) * 2L,
+                MemoryFootprint.REFERENCE)
+                + ownerIds.size() * (MemoryFootprint.object(4 + 3 * MemoryFootprint.REFERENCE)
+                + MemoryFootprint.object(4));
+        for (Map.Entry<String, Cell> entry : storage.entrySet()) {
+            Cell cell = entry.getValue();
+            bytes += MemoryFootprint.object(4 + 3 * MemoryFootprint.REFERENCE)
+                    + MemoryFootprint.string(entry.getKey())
+                    + MemoryFootprint.object(4 * 4 + 7 * MemoryFootprint.REFERENCE)
+                    + MemoryFootprint.array(cell.markers.length, MemoryFootprint.REFERENCE)
+                    + 3 * MemoryFootprint.array(cell.xs.length, 8)
+                    + MemoryFootprint.array(cell.owners.length, 4)
+                    + MemoryFootprint.array(cell.publicPositions.length, 4)
+                    + MemoryFootprint.array(cell.privatePositions.length, 4)
+                    + cell.size * MemoryFootprint.MARKER;
+        }
+        return bytes;
     }
 
     // Расчет расстояния между двумя точками по формуле гаверсинусов
     private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Радиус Земли в километрах
+        return GeoMath.distanceKm(lat1, lon1, lat2, lon2);
+    }
+
+    // Проверка попадания меток в круг: сначала по квадрату хорды между единичными векторами,
+    // точная формула гаверсинусов - только для меток у самой границы (и для NaN).
+    // Радиус должен быть в (0, пи * R)
+    private static final class RadiusFilter {
+        final double centerLat;
+        final double centerLon;
+        final double radiusKm;
+        final double cx;
+        final double cy;
+        final double cz;
+        final double accept;
+        final double reject;
+        // Сколько меток проверено точной формулой
+        int exactChecks;
+
+        RadiusFilter(double centerLat, double centerLon, double radiusKm) {
+            this.centerLat = centerLat;
+            this.centerLon = centerLon;
+            this.radiusKm = radiusKm;
+            double latRad = Math.toRadians(centerLat);
+            double lonRad = Math.toRadians(centerLon);
+            double cosLat = Math.cos(latRad);
+            cx = cosLat * Math.cos(lonRad);
+            cy = cosLat * Math.sin(lonRad);
+            cz = Math.sin(latRad);
+            // Хорда круга углового радиуса angle: 2 sin(angle / 2)
+            double halfChord = Math.sin(radiusKm / GeoMath.EARTH_RADIUS_KM / 2);
+            double threshold = 4 * halfChord * halfChord;
+            double margin = threshold * CHORD_RELATIVE_MARGIN + CHORD_ABSOLUTE_MARGIN;
+            accept = threshold - margin;
+            reject = threshold + margin;
+        }
+
+        void collect(Marker[] markers, double[] xs, double[] ys, double[] zs, int size, List<Marker> out) {
+            collect(markers, xs, ys, zs, 0, size, out);
+        }
+
+        void collect(Marker[] markers, double[] xs, double[] ys, double[] zs, int from, int to, List<Marker> out) {
+            for (int i = from; i < to; i++) {
+                double dx = xs[i] - cx;
+                double dy = ys[i] - cy;
+                double dz = zs[i] - cz;
+                double chord2 = dx * dx + dy * dy + dz * dz;
+                if (chord2 < accept) {
+                    out.add(markers[i]);
+                } else if (!(chord2 > reject)) {
+                    // Пограничная метка (или NaN): решает точная формула
+                    exactChecks++;
+                    Marker marker = markers[i];
+                    if (GeoMath.distanceKm(centerLat, centerLon, marker.lat, marker.lon) <= radiusKm) {
+                        out.add(marker);
+                    }
+                }
+            }
+        }
+
+        // То же для меток на позициях positions[from, to)
+        void collectAt(Marker[] markers, double[] xs, double[] ys, double[] zs, int[] positions, int from, int to,
+                       List<Marker> out) {
+            for (int k = from; k < to; k++) {
+                int i = positions[k];
+                collect(markers, xs, ys, zs, i, i + 1, out);
+            }
+        }
+
+        // То же только для меток владельца owner среди positions[from, to): координаты остальных
+        // не читаются. Возвращает число меток владельца
+        int collectOwned(Marker[] markers, double[] xs, double[] ys, double[] zs, int[] owners, int[] positions,
+                         int from, int to, int owner, List<Marker> out) {
+            int matched = 0;
+            for (int k = from; k < to; k++) {
+                int i = positions[k];
+                if (owners[i] == owner) {
+                    matched++;
+                    collect(markers, xs, ys, zs, i, i + 1, out);
+                }
+            }
+            return matched;
+        }
+    }
+
+    // Фильтрация кусков [from, to) параллельного поиска: диапазон делится пополам, пока не останется
+    // один кусок. Каждый кусок пишет только в свой список и свой фильтр, так что общих данных на
+    // запись у задач нет
+    private static final class FilterTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        // Разница координат в радианах
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
+        final double centerLat;
+        final double centerLon;
+        final double radiusKm;
+        final Cell[] cells;
+        final int[] bounds;
+        final RadiusFilter[] filters;
+        final List<Marker>[] parts;
+        final int from;
+        final int to;
 
-        // Формула гаверсинусов:
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                Math.cos(Math.toRadians(lat1)) *
-                        Math.cos(Math.toRadians(lat2)) *
-                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        FilterTask(double centerLat, double centerLon, double radiusKm, Cell[] cells, int[] bounds,
+                   RadiusFilter[] filters, List<Marker>[] parts, int from, int to) {
+            this.centerLat = centerLat;
+            this.centerLon = centerLon;
+            this.radiusKm = radiusKm;
+            this.cells = cells;
+            this.bounds = bounds;
+            this.filters = filters;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new FilterTask(centerLat, centerLon, radiusKm, cells, bounds, filters, parts, from, middle),
+                        new FilterTask(centerLat, centerLon, radiusKm, cells, bounds, filters, parts, middle, to));
+                return;
+            }
+            RadiusFilter filter = new RadiusFilter(centerLat, centerLon, radiusKm);
+            List<Marker> part = new ArrayList<>();
+            for (int i = bounds[from]; i < bounds[from + 1]; i++) {
+                Cell cell = cells[i];
+                filter.collect(cell.markers, cell.xs, cell.ys, cell.zs, cell.size, part);
+            }
+            filters[from] = filter;
+            parts[from] = part;
+        }
+    }
+
+    // Метки одной ячейки в порядке добавления вместе с их единичными векторами на сфере
+    private static final class Cell {
+        static final int INITIAL_CAPACITY = 4;
+
+        Marker[] markers;
+        double[] xs;
+        double[] ys;
+        double[] zs;
+        // Номер владельца каждой метки (GeohashStorage.ownerId)
+        int[] owners;
+        int size;
+        // Разбиение для поиска с фильтром, сами метки не переставляются: позиции публичных меток
+        // по возрастанию и позиции личных. Личные [0, privateSorted) упорядочены по владельцу
+        // (внутри владельца - по позиции), новые [privateSorted, privateCount) дописываются в конец
+        // и упорядочиваются разом, когда их набирается столько же, сколько уже упорядочено
+        int[] publicPositions;
+        int publicCount;
+        int[] privatePositions;
+        int privateCount;
+        int privateSorted;
+
+        Cell(int capacity) {
+            markers = new Marker[capacity];
+            xs = new double[capacity];
+            ys = new double[capacity];
+            zs = new double[capacity];
+            owners = new int[capacity];
+            publicPositions = new int[0];
+            privatePositions = new int[0];
+        }
 
-        // Расчет расстояния
-        return R * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        // Дописывает метку в конец; возвращает ее позицию
+        int add(Marker marker, int owner) {
+            if (size == markers.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+                markers = Arrays.copyOf(markers, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                zs = Arrays.copyOf(zs, capacity);
+                owners = Arrays.copyOf(owners, capacity);
+            }
+            int index = size;
+            double latRad = Math.toRadians(marker.lat);
+            double lonRad = Math.toRadians(marker.lon);
+            double cosLat = Math.cos(latRad);
+            markers[index] = marker;
+            xs[index] = cosLat * Math.cos(lonRad);
+            ys[index] = cosLat * Math.sin(lonRad);
+            zs[index] = Math.sin(latRad);
+            owners[index] = owner;
+            size++;
+            if (MarkerFilter.isPrivate(marker)) {
+                if (privateCount > privateSorted && privateCount - privateSorted >= privateSorted) {
+                    sortPrivate();
+                }
+                if (privateCount == privatePositions.length) {
+                    privatePositions = Arrays.copyOf(privatePositions, Math.max(INITIAL_CAPACITY, privateCount * 2));
+                }
+                privatePositions[privateCount++] = index;
+            } else {
+                if (publicCount == publicPositions.length) {
+                    publicPositions = Arrays.copyOf(publicPositions, Math.max(INITIAL_CAPACITY, publicCount * 2));
+                }
+                publicPositions[publicCount++] = index;
+            }
+            return index;
+        }
+
+        // Упорядочивает все личные позиции по (владелец, позиция) одной сортировкой
+        private void sortPrivate() {
+            long[] keys = new long[privateCount];
+            for (int k = 0; k < privateCount; k++) {
+                int i = privatePositions[k];
+                keys[k] = (long) owners[i] << 32 | i;
+            }
+            Arrays.sort(keys);
+            for (int k = 0; k < privateCount; k++) {
+                privatePositions[k] = (int) keys[k];
+            }
+            privateSorted = privateCount;
+        }
+
+        // Начало личных меток владельца (двоичный поиск по упорядоченной части)
+        int ownerFrom(int owner) {
+            int low = 0;
+            int high = privateSorted;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (owners[privatePositions[middle]] < owner) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // Конец личных меток владельца
+        int ownerTo(int owner) {
+            int low = 0;
+            int high = privateSorted;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (owners[privatePositions[middle]] <= owner) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // Удаление по ссылке со сдвигом, чтобы сохранить порядок добавления; позиции в разбиении
+        // за удаленной меткой сдвигаются на одну, их порядок от этого не меняется
+        boolean remove(Marker marker) {
+            for (int i = 0; i < size; i++) {
+                if (markers[i] == marker) {
+                    int tail = size - i - 1;
+                    System.arraycopy(markers, i + 1, markers, i, tail);
+                    System.arraycopy(xs, i + 1, xs, i, tail);
+                    System.arraycopy(ys, i + 1, ys, i, tail);
+                    System.arraycopy(zs, i + 1, zs, i, tail);
+                    System.arraycopy(owners, i + 1, owners, i, tail);
+                    markers[--size] = null;
+                    int k = removePosition(privatePositions, privateCount, i);
+                    if (removePosition(publicPositions, publicCount, i) >= 0) {
+                        publicCount--;
+                    } else {
+                        privateCount--;
+                        if (k < privateSorted) {
+                            privateSorted--;
+                        }
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Убирает позицию removed из positions[0, count) и сдвигает большие позиции на одну;
+        // возвращает индекс убранной позиции или -1
+        private static int removePosition(int[] positions, int count, int removed) {
+            int found = -1;
+            for (int k = 0; k < count; k++) {
+                if (positions[k] == removed) {
+                    found = k;
+                } else if (positions[k] > removed) {
+                    positions[k]--;
+                }
+            }
+            if (found >= 0) {
+                System.arraycopy(positions, found + 1, positions, found, count - found - 1);
+            }
+            return found;
+        }
+    }
+
+    // Число меток ячейки, сумма их единичных векторов (центр масс без проблем у антимеридиана)
+    // и одна из меток как представитель
+    private static final class Aggregate {
+        int count;
+        double x;
+        double y;
+        double z;
+        Marker representative;
+
+        Aggregate(Marker representative) {
+            this.representative = representative;
+        }
+    }
+
+    // Курсор nearestFirst. Равные расстояния упорядочиваются по координатам и названию, так что
+    // порядок детерминирован, и токен (расстояние последней метки и сколько меток с этим
+    // расстоянием уже выдано) однозначно задает продолжение.
+    // Если обойдено больше ячеек, чем всего непустых ячеек в хранилище, обход продолжается
+    // на точности на единицу грубее: все метки ближе уже достигнутой границы к этому моменту
+    // найдены, а более дальние кандидаты отбрасываются и находятся заново грубым обходом
+    private final class NearestCursor implements MarkerCursor {
+        private final double centerLat;
+        private final double centerLon;
+        private final double radiusKm;
+        private final int precision;
+        private final int limit;
+        private final TreeSet<Candidate> frontier = new TreeSet<>();
+        private final LongList ringCells = new LongList();
+        private GeohashRings rings;
+        // Ячейки, обойденные на текущей точности обхода
+        private long visitedCells;
+        private boolean walkDone;
+        // Метки ближе floorKm уже найдены более мелким обходом
+        private double floorKm = Double.NEGATIVE_INFINITY;
+        private int yielded;
+        private long sequence;
+        private double lastDistance = Double.NEGATIVE_INFINITY;
+        private int ties;
+        // Сколько меток на расстоянии lastDistance пропустить при продолжении по токену
+        private int skipTies;
+
+        NearestCursor(double centerLat, double centerLon, double radiusKm, int precision, int limit,
+                      String resumeToken) {
+            this.centerLat = centerLat;
+            this.centerLon = centerLon;
+            this.radiusKm = radiusKm;
+            this.precision = precision;
+            this.limit = limit;
+            if (resumeToken != null) {
+                int slash = resumeToken.indexOf('/');
+                try {
+                    lastDistance = Double.longBitsToDouble(Long.parseUnsignedLong(resumeToken.substring(0, slash), 16));
+                    ties = Integer.parseInt(resumeToken.substring(slash + 1));
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("Invalid resume token: " + resumeToken, e);
+                }
+                skipTies = ties;
+            }
+            rings = new GeohashRings(centerLat, centerLon, precision);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (yielded < limit) {
+                double bound = walkDone ? Double.POSITIVE_INFINITY : rings.unvisitedDistanceKm();
+                if (!frontier.isEmpty() && frontier.first().distanceKm < bound) {
+                    Candidate first = frontier.first();
+                    if (skipTies > 0 && first.distanceKm == lastDistance) {
+                        // Уже выдана на предыдущей странице
+                        frontier.pollFirst();
+                        skipTies--;
+                        continue;
+                    }
+                    return true;
+                }
+                if (walkDone) {
+                    return false;
+                }
+                if (bound > radiusKm || rings.isComplete()) {
+                    walkDone = true;
+                    continue;
+                }
+                walkRing();
+            }
+            return false;
+        }
+
+        @Override
+        public Marker next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Candidate candidate = frontier.pollFirst();
+            if (candidate.distanceKm == lastDistance) {
+                ties++;
+            } else {
+                lastDistance = candidate.distanceKm;
+                ties = 1;
+            }
+            skipTies = 0;
+            yielded++;
+            return candidate.marker;
+        }
+
+        @Override
+        public double lastDistanceKm() {
+            return lastDistance;
+        }
+
+        @Override
+        public String resumeToken() {
+            return Long.toHexString(Double.doubleToLongBits(lastDistance)) + "/" + ties;
+        }
+
+        private void walkRing() {
+            ringCells.clear();
+            rings.nextRing(ringCells);
+            int walkPrecision = rings.precision();
+            for (int i = 0; i < ringCells.size(); i++) {
+                for (Cell cell : cellsWithPrefix(GeohashShapeCovering.key(ringCells.get(i), walkPrecision), precision)) {
+                    offer(cell);
+                }
+            }
+            visitedCells += ringCells.size();
+            if (visitedCells > storage.size() && walkPrecision > 0 && !rings.isComplete()) {
+                // Обойдено больше ячеек, чем непустых в хранилище: дальше грубой сеткой
+                floorKm = Math.max(floorKm, rings.unvisitedDistanceKm());
+                while (!frontier.isEmpty() && frontier.last().distanceKm >= floorKm) {
+                    frontier.pollLast();
+                }
+                rings = new GeohashRings(centerLat, centerLon, walkPrecision - 1);
+                visitedCells = 0;
+            }
+        }
+
+        private void offer(Cell cell) {
+            // Кандидатов нужно не больше, чем осталось выдать (плюс пропускаемые по токену)
+            long capacity = (long) limit - yielded + skipTies;
+            for (int i = 0; i < cell.size; i++) {
+                Marker marker = cell.markers[i];
+                double distance = calculateDistance(centerLat, centerLon, marker.lat, marker.lon);
+                // Ближе lastDistance - уже выданы (в том числе на прошлых страницах)
+                if (distance > radiusKm || distance < floorKm || distance < lastDistance) {
+                    continue;
+                }
+                frontier.add(new Candidate(marker, distance, sequence++));
+                if (frontier.size() > capacity) {
+                    frontier.pollLast();
+                }
+            }
+        }
+    }
+
+    // Кандидат курсора: порядок по расстоянию, затем по координатам и названию
+    private static final class Candidate implements Comparable<Candidate> {
+        final Marker marker;
+        final double distanceKm;
+        final long sequence;
+
+        Candidate(Marker marker, double distanceKm, long sequence) {
+            this.marker = marker;
+            this.distanceKm = distanceKm;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int order = Double.compare(distanceKm, other.distanceKm);
+            if (order == 0) {
+                order = Double.compare(marker.lat, other.marker.lat);
+            }
+            if (order == 0) {
+                order = Double.compare(marker.lon, other.marker.lon);
+            }
+            if (order == 0) {
+                String name = marker.name == null ? "" : marker.name;
+                String otherName = other.marker.name == null ? "" : other.marker.name;
+                order = name.compareTo(otherName);
+            }
+            // Полностью одинаковые метки неразличимы; порядковый номер лишь не дает TreeSet их склеить
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // Кандидат поиска ближайших вместе с расстоянием до центра
+    private static final class Neighbor {
+        final Marker marker;
+        final double distanceKm;
+
+        Neighbor(Marker marker, double distanceKm) {
+            this.marker = marker;
+            this.distanceKm = distanceKm;
+        }
     }
 }
@@ -0,0 +1,341 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Префиксное дерево по символам геохэша: у узла глубины d до 32 потомков (следующий символ),
+// и каждый узел хранит число меток в своей ячейке. Метки лежат в листьях вместе с ключом
+// максимальной точности; переполненный лист делится на потомков. Поэтому искать можно
+// с любой точностью независимо от точности добавления, а количество меток в области
+// считается по счетчикам узлов без перебора меток
+public class HierarchicalGeohashIndex implements MarkerStore {
+
+    private static final int KEY_PRECISION = GeoHashConverter.MAX_PRECISION;
+    // Сколько меток держит лист, прежде чем разделиться на потомков
+    private static final int LEAF_CAPACITY = 32;
+    // Во сколько раз просмотр ячейки дороже проверки расстояния до одной метки
+    private static final int CELL_LOOKUP_COST = 4;
+    // Покрытие "опорного" уровня для оценки плотности: ячейка не меньше круга
+    private static final int DENSITY_REFERENCE_CELLS = 4;
+    // Запас проверки "ячейка целиком в круге": дальняя точка ячейки считается не той формулой,
+    // что расстояние до меток, и на самой границе круга может разойтись с ней в последних битах
+    private static final double INSIDE_RELATIVE_MARGIN = 1e-9;
+
+    private static final class Node {
+        int count;
+        // Потомки по следующему символу; null, пока узел - лист
+        Node[] children;
+        // Содержимое листа: ключи точности 12 и сами метки
+        long[] hashes;
+        Marker[] markers;
+    }
+
+    private final Node root = newLeaf();
+
+    // Точность игнорируется: метка всегда спускается по ключу максимальной точности
+    @Override
+    public void addMarker(Marker marker, int precision) {
+        long hash = GeoHashConverter.encodeToLong(marker.lat, marker.lon, KEY_PRECISION);
+        Node node = root;
+        int depth = 0;
+        while (true) {
+            node.count++;
+            if (node.children == null) {
+                appendToLeaf(node, hash, marker);
+                if (node.count > LEAF_CAPACITY && depth < KEY_PRECISION) {
+                    split(node, depth);
+                }
+                return;
+            }
+            int digit = digit(hash, depth);
+            if (node.children[digit] == null) {
+                node.children[digit] = newLeaf();
+            }
+            node = node.children[digit];
+            depth++;
+        }
+    }
+
+    // Поиск с явно заданной точностью покрытия (любой от 0 до 12)
+    @Override
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm, int precision) {
+        LongList cells = new LongList();
+        int coverPrecision = GeohashCovering.cover(centerLat, centerLon, radiusKm,
+                Math.min(precision, KEY_PRECISION), GeohashCovering.DEFAULT_MAX_CELLS, cells);
+
+        List<Marker> result = new ArrayList<>();
+        for (int i = 0; i < cells.size(); i++) {
+            collect(cells.get(i), coverPrecision, centerLat, centerLon, radiusKm, result);
+        }
+        return result;
+    }
+
+    // Поиск с автоматическим выбором уровня покрытия
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm) {
+        return searchInRadius(centerLat, centerLon, radiusKm, chooseLevel(centerLat, centerLon, radiusKm));
+    }
+
+    // Выбирает самый дешевый уровень покрытия: стоимость = просмотры ячеек + ожидаемое число
+    // кандидатов. Плотность оценивается по счетчику узла, содержащего центр, на уровне,
+    // где ячейка сравнима с кругом
+    public int chooseLevel(double centerLat, double centerLon, double radiusKm) {
+        double[] box = new double[4];
+        GeohashCovering.boundingBox(centerLat, centerLon, radiusKm, box);
+        long centerHash = GeoHashConverter.encodeToLong(centerLat, centerLon, KEY_PRECISION);
+
+        int referenceLevel = 0;
+        while (referenceLevel < KEY_PRECISION
+                && GeohashCovering.cellCount(box[0], box[1], box[2], box[3], referenceLevel + 1) <= DENSITY_REFERENCE_CELLS) {
+            referenceLevel++;
+        }
+        double referenceCount = countInCell(centerHash >>> (KEY_PRECISION - referenceLevel) * 5, referenceLevel);
+
+        int bestLevel = 0;
+        double bestCost = Double.MAX_VALUE;
+        for (int level = 0; level <= KEY_PRECISION; level++) {
+            long cells = GeohashCovering.cellCount(box[0], box[1], box[2], box[3], level);
+            if (cells > GeohashCovering.DEFAULT_MAX_CELLS) {
+                break;
+            }
+            // Площадь ячейки уменьшается в 32 раза на каждом уровне
+            double candidates = referenceCount * cells * Math.pow(32, referenceLevel - level);
+            double cost = cells * CELL_LOOKUP_COST + Math.min(candidates, root.count);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestLevel = level;
+            }
+        }
+        return bestLevel;
+    }
+
+    // Сколько меток в ячейке геохэша (строкой любой длины до 12)
+    public int count(String geohash) {
+        return countInCell(GeoHashConverter.fromBase32(geohash), geohash.length());
+    }
+
+    // Сколько меток в ячейке long-геохэша заданной точности; перебираются только метки
+    // неразделенного листа, если он оказался выше запрошенной точности
+    public int countInCell(long cell, int precision) {
+        Node node = root;
+        int depth = 0;
+        while (depth < precision) {
+            if (node.children == null) {
+                return countLeafPrefix(node, cell, precision);
+            }
+            node = node.children[digit(cell << (KEY_PRECISION - precision) * 5, depth)];
+            if (node == null) {
+                return 0;
+            }
+            depth++;
+        }
+        return node.count;
+    }
+
+    // Точное число меток в круге: ячейки целиком внутри круга берутся по счетчику узла,
+    // перебираются только листья на границе круга
+    public int countInRadius(double centerLat, double centerLon, double radiusKm) {
+        double[] box = new double[4];
+        GeohashCovering.boundingBox(centerLat, centerLon, radiusKm, box);
+        return countInRadius(root, 0, 0, centerLat, centerLon, radiusKm, box, new double[4]);
+    }
+
+    public int size() {
+        return root.count;
+    }
+
+    @Override
+    public long estimatedMemoryBytes() {
+        return estimatedMemoryBytes(root);
+    }
+
+    private int countInRadius(Node node, long cell, int depth, double centerLat, double centerLon,
+                              double radiusKm, double[] box, double[] cellBox) {
+        GeoHashConverter.getBoundingBox(cell, depth, cellBox);
+        if (!intersects(cellBox, box)) {
+            return 0;
+        }
+        if (depth > 0
+                && farthestDistanceKm(cellBox, centerLat, centerLon) * (1 + INSIDE_RELATIVE_MARGIN) <= radiusKm) {
+            return node.count;
+        }
+        if (node.children == null) {
+            int count = 0;
+            for (int i = 0; i < node.count; i++) {
+                Marker marker = node.markers[i];
+                if (GeoMath.distanceKm(centerLat, centerLon, marker.lat, marker.lon) <= radiusKm) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        int count = 0;
+        for (int digit = 0; digit < 32; digit++) {
+            Node child = node.children[digit];
+            if (child != null) {
+                count += countInRadius(child, (cell << 5) | digit, depth + 1,
+                        centerLat, centerLon, radiusKm, box, cellBox);
+            }
+        }
+        return count;
+    }
+
+    // Собирает метки ячейки cell точности precision, прошедшие проверку расстояния
+    private void collect(long cell, int precision, double centerLat, double centerLon, double radiusKm,
+                         List<Marker> result) {
+        Node node = root;
+        int shift = (KEY_PRECISION - precision) * 5;
+        for (int depth = 0; depth < precision && node.children != null; depth++) {
+            node = node.children[digit(cell << shift, depth)];
+            if (node == null) {
+                return;
+            }
+        }
+        if (node.children == null) {
+            // Лист может лежать выше запрошенной точности: берем только метки с нужным префиксом
+            for (int i = 0; i < node.count; i++) {
+                Marker marker = node.markers[i];
+                if ((node.hashes[i] >>> shift) == cell
+                        && GeoMath.distanceKm(centerLat, centerLon, marker.lat, marker.lon) <= radiusKm) {
+                    result.add(marker);
+                }
+            }
+            return;
+        }
+        collectSubtree(node, centerLat, centerLon, radiusKm, result);
+    }
+
+    private void collectSubtree(Node node, double centerLat, double centerLon, double radiusKm, List<Marker> result) {
+        if (node.children == null) {
+            for (int i = 0; i < node.count; i++) {
+                Marker marker = node.markers[i];
+                if (GeoMath.distanceKm(centerLat, centerLon, marker.lat, marker.lon) <= radiusKm) {
+                    result.add(marker);
+                }
+            }
+            return;
+        }
+        for (Node child : node.children) {
+            if (child != null) {
+                collectSubtree(child, centerLat, centerLon, radiusKm, result);
+            }
+        }
+    }
+
+    private int countLeafPrefix(Node leaf, long cell, int precision) {
+        int shift = (KEY_PRECISION - precision) * 5;
+        int count = 0;
+        for (int i = 0; i < leaf.count; i++) {
+            if ((leaf.hashes[i] >>> shift) == cell) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Node newLeaf() {
+        Node node = new Node();
+        node.hashes = new long[4];
+        node.markers = new Marker[4];
+        return node;
+    }
+
+    // count уже увеличен, поэтому новая метка встает на позицию count - 1
+    private static void appendToLeaf(Node leaf, long hash, Marker marker) {
+        int index = leaf.count - 1;
+        if (index == leaf.hashes.length) {
+            leaf.hashes = Arrays.copyOf(leaf.hashes, index * 2);
+            leaf.markers = Arrays.copyOf(leaf.markers, index * 2);
+        }
+        leaf.hashes[index] = hash;
+        leaf.markers[index] = marker;
+    }
+
+    // Превращает лист глубины depth во внутренний узел, раскладывая метки по потомкам
+    private static void split(Node leaf, int depth) {
+        long[] hashes = leaf.hashes;
+        Marker[] markers = leaf.markers;
+        leaf.hashes = null;
+        leaf.markers = null;
+        leaf.children = new Node[32];
+        for (int i = 0; i < leaf.count; i++) {
+            int digit = digit(hashes[i], depth);
+            Node child = leaf.children[digit];
+            if (child == null) {
+                child = newLeaf();
+                leaf.children[digit] = child;
+            }
+            child.count++;
+            appendToLeaf(child, hashes[i], markers[i]);
+        }
+        // Если все метки попали в одного потомка, он тоже может быть переполнен
+        for (Node child : leaf.children) {
+            if (child != null && child.count > LEAF_CAPACITY && depth + 1 < KEY_PRECISION) {
+                split(child, depth + 1);
+            }
+        }
+    }
+
+    // Символ (5 бит) ключа точности 12, выбирающий потомка узла глубины depth
+    private static int digit(long hash, int depth) {
+        return (int) (hash >>> (KEY_PRECISION - depth - 1) * 5) & 31;
+    }
+
+    // Пересечение ячейки с bounding box круга, долготы которого могут выходить за антимеридиан
+    private static boolean intersects(double[] cell, double[] box) {
+        if (cell[1] < box[0] || cell[0] > box[1]) {
+            return false;
+        }
+        for (int shift = -360; shift <= 360; shift += 360) {
+            if (cell[3] + shift >= box[2] && cell[2] + shift <= box[3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Расстояние до самой дальней от центра точки ячейки. Углов недостаточно: если через ячейку
+    // проходит меридиан напротив центра, дальше всего середина ее края, а у ячейки с полюсом
+    // два угла - одна точка. При любой широте точка тем дальше, чем больше разность долгот
+    // (до 180), поэтому берется наибольшая разность в ячейке, а по широте на этом меридиане
+    // cos d = sin(a) sin(lat) + cos(a) cos(lat) cos(dLon) минимален на концах отрезка
+    // или в единственной точке минимума синусоиды
+    private static double farthestDistanceKm(double[] cell, double centerLat, double centerLon) {
+        double from = (cell[2] - centerLon) % 360;
+        if (from < -180) {
+            from += 360;
+        } else if (from >= 180) {
+            from -= 360;
+        }
+        double to = from + (cell[3] - cell[2]);
+        double deltaLon = to >= 180 ? Math.PI : Math.toRadians(Math.max(Math.abs(from), Math.abs(to)));
+        double a = Math.toRadians(centerLat);
+        double sinPart = Math.sin(a);
+        double cosPart = Math.cos(a) * Math.cos(deltaLon);
+        double south = Math.toRadians(cell[0]);
+        double north = Math.toRadians(cell[1]);
+        double minCos = Math.min(sinPart * Math.sin(south) + cosPart * Math.cos(south),
+                sinPart * Math.sin(north) + cosPart * Math.cos(north));
+        double lowest = Math.atan2(-sinPart, -cosPart);
+        if (lowest >= south && lowest <= north) {
+            minCos = -Math.hypot(sinPart, cosPart);
+        }
+        return GeoMath.EARTH_RADIUS_KM * Math.acos(Math.max(-1, Math.min(1, minCos)));
+    }
+
+    private static long estimatedMemoryBytes(Node node) {
+        long bytes = MemoryFootprint.object(4 + 3 * MemoryFootprint.REFERENCE);
+        if (node.children == null) {
+            return bytes + MemoryFootprint.array(node.hashes.length, 8)
+                    + MemoryFootprint.array(node.markers.length, MemoryFootprint.REFERENCE)
+                    + node.count * MemoryFootprint.MARKER;
+        }
+        bytes += MemoryFootprint.array(32, MemoryFootprint.REFERENCE);
+        for (Node child : node.children) {
+            if (child != null) {
+                bytes += estimatedMemoryBytes(child);
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.mysportik;
+
+// Ключи ячеек сетки геохэша вдоль кривой Гильберта. Соседние по ключу ячейки всегда соседи
+// на карте (у Z-order ключи прыгают на границах квадрантов), поэтому покрытие круга
+// распадается на меньшее число непрерывных диапазонов ключей.
+// Четная точность: 2m бит ключа - индекс Гильберта порядка m по столбцу и строке.
+// Нечетная точность: у долготы лишний бит, он идет младшим битом ключа после индекса
+// Гильберта по старшим m битам столбца. Порядок ячеек внутри квадранта у кривой Гильберта
+// не зависит от порядка самой кривой, поэтому ключ четной точности - префикс ключей более
+// точных четных точностей, в том числе максимальной; у нечетной точности это не так
+public final class HilbertKeyEncoder implements SpatialKeyEncoder {
+
+    public static final HilbertKeyEncoder INSTANCE = new HilbertKeyEncoder();
+
+    private HilbertKeyEncoder() {
+    }
+
+    // Сетка и округление на границах ячеек - как у GeoHashConverter
+    @Override
+    public long encodeToLong(double lat, double lon, int precision) {
+        long hash = GeoHashConverter.encodeToLong(lat, lon, precision);
+        return fromIndices(GeoHashConverter.latIndex(hash, precision), GeoHashConverter.lonIndex(hash, precision),
+                precision);
+    }
+
+    @Override
+    public long fromIndices(int latIdx, int lonIdx, int precision) {
+        GeoHashConverter.checkPrecision(precision);
+        int order = GeoHashConverter.latBits(precision);
+        if (GeoHashConverter.lonBits(precision) == order) {
+            return curveIndex(order, lonIdx, latIdx);
+        }
+        return (curveIndex(order, lonIdx >>> 1, latIdx) << 1) | (lonIdx & 1);
+    }
+
+    @Override
+    public int latIndex(long key, int precision) {
+        GeoHashConverter.checkPrecision(precision);
+        int order = GeoHashConverter.latBits(precision);
+        long d = GeoHashConverter.lonBits(precision) == order ? key : key >>> 1;
+        return (int) curvePoint(order, d);
+    }
+
+    @Override
+    public int lonIndex(long key, int precision) {
+        GeoHashConverter.checkPrecision(precision);
+        int order = GeoHashConverter.latBits(precision);
+        if (GeoHashConverter.lonBits(precision) == order) {
+            return (int) (curvePoint(order, key) >>> 32);
+        }
+        return (int) (curvePoint(order, key >>> 1) >>> 32) << 1 | (int) (key & 1);
+    }
+
+    @Override
+    public boolean isPrefixPrecision(int precision) {
+        return (precision & 1) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "hilbert";
+    }
+
+    // Индекс точки (x, y) на кривой Гильберта порядка order (сторона 2^order): от старшего бита
+    // к младшему выбирается четверть, и координаты поворачиваются в систему этой четверти
+    static long curveIndex(int order, int x, int y) {
+        long d = 0;
+        for (int s = order == 0 ? 0 : 1 << (order - 1); s > 0; s >>>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            x &= s - 1;
+            y &= s - 1;
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    // Обратное преобразование: (x << 32) | y
+    static long curvePoint(int order, long d) {
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < order; i++) {
+            int s = 1 << i;
+            int rx = (int) (d >>> 1) & 1;
+            int ry = (int) (d ^ rx) & 1;
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+            x += s * rx;
+            y += s * ry;
+            d >>>= 2;
+        }
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
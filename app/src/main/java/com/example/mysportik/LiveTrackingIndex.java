@@ -0,0 +1,231 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Индекс текущих положений движущихся участников: у каждой метки постоянный id, и положение
+// обновляется на месте, а не добавлением новой метки. Ячейки фиксированной точности хранят
+// метки в плотных массивах без дыр; по id находится слот - ячейка и номер в ней.
+// Перемещение внутри ячейки меняет координаты слота на месте, переход в другую ячейку - это
+// удаление с переносом последнего элемента на освободившееся место (O(1)) и добавление в конец
+// новой ячейки. Поиск и обновления можно вызывать из разных потоков: запись под замком записи,
+// поиск под замком чтения
+public class LiveTrackingIndex {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final class Cell {
+        final long hash;
+        Marker[] markers = new Marker[INITIAL_CAPACITY];
+        double[] lats = new double[INITIAL_CAPACITY];
+        double[] lons = new double[INITIAL_CAPACITY];
+        Slot[] slots = new Slot[INITIAL_CAPACITY];
+        int size;
+
+        Cell(long hash) {
+            this.hash = hash;
+        }
+
+        void add(Slot slot, Marker marker) {
+            if (size == markers.length) {
+                int capacity = size * 2;
+                markers = Arrays.copyOf(markers, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+                slots = Arrays.copyOf(slots, capacity);
+            }
+            slot.cell = this;
+            slot.index = size;
+            set(size, slot, marker);
+            size++;
+        }
+
+        void set(int index, Slot slot, Marker marker) {
+            markers[index] = marker;
+            lats[index] = marker.lat;
+            lons[index] = marker.lon;
+            slots[index] = slot;
+        }
+
+        // Удаляет слот, перенося на его место последний элемент ячейки
+        void remove(Slot slot) {
+            int last = --size;
+            int index = slot.index;
+            if (index != last) {
+                Slot moved = slots[last];
+                set(index, moved, markers[last]);
+                moved.index = index;
+            }
+            markers[last] = null;
+            slots[last] = null;
+            slot.cell = null;
+        }
+    }
+
+    // Положение метки в индексе
+    private static final class Slot {
+        Cell cell;
+        int index;
+    }
+
+    private final int precision;
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final Map<String, Slot> slots = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public LiveTrackingIndex(int precision) {
+        if (precision < 1 || precision > GeoHashConverter.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be in [1, " + GeoHashConverter.MAX_PRECISION + "]: "
+                    + precision);
+        }
+        this.precision = precision;
+    }
+
+    // Добавляет метку или заменяет метку с тем же id
+    public void put(Marker marker) {
+        if (marker.id == null) {
+            throw new IllegalArgumentException("Marker id is required");
+        }
+        long hash = GeoHashConverter.encodeToLong(marker.lat, marker.lon, precision);
+        lock.writeLock().lock();
+        try {
+            Slot slot = slots.get(marker.id);
+            if (slot == null) {
+                slot = new Slot();
+                slots.put(marker.id, slot);
+            } else if (slot.cell.hash == hash) {
+                slot.cell.set(slot.index, slot, marker);
+                return;
+            } else {
+                detach(slot);
+            }
+            cellFor(hash).add(slot, marker);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Переносит метку в новые координаты. Возвращает false, если метки с таким id нет.
+    // Прежний объект Marker не меняется: у уже выданных поиском меток координаты остаются
+    // согласованными, а в индекс кладется ее копия с новыми координатами и прочими полями прежними
+    public boolean move(String id, double lat, double lon) {
+        long hash = GeoHashConverter.encodeToLong(lat, lon, precision);
+        lock.writeLock().lock();
+        try {
+            Slot slot = slots.get(id);
+            if (slot == null) {
+                return false;
+            }
+            Cell cell = slot.cell;
+            Marker moved = cell.markers[slot.index].withPosition(lat, lon);
+            if (cell.hash == hash) {
+                cell.set(slot.index, slot, moved);
+            } else {
+                detach(slot);
+                cellFor(hash).add(slot, moved);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Slot slot = slots.remove(id);
+            if (slot == null) {
+                return false;
+            }
+            detach(slot);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Текущая метка с данным id или null
+    public Marker get(String id) {
+        lock.readLock().lock();
+        try {
+            Slot slot = slots.get(id);
+            return slot == null ? null : slot.cell.markers[slot.index];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm) {
+        // Покрытие строится до взятия замка, чтобы не задерживать писателей
+        LongList cover = new LongList();
+        int coverPrecision = GeohashCovering.cover(centerLat, centerLon, radiusKm, precision,
+                GeohashCovering.DEFAULT_MAX_CELLS, cover);
+        List<Marker> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (coverPrecision == precision) {
+                for (int i = 0; i < cover.size(); i++) {
+                    Cell cell = cells.get(cover.get(i));
+                    if (cell != null) {
+                        collect(cell, centerLat, centerLon, radiusKm, result);
+                    }
+                }
+            } else {
+                // Покрытие огрублено: проверяем префиксы всех непустых ячеек
+                cover.sort();
+                int shift = (precision - coverPrecision) * 5;
+                for (Cell cell : cells.values()) {
+                    if (cover.binarySearch(cell.hash >>> shift) >= 0) {
+                        collect(cell, centerLat, centerLon, radiusKm, result);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    private Cell cellFor(long hash) {
+        Cell cell = cells.get(hash);
+        if (cell == null) {
+            cell = new Cell(hash);
+            cells.put(hash, cell);
+        }
+        return cell;
+    }
+
+    // Убирает слот из его ячейки; опустевшая ячейка удаляется из карты
+    private void detach(Slot slot) {
+        Cell cell = slot.cell;
+        cell.remove(slot);
+        if (cell.size == 0) {
+            cells.remove(cell.hash);
+        }
+    }
+
+    private static void collect(Cell cell, double centerLat, double centerLon, double radiusKm, List<Marker> result) {
+        for (int i = 0; i < cell.size; i++) {
+            if (GeoMath.distanceKm(centerLat, centerLon, cell.lats[i], cell.lons[i]) <= radiusKm) {
+                result.add(cell.markers[i]);
+            }
+        }
+    }
+}
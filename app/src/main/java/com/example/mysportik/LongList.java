@@ -0,0 +1,56 @@
+package com.example.mysportik;
+
+import java.util.Arrays;
+
+// Растущий массив long без упаковки в Long
+public class LongList {
+    private long[] values;
+    private int size;
+
+    public LongList() {
+        this(16);
+    }
+
+    public LongList(int capacity) {
+        values = new long[Math.max(capacity, 1)];
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void sort() {
+        Arrays.sort(values, 0, size);
+    }
+
+    // Бинарный поиск, список должен быть отсортирован
+    public int binarySearch(long value) {
+        return Arrays.binarySearch(values, 0, size, value);
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
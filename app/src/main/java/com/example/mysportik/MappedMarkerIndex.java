@@ -0,0 +1,225 @@
+package com.example.mysportik;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+
+// Индекс меток, открытый через FileChannel.map: поиск идет прямо по отображенным страницам файла
+// формата MarkerIndexFile без десериализации; найденные метки собираются со всеми полями. Открытие проверяет только заголовок и длину файла,
+// то есть не зависит от размера файла. Тело проверяется лениво: поиск сверяет с границами каждую
+// прочитанную запись каталога и строковых полей и на поврежденной бросает IllegalStateException, так что
+// за пределы файла чтение не выходит. Полная контрольная сумма тела - O(размер файла) - считается
+// только по запросу (verifyChecksum, openOrRebuild с verifyBody) и один раз после перестроения
+public class MappedMarkerIndex {
+
+    private final MappedByteBuffer buffer;
+    private final int directoryPrecision;
+    private final int markerCount;
+    private final int cellCount;
+    private final long bodyCrc;
+    private final int directoryOffset;
+    private final int coordinatesOffset;
+    private final int fieldsOffset;
+    private final int poolOffset;
+    private final int poolBytes;
+
+    private MappedMarkerIndex(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < MarkerIndexFile.HEADER_BYTES) {
+            throw new IOException("Index file is too short");
+        }
+        if (buffer.getInt(0) != MarkerIndexFile.MAGIC) {
+            throw new IOException("Not a marker index file");
+        }
+        if (buffer.getInt(4) != MarkerIndexFile.VERSION) {
+            throw new IOException("Unsupported index version " + buffer.getInt(4));
+        }
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 32; i++) {
+            crc.update(buffer.get(i));
+        }
+        if ((int) crc.getValue() != buffer.getInt(32)) {
+            throw new IOException("Index header checksum mismatch");
+        }
+        directoryPrecision = buffer.getInt(8);
+        markerCount = buffer.getInt(12);
+        cellCount = buffer.getInt(16);
+        poolBytes = buffer.getInt(20);
+        bodyCrc = buffer.getLong(24);
+        if (MarkerIndexFile.expectedLength(markerCount, cellCount, poolBytes) != buffer.capacity()) {
+            throw new IOException("Index file length does not match its header");
+        }
+        directoryOffset = MarkerIndexFile.HEADER_BYTES;
+        coordinatesOffset = directoryOffset + cellCount * MarkerIndexFile.DIRECTORY_ENTRY_BYTES;
+        fieldsOffset = coordinatesOffset + markerCount * MarkerIndexFile.COORDINATE_BYTES;
+        poolOffset = fieldsOffset + markerCount * MarkerIndexFile.FIELDS_ENTRY_BYTES;
+        if (directoryPrecision < 1 || directoryPrecision > GeoHashConverter.MAX_PRECISION
+                || markerCount < 0 || cellCount < 0 || cellCount > markerCount || poolBytes < 0) {
+            throw new IOException("Index header is inconsistent");
+        }
+    }
+
+    // Отображает файл в память и проверяет заголовок. Бросает IOException для чужого,
+    // другой версии или поврежденного (по заголовку) файла
+    public static MappedMarkerIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return new MappedMarkerIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Открывает индекс; если файла нет или заголовок поврежден, перестраивает его из source.
+    // С verifyBody перед использованием проверяется и контрольная сумма тела (O(размер файла));
+    // только что записанный файл проверяется всегда
+    public static MappedMarkerIndex openOrRebuild(File file, Callable<? extends Collection<? extends Marker>> source,
+                                                  boolean verifyBody) throws IOException {
+        if (file.exists()) {
+            try {
+                MappedMarkerIndex index = open(file);
+                if (!verifyBody || index.verifyChecksum()) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // Поврежденный файл строим заново
+            }
+            file.delete();
+        }
+        try {
+            MarkerIndexFile.write(file, source.call());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Cannot load markers to rebuild index", e);
+        }
+        MappedMarkerIndex index = open(file);
+        if (!index.verifyChecksum()) {
+            throw new IOException("Rebuilt index " + file + " fails its checksum");
+        }
+        return index;
+    }
+
+    public static MappedMarkerIndex openOrRebuild(File file, Callable<? extends Collection<? extends Marker>> source)
+            throws IOException {
+        return openOrRebuild(file, source, false);
+    }
+
+    // Проверка контрольной суммы тела файла: O(размер файла), удобно делать в фоне после открытия
+    public boolean verifyChecksum() {
+        ByteBuffer body = buffer.duplicate();
+        body.position(MarkerIndexFile.HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[1 << 16];
+        while (body.hasRemaining()) {
+            int length = Math.min(chunk.length, body.remaining());
+            body.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return crc.getValue() == bodyCrc;
+    }
+
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm, int precision) {
+        LongList cells = new LongList();
+        int coverPrecision = GeohashCovering.cover(centerLat, centerLon, radiusKm,
+                Math.min(precision, directoryPrecision), GeohashCovering.DEFAULT_MAX_CELLS, cells);
+        cells.sort();
+        int shift = (directoryPrecision - coverPrecision) * 5;
+
+        List<Marker> result = new ArrayList<>();
+        for (int i = 0; i < cells.size(); i++) {
+            // Ячейка покрытия - диапазон ячеек каталога с этим префиксом
+            long first = cells.get(i) << shift;
+            long end = (cells.get(i) + 1) << shift;
+            for (int c = lowerBound(first); c < cellCount && cellKey(c) < end; c++) {
+                int from = firstMarker(c);
+                int to = c + 1 < cellCount ? firstMarker(c + 1) : markerCount;
+                if (from < 0 || from > to || to > markerCount) {
+                    throw corrupt("directory entry " + c);
+                }
+                for (int m = from; m < to; m++) {
+                    double lat = latitude(m);
+                    double lon = longitude(m);
+                    if (GeoMath.distanceKm(centerLat, centerLon, lat, lon) <= radiusKm) {
+                        result.add(marker(m, lat, lon));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return markerCount;
+    }
+
+    private long cellKey(int cell) {
+        return buffer.getLong(directoryOffset + cell * MarkerIndexFile.DIRECTORY_ENTRY_BYTES);
+    }
+
+    private int firstMarker(int cell) {
+        return buffer.getInt(directoryOffset + cell * MarkerIndexFile.DIRECTORY_ENTRY_BYTES + 8);
+    }
+
+    private double latitude(int marker) {
+        return buffer.getInt(coordinatesOffset + marker * MarkerIndexFile.COORDINATE_BYTES)
+                / MarkerIndexFile.FIXED_POINT_SCALE;
+    }
+
+    private double longitude(int marker) {
+        return buffer.getInt(coordinatesOffset + marker * MarkerIndexFile.COORDINATE_BYTES + 4)
+                / MarkerIndexFile.FIXED_POINT_SCALE;
+    }
+
+    private Marker marker(int m, double lat, double lon) {
+        int entry = fieldsOffset + m * MarkerIndexFile.FIELDS_ENTRY_BYTES;
+        Marker marker = new Marker(string(entry + 8, m), lat, lon, string(entry, m));
+        marker.userId = string(entry + 16, m);
+        marker.status = string(entry + 24, m);
+        marker.timestamp = buffer.getLong(entry + MarkerIndexFile.STRING_FIELDS * 8);
+        return marker;
+    }
+
+    // Строковое поле метки marker по записи (смещение, длина) в пуле
+    private String string(int entry, int marker) {
+        int offset = buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || offset < 0 || offset > poolBytes - length) {
+            throw corrupt("string entry of marker " + marker);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(poolOffset + offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static IllegalStateException corrupt(String what) {
+        return new IllegalStateException("Index file is corrupt: " + what);
+    }
+
+    // Первая ячейка каталога с ключом >= key
+    private int lowerBound(long key) {
+        int lo = 0;
+        int hi = cellCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cellKey(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.mysportik;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Журнал меток, ожидающих отправки: файл только на дозапись из записей
+// [int длина][int CRC32][данные]. Запись ADD добавляет метку, ACK - отмечает ее отправленной.
+// При открытии журнал проигрывается; оборванная или поврежденная запись в конце (сбой во время
+// записи) отрезается. Когда подтвержденных записей накапливается много, файл переписывается
+// только с неотправленными метками
+public class MarkJournal {
+
+    private static final byte ADD = 1;
+    private static final byte ACK = 2;
+    // Сколько подтверждений копится до перезаписи файла
+    static final int COMPACT_THRESHOLD = 1024;
+
+    private final File file;
+    private final LinkedHashMap<String, PendingMark> pending = new LinkedHashMap<>();
+    private FileOutputStream out;
+    private int ackedRecords;
+
+    public MarkJournal(File file) throws IOException {
+        this.file = file;
+        long validLength = replay();
+        if (file.exists() && file.length() > validLength) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        out = new FileOutputStream(file, true);
+    }
+
+    // Неотправленные метки в порядке добавления
+    public synchronized List<PendingMark> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    // Добавляет метки и дожидается их попадания на диск
+    public synchronized void append(Collection<PendingMark> marks) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        for (PendingMark mark : marks) {
+            writeRecord(data, add(mark));
+        }
+        out.write(bytes.toByteArray());
+        out.getFD().sync();
+        for (PendingMark mark : marks) {
+            pending.put(mark.key, mark);
+        }
+    }
+
+    // Отмечает метки отправленными и дожидается попадания подтверждений на диск. Если сбой
+    // случился раньше, метки будут отправлены повторно после перезапуска - с теми же ключами
+    // и временем создания, то есть повтор перезапишет запись теми же данными
+    public synchronized void acknowledge(Collection<String> keys) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        for (String key : keys) {
+            if (pending.remove(key) != null) {
+                writeRecord(data, ack(key));
+                ackedRecords++;
+            }
+        }
+        if (bytes.size() == 0) {
+            return;
+        }
+        out.write(bytes.toByteArray());
+        out.getFD().sync();
+        if (ackedRecords >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    // Переписывает журнал только с неотправленными метками: временный файл и переименование
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(stream));
+            for (PendingMark mark : pending.values()) {
+                writeRecord(data, add(mark));
+            }
+            data.flush();
+            stream.getFD().sync();
+        }
+        out.close();
+        if (!temp.renameTo(file)) {
+            out = new FileOutputStream(file, true);
+            throw new IOException("Cannot move " + temp + " to " + file);
+        }
+        out = new FileOutputStream(file, true);
+        ackedRecords = 0;
+    }
+
+    // Читает записи до конца файла или до первой поврежденной; возвращает длину корректной части
+    private long replay() throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                int crc;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    crc = in.readInt();
+                    if (length < 0 || length > file.length()) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 check = new CRC32();
+                check.update(payload, 0, length);
+                if ((int) check.getValue() != crc) {
+                    break;
+                }
+                apply(payload);
+                valid += 8 + length;
+            }
+        }
+        return valid;
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        String key = in.readUTF();
+        if (type == ADD) {
+            double lat = in.readDouble();
+            double lon = in.readDouble();
+            String status = readNullable(in);
+            String userId = readNullable(in);
+            String note = readNullable(in);
+            long timestamp = in.readLong();
+            pending.put(key, new PendingMark(key, lat, lon, status, userId, note, timestamp));
+        } else if (type == ACK) {
+            pending.remove(key);
+            ackedRecords++;
+        } else {
+            throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private static byte[] add(PendingMark mark) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(ADD);
+        data.writeUTF(mark.key);
+        data.writeDouble(mark.lat);
+        data.writeDouble(mark.lon);
+        writeNullable(data, mark.status);
+        writeNullable(data, mark.userId);
+        writeNullable(data, mark.note);
+        data.writeLong(mark.timestamp);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] ack(String key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(ACK);
+        data.writeUTF(key);
+        return bytes.toByteArray();
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
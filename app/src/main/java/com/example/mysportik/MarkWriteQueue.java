@@ -0,0 +1,63 @@
+package com.example.mysportik;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// Один журнал, конвейер и поток записи меток на процесс. Экран может пересоздаваться (поворот),
+// но файл журнала открывается один раз: два журнала на одном файле теряли бы метки при сжатии
+// одного из них и отправляли бы одни и те же метки дважды. Открытие журнала и запись в него
+// идут на потоке конвейера; задачи выполняются по порядку, поэтому журнал открыт до первой метки.
+// Конвейер живет до конца процесса, неотправленные метки уходят при следующем запуске
+public class MarkWriteQueue {
+
+    public interface Callback {
+        void onSaved(PendingMark mark);
+
+        void onFailed(IOException error);
+    }
+
+    private static MarkWriteQueue instance;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // Пишутся и читаются только на потоке scheduler
+    private MarkerWritePipeline pipeline;
+    private IOException openError;
+
+    private MarkWriteQueue(File journalFile, MarksSink sink) {
+        scheduler.execute(() -> {
+            try {
+                pipeline = new MarkerWritePipeline(new MarkJournal(journalFile), sink, scheduler);
+            } catch (IOException e) {
+                openError = e;
+            }
+        });
+    }
+
+    // Очередь процесса; journalFile и sink используются только при первом вызове
+    public static synchronized MarkWriteQueue get(File journalFile, MarksSink sink) {
+        if (instance == null) {
+            instance = new MarkWriteQueue(journalFile, sink);
+        }
+        return instance;
+    }
+
+    // Ставит метку в очередь на потоке конвейера; callback приходит с этого же потока
+    public void enqueue(double lat, double lon, String status, String userId, String note, Callback callback) {
+        scheduler.execute(() -> {
+            if (pipeline == null) {
+                callback.onFailed(new IOException("Cannot open marker journal", openError));
+                return;
+            }
+            PendingMark mark;
+            try {
+                mark = pipeline.enqueue(lat, lon, status, userId, note);
+            } catch (IOException e) {
+                callback.onFailed(e);
+                return;
+            }
+            callback.onSaved(mark);
+        });
+    }
+}
@@ -1,13 +1,34 @@
 package com.example.mysportik;
 
 public class Marker {
+    // Постоянный идентификатор метки (например, ключ участника); null у меток без идентификатора
+    public String id;
     public double lat;
     public double lon;
     public String name;
+    // Время создания метки в миллисекундах с 1970 года; 0, если неизвестно
+    public long timestamp;
+    // Автор и статус метки (как в узле Marks); null, если неизвестны
+    public String userId;
+    public String status;
 
     public Marker(double lat, double lon, String name) {
         this.lat = lat;
         this.lon = lon;
         this.name = name;
     }
+
+    public Marker(String id, double lat, double lon, String name) {
+        this(lat, lon, name);
+        this.id = id;
+    }
+
+    // Копия метки в новых координатах; остальные поля (время, автор, статус) переносятся как есть
+    public Marker withPosition(double lat, double lon) {
+        Marker copy = new Marker(id, lat, lon, name);
+        copy.timestamp = timestamp;
+        copy.userId = userId;
+        copy.status = status;
+        return copy;
+    }
 }
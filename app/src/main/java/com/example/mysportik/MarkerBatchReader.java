@@ -0,0 +1,205 @@
+package com.example.mysportik;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Потоковое чтение формата MarkerBatchWriter: в памяти держится не больше одного блока.
+// Координаты восстанавливаются с точностью 1e-7 градуса
+public class MarkerBatchReader implements Closeable {
+
+    private final InputStream in;
+    // Собственный буфер вместо BufferedInputStream, чье побайтовое чтение синхронизировано
+    private final byte[] buffer = new byte[1 << 16];
+    private int buffered;
+    private int offset;
+    private final int precision;
+    private List<Marker> block;
+    private long[] blockCells;
+    private int position;
+    private boolean finished;
+
+    public MarkerBatchReader(InputStream in) throws IOException {
+        this.in = in;
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            magic = (magic << 8) | readByte();
+        }
+        if (magic != MarkerBatchWriter.MAGIC) {
+            throw new IOException("Not a marker batch stream");
+        }
+        long version = readVarint();
+        if (version != MarkerBatchWriter.VERSION) {
+            throw new IOException("Unsupported marker batch version " + version);
+        }
+        precision = readBounded(0, GeoHashConverter.MAX_PRECISION, "precision");
+    }
+
+    // Точность ячеек, по которым упорядочены блоки
+    public int precision() {
+        return precision;
+    }
+
+    // Следующая метка или null в конце потока
+    public Marker read() throws IOException {
+        if (block == null || position == block.size()) {
+            if (readBlock() == null) {
+                return null;
+            }
+        }
+        return block.get(position++);
+    }
+
+    // Ячейка последней прочитанной read() метки, как ее посчитал писатель
+    public long cell() {
+        return blockCells[position - 1];
+    }
+
+    // Следующий блок целиком (для пакетного addAll) или null в конце потока
+    public List<Marker> readBlock() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int n = readBounded(0, MarkerBatchWriter.MAX_BLOCK_SIZE, "block size");
+        if (n == 0) {
+            finished = true;
+            block = null;
+            return null;
+        }
+        long[] cells = new long[n];
+        int runs = readBounded(0, n, "run count");
+        long cell = 0;
+        int filled = 0;
+        for (int r = 0; r < runs; r++) {
+            cell += readVarint();
+            int length = readBounded(1, n - filled, "run length");
+            Arrays.fill(cells, filled, filled + length, cell);
+            filled += length;
+        }
+        if (filled != n) {
+            throw new IOException("Corrupt marker batch: runs cover " + filled + " of " + n + " markers");
+        }
+
+        List<Marker> markers = new ArrayList<>(n);
+        double[] box = new double[4];
+        for (int k = 0; k < n; k++) {
+            if (k == 0 || cells[k] != cells[k - 1]) {
+                GeoHashConverter.getBoundingBox(cells[k], precision, box);
+            }
+            long lat = MarkerBatchWriter.cornerFixedPoint(box[0]) + unzigzag(readVarint());
+            long lon = MarkerBatchWriter.cornerFixedPoint(box[2]) + unzigzag(readVarint());
+            markers.add(new Marker(lat / MarkerBatchWriter.FIXED_POINT_SCALE,
+                    lon / MarkerBatchWriter.FIXED_POINT_SCALE, null));
+        }
+        long timestamp = 0;
+        for (int k = 0; k < n; k++) {
+            timestamp += unzigzag(readVarint());
+            markers.get(k).timestamp = timestamp;
+        }
+        for (int field = 0; field < 4; field++) {
+            String[] column = readStrings(n);
+            for (int k = 0; k < n; k++) {
+                Marker marker = markers.get(k);
+                if (field == 0) {
+                    marker.id = column[k];
+                } else if (field == 1) {
+                    marker.userId = column[k];
+                } else if (field == 2) {
+                    marker.status = column[k];
+                } else {
+                    marker.name = column[k];
+                }
+            }
+        }
+        block = markers;
+        blockCells = cells;
+        position = 0;
+        return markers;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String[] readStrings(int n) throws IOException {
+        String[] dictionary = new String[readBounded(0, n, "dictionary size")];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(readBounded(0, MarkerBatchWriter.MAX_STRING_BYTES, "string length"));
+        }
+        String[] column = new String[n];
+        for (int k = 0; k < n; k++) {
+            int index = readBounded(0, dictionary.length, "string index");
+            column[k] = index == 0 ? null : dictionary[index - 1];
+        }
+        return column;
+    }
+
+    // Varint, который обязан лежать в [min, max]. Десятибайтовый varint дает отрицательный long,
+    // поэтому нижняя граница проверяется так же, как верхняя
+    private int readBounded(int min, int max, String what) throws IOException {
+        long value = readVarint();
+        if (value < min || value > max) {
+            throw new IOException("Corrupt marker batch: " + what + " " + value);
+        }
+        return (int) value;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt marker batch: varint too long");
+    }
+
+    private int readByte() throws IOException {
+        if (offset == buffered) {
+            fill();
+        }
+        return buffer[offset++] & 0xFF;
+    }
+
+    private String readString(int length) throws IOException {
+        if (length <= buffered - offset) {
+            String value = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            offset += length;
+            return value;
+        }
+        // Строка на границе буфера
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            if (offset == buffered) {
+                fill();
+            }
+            int chunk = Math.min(length - read, buffered - offset);
+            System.arraycopy(buffer, offset, bytes, read, chunk);
+            offset += chunk;
+            read += chunk;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            throw new EOFException("Truncated marker batch");
+        }
+        buffered = read;
+        offset = 0;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.mysportik;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Потоковая запись меток в компактный колоночный формат для выгрузки и синхронизации больших областей.
+// Все числа, кроме MAGIC, - varint (по 7 бит на байт, младшие вперед); знаковые - в zigzag.
+//
+//   int  MAGIC (big-endian), varint VERSION, varint точность ячеек
+//   блоки:
+//     число меток в блоке (0 - конец потока)
+//     ячейки: число серий, затем по серии разность long-геохэша с предыдущей серией и длина серии
+//     координаты: по метке zigzag-смещение широты и долготы от угла ячейки в 1e-7 градуса
+//     время: по метке zigzag-разность с предыдущей меткой блока
+//     строки id, userId, status, название: словарь блока (число, затем длина и UTF-8 каждой строки)
+//       и по метке номер в словаре (0 - null)
+//
+// Метки буферизуются не больше чем блоком и внутри блока упорядочиваются по ячейке (устойчиво),
+// поэтому память записи ограничена размером блока, а поток из уже упорядоченного источника
+// (GeohashStorage.writeTo) целиком упорядочен по ячейкам
+public class MarkerBatchWriter implements Closeable {
+
+    static final int MAGIC = 0x4D534742; // "MSGB"
+    static final int VERSION = 1;
+    static final double FIXED_POINT_SCALE = 1e7;
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+    // Больший блок читатель считает повреждением
+    static final int MAX_BLOCK_SIZE = 1 << 16;
+    // Длиннее строку (в байтах UTF-8) читатель считает повреждением, поэтому писатель ее не примет
+    static final int MAX_STRING_BYTES = 1 << 20;
+
+    private final OutputStream out;
+    // Собственный буфер: побайтовая запись в BufferedOutputStream проходит через synchronized
+    private final byte[] buffer = new byte[1 << 16];
+    private int buffered;
+    private final int precision;
+    private final Marker[] block;
+    private final long[] cells;
+    private int size;
+    private long written;
+
+    public MarkerBatchWriter(OutputStream out, int precision, int blockSize) throws IOException {
+        if (precision < 0 || precision > GeoHashConverter.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be in [0, " + GeoHashConverter.MAX_PRECISION + "]: "
+                    + precision);
+        }
+        if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be in [1, " + MAX_BLOCK_SIZE + "]: " + blockSize);
+        }
+        this.out = out;
+        this.precision = precision;
+        this.block = new Marker[blockSize];
+        this.cells = new long[blockSize];
+        writeByte(MAGIC >>> 24);
+        writeByte(MAGIC >>> 16);
+        writeByte(MAGIC >>> 8);
+        writeByte(MAGIC);
+        writeVarint(VERSION);
+        writeVarint(precision);
+    }
+
+    public MarkerBatchWriter(OutputStream out, int precision) throws IOException {
+        this(out, precision, DEFAULT_BLOCK_SIZE);
+    }
+
+    // Строковое поле длиннее MAX_STRING_BYTES - IllegalArgumentException, поток при этом не портится
+    public void write(Marker marker) throws IOException {
+        checkLength(marker.id);
+        checkLength(marker.userId);
+        checkLength(marker.status);
+        checkLength(marker.name);
+        block[size++] = marker;
+        if (size == block.length) {
+            writeBlock();
+        }
+    }
+
+    // Число записанных меток
+    public long written() {
+        return written + size;
+    }
+
+    // Дописывает неполный блок и сбрасывает буфер в поток
+    public void flush() throws IOException {
+        writeBlock();
+        drain();
+        out.flush();
+    }
+
+    // Завершает поток (блок нулевой длины) и закрывает его
+    @Override
+    public void close() throws IOException {
+        try {
+            writeBlock();
+            writeVarint(0);
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        int n = size;
+        for (int i = 0; i < n; i++) {
+            cells[i] = GeoHashConverter.encodeToLong(block[i].lat, block[i].lon, precision);
+        }
+        int[] order = GeohashSort.sortedOrder(cells, 0, n);
+        writeVarint(n);
+
+        int runs = 0;
+        for (int k = 0; k < n; k++) {
+            if (k == 0 || cells[order[k]] != cells[order[k - 1]]) {
+                runs++;
+            }
+        }
+        writeVarint(runs);
+        long previous = 0;
+        for (int k = 0; k < n; ) {
+            long cell = cells[order[k]];
+            int end = k + 1;
+            while (end < n && cells[order[end]] == cell) {
+                end++;
+            }
+            writeVarint(cell - previous);
+            writeVarint(end - k);
+            previous = cell;
+            k = end;
+        }
+
+        double[] box = new double[4];
+        for (int k = 0; k < n; k++) {
+            Marker marker = block[order[k]];
+            if (k == 0 || cells[order[k]] != cells[order[k - 1]]) {
+                GeoHashConverter.getBoundingBox(cells[order[k]], precision, box);
+            }
+            writeVarint(zigzag(fixedPoint(marker.lat) - cornerFixedPoint(box[0])));
+            writeVarint(zigzag(fixedPoint(marker.lon) - cornerFixedPoint(box[2])));
+        }
+        long previousTime = 0;
+        for (int k = 0; k < n; k++) {
+            long timestamp = block[order[k]].timestamp;
+            writeVarint(zigzag(timestamp - previousTime));
+            previousTime = timestamp;
+        }
+        String[] column = new String[n];
+        for (int field = 0; field < 4; field++) {
+            for (int k = 0; k < n; k++) {
+                Marker marker = block[order[k]];
+                column[k] = field == 0 ? marker.id : field == 1 ? marker.userId : field == 2 ? marker.status
+                        : marker.name;
+            }
+            writeStrings(column, n);
+        }
+
+        for (int i = 0; i < n; i++) {
+            block[i] = null;
+        }
+        written += n;
+        size = 0;
+    }
+
+    private static void checkLength(String value) {
+        // Символ занимает не больше трех байтов UTF-8 (суррогатная пара - четыре на два символа),
+        // так что короткие строки не кодируются
+        if (value != null && value.length() > MAX_STRING_BYTES / 3
+                && value.getBytes(StandardCharsets.UTF_8).length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String field longer than " + MAX_STRING_BYTES + " bytes");
+        }
+    }
+
+    // Словарь различных строк столбца, затем номера строк по меткам
+    private void writeStrings(String[] column, int n) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] indices = new int[n];
+        String[] entries = new String[n];
+        for (int k = 0; k < n; k++) {
+            String value = column[k];
+            if (value == null) {
+                continue;
+            }
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                index = dictionary.size() + 1;
+                dictionary.put(value, index);
+                entries[index - 1] = value;
+            }
+            indices[k] = index;
+        }
+        writeVarint(dictionary.size());
+        for (int i = 0; i < dictionary.size(); i++) {
+            byte[] bytes = entries[i].getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes);
+        }
+        for (int k = 0; k < n; k++) {
+            writeVarint(indices[k]);
+        }
+    }
+
+    private void writeVarint(long value) throws IOException {
+        if (buffered > buffer.length - 10) {
+            drain();
+        }
+        while ((value & ~0x7FL) != 0) {
+            buffer[buffered++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[buffered++] = (byte) value;
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (buffered == buffer.length) {
+            drain();
+        }
+        buffer[buffered++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - buffered) {
+            drain();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, buffered, bytes.length);
+        buffered += bytes.length;
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, buffered);
+        buffered = 0;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long fixedPoint(double degrees) {
+        return Math.round(degrees * FIXED_POINT_SCALE);
+    }
+
+    // Угол ячейки в фиксированной точке, округленный вниз: смещения точек ячейки почти всегда неотрицательны
+    static long cornerFixedPoint(double degrees) {
+        return (long) Math.floor(degrees * FIXED_POINT_SCALE);
+    }
+}
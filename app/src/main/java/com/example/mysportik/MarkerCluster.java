@@ -0,0 +1,19 @@
+package com.example.mysportik;
+
+// Кластер меток одной ячейки геохэша для отрисовки на мелком масштабе
+public class MarkerCluster {
+    public final String geohash;
+    public final int count;
+    public final double centroidLat;
+    public final double centroidLon;
+    // Одна из меток ячейки (например, для подписи кластера из одной метки)
+    public final Marker representative;
+
+    public MarkerCluster(String geohash, int count, double centroidLat, double centroidLon, Marker representative) {
+        this.geohash = geohash;
+        this.count = count;
+        this.centroidLat = centroidLat;
+        this.centroidLon = centroidLon;
+        this.representative = representative;
+    }
+}
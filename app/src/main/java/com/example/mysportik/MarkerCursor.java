@@ -0,0 +1,14 @@
+package com.example.mysportik;
+
+import java.util.Iterator;
+
+// Ленивый поток меток в порядке возрастания расстояния. Работа выполняется только при вызове
+// hasNext/next; токен позволяет продолжить выдачу со следующей страницы новым запросом
+public interface MarkerCursor extends Iterator<Marker> {
+
+    // Расстояние (км) до последней выданной метки
+    double lastDistanceKm();
+
+    // Токен продолжения после последней выданной метки
+    String resumeToken();
+}
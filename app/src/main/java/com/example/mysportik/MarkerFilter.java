@@ -0,0 +1,48 @@
+package com.example.mysportik;
+
+// Условие на видимость и владельца метки для поиска в GeohashStorage. Ячейки хранилища держат
+// публичные и личные метки в разных частях массива, а личные - сгруппированными по владельцу,
+// поэтому неподходящие метки пропускаются целыми диапазонами, без чтения их координат
+public final class MarkerFilter {
+
+    // Статус личной метки (как пишет MarksActivity); все остальные метки считаются публичными
+    public static final String PRIVATE_STATUS = "private";
+
+    final boolean publicMarkers;
+    final String owner;
+
+    private MarkerFilter(boolean publicMarkers, String owner) {
+        this.publicMarkers = publicMarkers;
+        this.owner = owner;
+    }
+
+    // Только публичные метки
+    public static MarkerFilter publicOnly() {
+        return new MarkerFilter(true, null);
+    }
+
+    // Все метки пользователя, публичные и личные
+    public static MarkerFilter ownedBy(String userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("userId is required");
+        }
+        return new MarkerFilter(false, userId);
+    }
+
+    // Публичные метки и все метки пользователя ("что рядом" для вошедшего пользователя)
+    public static MarkerFilter publicOrOwnedBy(String userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("userId is required");
+        }
+        return new MarkerFilter(true, userId);
+    }
+
+    public static boolean isPrivate(Marker marker) {
+        return PRIVATE_STATUS.equals(marker.status);
+    }
+
+    // Та же проверка для отдельной метки
+    public boolean accepts(Marker marker) {
+        return (publicMarkers && !isPrivate(marker)) || (owner != null && owner.equals(marker.userId));
+    }
+}
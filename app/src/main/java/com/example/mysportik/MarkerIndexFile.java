@@ -0,0 +1,162 @@
+package com.example.mysportik;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+// Двоичный формат файла индекса меток (все числа big-endian):
+//
+//   0  int  MAGIC
+//   4  int  VERSION
+//   8  int  точность каталога ячеек
+//  12  int  число меток
+//  16  int  число ячеек в каталоге
+//  20  int  размер пула строк в байтах
+//  24  long CRC32 всего, что идет после заголовка
+//  32  int  CRC32 байтов 0..31 заголовка
+//  36..63   зарезервировано (нули)
+//  64  каталог: по ячейке long-геохэш и int номер первой метки, ячейки по возрастанию
+//      координаты: по метке int широта и int долгота в 1e-7 градуса, метки по возрастанию ячейки;
+//      ключ ячейки считается по этим же округленным координатам
+//      поля: по метке четыре строки (название, id, userId, статус) как int смещение и int длина
+//      в пуле строк (длина -1 - null), затем long время создания
+//      пул строк: UTF-8, одинаковые строки хранятся один раз
+//
+// Все смещения вычисляются из счетчиков заголовка, поэтому открытие файла проверяет только
+// заголовок и не зависит от размера файла; тело сверяется с CRC32 отдельно (MappedMarkerIndex)
+public class MarkerIndexFile {
+
+    static final int MAGIC = 0x4D534758; // "MSGX"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 64;
+    static final int DIRECTORY_ENTRY_BYTES = 12;
+    static final int COORDINATE_BYTES = 8;
+    // Строковые поля метки в порядке записи
+    static final int STRING_FIELDS = 4;
+    static final int FIELDS_ENTRY_BYTES = STRING_FIELDS * 8 + 8;
+    static final double FIXED_POINT_SCALE = 1e7;
+    // Точность каталога по умолчанию (~150 м)
+    public static final int DEFAULT_DIRECTORY_PRECISION = 7;
+
+    // Записывает метки в файл. Запись идет во временный файл, который затем переименовывается,
+    // так что читатель никогда не видит наполовину записанный индекс
+    public static void write(File file, Collection<? extends Marker> markers, int directoryPrecision) throws IOException {
+        int n = markers.size();
+        Marker[] source = markers.toArray(new Marker[0]);
+        int[] lats = new int[n];
+        int[] lons = new int[n];
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = (int) Math.round(source[i].lat * FIXED_POINT_SCALE);
+            lons[i] = (int) Math.round(source[i].lon * FIXED_POINT_SCALE);
+            keys[i] = GeoHashConverter.encodeToLong(lats[i] / FIXED_POINT_SCALE, lons[i] / FIXED_POINT_SCALE,
+                    directoryPrecision);
+        }
+        int[] order = GeohashSort.parallelSortedOrder(keys, n);
+
+        int cellCount = 0;
+        for (int k = 0; k < n; k++) {
+            if (k == 0 || keys[order[k]] != keys[order[k - 1]]) {
+                cellCount++;
+            }
+        }
+
+        // Пул строк с повторным использованием одинаковых значений
+        Map<String, int[]> pooled = new HashMap<>();
+        int[] stringOffsets = new int[n * STRING_FIELDS];
+        int[] stringLengths = new int[n * STRING_FIELDS];
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        for (int k = 0; k < n; k++) {
+            Marker marker = source[order[k]];
+            String[] fields = {marker.name, marker.id, marker.userId, marker.status};
+            for (int f = 0; f < STRING_FIELDS; f++) {
+                int slot = k * STRING_FIELDS + f;
+                if (fields[f] == null) {
+                    stringLengths[slot] = -1;
+                    continue;
+                }
+                int[] entry = pooled.get(fields[f]);
+                if (entry == null) {
+                    byte[] bytes = fields[f].getBytes(StandardCharsets.UTF_8);
+                    entry = new int[]{pool.size(), bytes.length};
+                    pool.write(bytes, 0, bytes.length);
+                    pooled.put(fields[f], entry);
+                }
+                stringOffsets[slot] = entry[0];
+                stringLengths[slot] = entry[1];
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        CRC32 bodyCrc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            // Место под заголовок; он не входит в контрольную сумму тела и дописывается в конце
+            stream.write(new byte[HEADER_BYTES]);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(stream, bodyCrc), 1 << 16));
+            for (int k = 0; k < n; k++) {
+                if (k == 0 || keys[order[k]] != keys[order[k - 1]]) {
+                    out.writeLong(keys[order[k]]);
+                    out.writeInt(k);
+                }
+            }
+            for (int k = 0; k < n; k++) {
+                out.writeInt(lats[order[k]]);
+                out.writeInt(lons[order[k]]);
+            }
+            for (int k = 0; k < n; k++) {
+                for (int f = 0; f < STRING_FIELDS; f++) {
+                    out.writeInt(stringOffsets[k * STRING_FIELDS + f]);
+                    out.writeInt(stringLengths[k * STRING_FIELDS + f]);
+                }
+                out.writeLong(source[order[k]].timestamp);
+            }
+            pool.writeTo(out);
+            out.flush();
+        }
+
+        byte[] header = header(directoryPrecision, n, cellCount, pool.size(), bodyCrc.getValue());
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+            raf.write(header);
+            raf.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot move " + temp + " to " + file);
+        }
+    }
+
+    public static void write(File file, Collection<? extends Marker> markers) throws IOException {
+        write(file, markers, DEFAULT_DIRECTORY_PRECISION);
+    }
+
+    static byte[] header(int directoryPrecision, int markerCount, int cellCount, int poolBytes, long bodyCrc) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(directoryPrecision);
+        buffer.putInt(markerCount);
+        buffer.putInt(cellCount);
+        buffer.putInt(poolBytes);
+        buffer.putLong(bodyCrc);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, 32);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    static long expectedLength(int markerCount, int cellCount, int poolBytes) {
+        return HEADER_BYTES + (long) cellCount * DIRECTORY_ENTRY_BYTES
+                + (long) markerCount * (COORDINATE_BYTES + FIELDS_ENTRY_BYTES) + poolBytes;
+    }
+}
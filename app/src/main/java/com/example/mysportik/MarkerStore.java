@@ -0,0 +1,16 @@
+package com.example.mysportik;
+
+import java.util.List;
+
+// Общий контракт пространственных хранилищ меток
+public interface MarkerStore {
+
+    // Добавление метки в хранилище
+    void addMarker(Marker marker, int precision);
+
+    // Поиск в радиусе (возвращает список меток)
+    List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm, int precision);
+
+    // Оценка памяти, занимаемой хранилищем, в байтах (без содержимого строк-названий)
+    long estimatedMemoryBytes();
+}
@@ -0,0 +1,219 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Обратный индекс слов из названий (заметок) меток GeohashStorage по ячейкам (см. MarkerTextSearch).
+// Слова нормализуются: нижний регистр без учета локали, "ё" -> "е", разделители - все, кроме букв
+// и цифр. Слово запроса совпадает с любым словом метки, которое с него начинается ("фонт" - "фонтан").
+// Списки меток хранятся один раз и доступны с двух сторон: слово -> ячейка -> метки (для редких слов)
+// и ячейка -> слово -> метки (для запросов по небольшой области); обе стороны - TreeMap,
+// так что все слова с префиксом - один подинтервал
+final class MarkerTextIndex {
+
+    private final TreeMap<String, Map<String, List<Marker>>> tokens = new TreeMap<>();
+    private final Map<String, TreeMap<String, List<Marker>>> cells = new HashMap<>();
+
+    // Различные нормализованные слова текста в порядке появления
+    static List<String> tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        if (text == null) {
+            return result;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                c = Character.toLowerCase(c);
+                token.append(c == 'ё' ? 'е' : c);
+            } else if (token.length() > 0) {
+                String value = token.toString();
+                if (!result.contains(value)) {
+                    result.add(value);
+                }
+                token.setLength(0);
+            }
+        }
+        return result;
+    }
+
+    // Каждое слово запроса - начало какого-нибудь слова названия метки
+    static boolean matches(Marker marker, List<String> query) {
+        List<String> words = tokenize(marker.name);
+        for (String prefix : query) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void add(String geohash, Marker marker) {
+        for (String token : tokenize(marker.name)) {
+            Map<String, List<Marker>> byCell = tokens.get(token);
+            if (byCell == null) {
+                byCell = new HashMap<>();
+                tokens.put(token, byCell);
+            }
+            List<Marker> markers = byCell.get(geohash);
+            if (markers == null) {
+                // Чаще всего слово встречается в ячейке у одной-двух меток
+                markers = new ArrayList<>(2);
+                byCell.put(geohash, markers);
+                TreeMap<String, List<Marker>> cell = cells.get(geohash);
+                if (cell == null) {
+                    cell = new TreeMap<>();
+                    cells.put(geohash, cell);
+                }
+                cell.put(token, markers);
+            }
+            markers.add(marker);
+        }
+    }
+
+    // Удаление по ссылке; пустые списки и ячейки удаляются
+    void remove(String geohash, Marker marker) {
+        for (String token : tokenize(marker.name)) {
+            Map<String, List<Marker>> byCell = tokens.get(token);
+            List<Marker> markers = byCell == null ? null : byCell.get(geohash);
+            if (markers == null) {
+                continue;
+            }
+            for (int i = 0; i < markers.size(); i++) {
+                if (markers.get(i) == marker) {
+                    markers.remove(i);
+                    break;
+                }
+            }
+            if (markers.isEmpty()) {
+                byCell.remove(geohash);
+                if (byCell.isEmpty()) {
+                    tokens.remove(token);
+                }
+                TreeMap<String, List<Marker>> cell = cells.get(geohash);
+                cell.remove(token);
+                if (cell.isEmpty()) {
+                    cells.remove(geohash);
+                }
+            }
+        }
+    }
+
+    // Сколько меток в ячейках с ключом длины precision содержат слово с префиксом prefix (метка
+    // с несколькими такими словами считается несколько раз). Подсчет прекращается, как только
+    // превышен limit. Считаются те же списки, что потом соберет collect
+    int postingCount(String prefix, int precision, int limit) {
+        int count = 0;
+        for (Map<String, List<Marker>> byCell : prefixRange(tokens, prefix).values()) {
+            for (Map.Entry<String, List<Marker>> entry : byCell.entrySet()) {
+                if (entry.getKey().length() != precision) {
+                    continue;
+                }
+                count += entry.getValue().size();
+                if (count > limit) {
+                    return count;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Метки со словом с префиксом prefix из всех ячеек с ключом длины precision
+    void collect(String prefix, int precision, Set<Marker> seen, List<Marker> out) {
+        for (Map<String, List<Marker>> byCell : prefixRange(tokens, prefix).values()) {
+            for (Map.Entry<String, List<Marker>> entry : byCell.entrySet()) {
+                if (entry.getKey().length() == precision) {
+                    addUnseen(entry.getValue(), seen, out);
+                }
+            }
+        }
+    }
+
+    // Метки со словом с префиксом prefix из одной ячейки. Одна метка может попасть в несколько
+    // списков только этой же ячейки, поэтому повторы ищутся среди уже добавленных из нее
+    void collectInCell(String geohash, String prefix, List<Marker> out) {
+        TreeMap<String, List<Marker>> cell = cells.get(geohash);
+        if (cell == null) {
+            return;
+        }
+        int start = out.size();
+        Map.Entry<String, List<Marker>> entry = cell.ceilingEntry(prefix);
+        for (boolean first = true; entry != null && entry.getKey().startsWith(prefix); first = false) {
+            if (first) {
+                out.addAll(entry.getValue());
+            } else {
+                int end = out.size();
+                for (Marker marker : entry.getValue()) {
+                    if (!containsSame(out, start, end, marker)) {
+                        out.add(marker);
+                    }
+                }
+            }
+            entry = cell.higherEntry(entry.getKey());
+        }
+    }
+
+    static Set<Marker> newSeenSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // Оценка памяти индекса: узлы обеих TreeMap и HashMap, строки слов и списки меток
+    // (массив списка - по числу элементов, не меньше начальной емкости)
+    long estimatedMemoryBytes() {
+        long treeNode = MemoryFootprint.object(5 * MemoryFootprint.REFERENCE + 1);
+        long hashNode = MemoryFootprint.object(4 + 3 * MemoryFootprint.REFERENCE);
+        long treeMap = MemoryFootprint.object(3 * MemoryFootprint.REFERENCE + 2 * 4);
+        long hashMap = MemoryFootprint.object(3 * MemoryFootprint.REFERENCE + 4 * 4);
+        long bytes = 2 * hashMap + treeMap
+                + MemoryFootprint.array(Integer.highestOneBit(Math.max(1, cells.size() * 4 / 3)) * 2L,
+                MemoryFootprint.REFERENCE)
+                + cells.size() * (hashNode + treeMap);
+        for (Map.Entry<String, Map<String, List<Marker>>> entry : tokens.entrySet()) {
+            Map<String, List<Marker>> byCell = entry.getValue();
+            bytes += treeNode + MemoryFootprint.string(entry.getKey()) + hashMap
+                    + MemoryFootprint.array(Integer.highestOneBit(Math.max(1, byCell.size() * 4 / 3)) * 2L,
+                    MemoryFootprint.REFERENCE);
+            for (List<Marker> markers : byCell.values()) {
+                // Узел HashMap слова, узел TreeMap ячейки и сам список
+                bytes += hashNode + treeNode + MemoryFootprint.object(MemoryFootprint.REFERENCE + 2 * 4)
+                        + MemoryFootprint.array(Math.max(2, markers.size()), MemoryFootprint.REFERENCE);
+            }
+        }
+        return bytes;
+    }
+
+    private static <V> NavigableMap<String, V> prefixRange(TreeMap<String, V> map, String prefix) {
+        return map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static boolean containsSame(List<Marker> markers, int from, int to, Marker marker) {
+        for (int i = from; i < to; i++) {
+            if (markers.get(i) == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addUnseen(List<Marker> markers, Set<Marker> seen, List<Marker> out) {
+        for (Marker marker : markers) {
+            if (seen.add(marker)) {
+                out.add(marker);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Поиск меток GeohashStorage по словам названий рядом с точкой. Обратный индекс слов MarkerTextIndex
+// строится по текущему содержимому хранилища и дальше обновляется через его слушатель изменений,
+// так что само хранилище о словах ничего не знает. У хранилища один слушатель: новый поиск
+// по тому же хранилищу отключает предыдущий
+public class MarkerTextSearch {
+
+    private final GeohashStorage storage;
+    private final MarkerTextIndex index = new MarkerTextIndex();
+    private final GeohashStorage.ChangeListener listener = new GeohashStorage.ChangeListener() {
+        @Override
+        public void onMarkerAdded(String geohash, Marker marker) {
+            index.add(geohash, marker);
+        }
+
+        @Override
+        public void onMarkerRemoved(String geohash, Marker marker) {
+            index.remove(geohash, marker);
+        }
+    };
+
+    public MarkerTextSearch(GeohashStorage storage) {
+        this.storage = storage;
+        storage.setChangeListener(listener);
+    }
+
+    // Отключается от хранилища; индекс больше не обновляется
+    public void detach() {
+        storage.setChangeListener(null);
+    }
+
+    // Метки в радиусе, в названии которых есть слова, начинающиеся с каждого слова запроса.
+    // Ведущим берется слово запроса с самым коротким списком меток точности precision; если меток
+    // в нем не больше, чем ячеек в покрытии круга, проверяются только они, иначе список слова
+    // берется в каждой ячейке покрытия. Остальные слова запроса и расстояние проверяются
+    // для найденных кандидатов
+    public List<Marker> search(double centerLat, double centerLon, double radiusKm, int precision, String query) {
+        List<String> words = MarkerTextIndex.tokenize(query);
+        if (words.isEmpty()) {
+            return storage.searchInRadius(centerLat, centerLon, radiusKm, precision);
+        }
+        double[] box = new double[4];
+        GeohashCovering.boundingBox(centerLat, centerLon, radiusKm, box);
+        // Списки длиннее покрытия дочитывать незачем: тогда обход идет по ячейкам
+        int coverCells = (int) Math.min(Integer.MAX_VALUE - 1,
+                GeohashCovering.cellCount(box[0], box[1], box[2], box[3], precision));
+        String driver = words.get(0);
+        int driverCount = coverCells + 1;
+        for (String word : words) {
+            int count = index.postingCount(word, precision, Math.min(driverCount, coverCells));
+            if (count < driverCount) {
+                driver = word;
+                driverCount = count;
+            }
+        }
+        List<Marker> result = new ArrayList<>();
+        if (driverCount == 0) {
+            return result;
+        }
+        List<Marker> candidates = new ArrayList<>();
+        if (driverCount <= coverCells) {
+            index.collect(driver, precision, MarkerTextIndex.newSeenSet(), candidates);
+        } else {
+            for (String geohash : storage.getGeohashesCoveringRadius(centerLat, centerLon, radiusKm, precision)) {
+                index.collectInCell(geohash, driver, candidates);
+            }
+        }
+        for (Marker marker : candidates) {
+            if (GeoMath.distanceKm(centerLat, centerLon, marker.lat, marker.lon) <= radiusKm
+                    && (words.size() == 1 || MarkerTextIndex.matches(marker, words))) {
+                result.add(marker);
+            }
+        }
+        return result;
+    }
+
+    // Память обратного индекса слов
+    public long estimatedMemoryBytes() {
+        return index.estimatedMemoryBytes();
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.mysportik;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Конвейер записи меток: метка сначала попадает в журнал на диске, затем копится в очереди и
+// уходит в MarksSink пачками - когда набралось maxBatchSize меток или прошло maxDelayMs с момента
+// первой неотправленной. В полете не больше одной пачки, так что порядок записи сохраняется.
+// При ошибке пачка повторяется с экспоненциальной задержкой; метки, не отправленные до закрытия,
+// остаются в журнале и уходят при следующем запуске
+public class MarkerWritePipeline {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final long DEFAULT_MAX_DELAY_MS = 2000;
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 1000;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 60000;
+
+    private final MarkJournal journal;
+    private final MarksSink sink;
+    private final ScheduledExecutorService scheduler;
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    // Неподтвержденные метки; пачка в полете - это первые inFlight элементов
+    private final ArrayDeque<PendingMark> queue = new ArrayDeque<>();
+    private int inFlight;
+    private ScheduledFuture<?> scheduledFlush;
+    private int failures;
+    private long acked;
+    private boolean closed;
+
+    public MarkerWritePipeline(MarkJournal journal, MarksSink sink, ScheduledExecutorService scheduler,
+                               int maxBatchSize, long maxDelayMs, long initialBackoffMs, long maxBackoffMs) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.journal = journal;
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        // Метки, оставшиеся в журнале с прошлого запуска, отправляются сразу
+        synchronized (this) {
+            queue.addAll(journal.pending());
+            if (!queue.isEmpty()) {
+                schedule(0);
+            }
+        }
+    }
+
+    public MarkerWritePipeline(MarkJournal journal, MarksSink sink, ScheduledExecutorService scheduler) {
+        this(journal, sink, scheduler, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MS,
+                DEFAULT_INITIAL_BACKOFF_MS, DEFAULT_MAX_BACKOFF_MS);
+    }
+
+    // Ставит метку в очередь. После возврата метка уже на диске и переживет перезапуск;
+    // время создания метки - момент вызова, а не момент отправки
+    public PendingMark enqueue(double lat, double lon, String status, String userId, String note) throws IOException {
+        PendingMark mark = new PendingMark(sink.newKey(), lat, lon, status, userId, note, System.currentTimeMillis());
+        journal.append(Collections.singletonList(mark));
+        synchronized (this) {
+            queue.add(mark);
+            schedule(queue.size() - inFlight >= maxBatchSize ? 0 : maxDelayMs);
+        }
+        return mark;
+    }
+
+    // Отправить накопленное, не дожидаясь окна (если не идет ожидание после ошибки)
+    public synchronized void flush() {
+        schedule(0);
+    }
+
+    // Метки, еще не подтвержденные хранилищем (включая пачку в полете)
+    public synchronized int pendingCount() {
+        return queue.size();
+    }
+
+    // Метки, подтвержденные хранилищем с момента создания конвейера
+    public synchronized long ackedCount() {
+        return acked;
+    }
+
+    // Останавливает отправку; неподтвержденные метки остаются в журнале
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+        }
+        journal.close();
+    }
+
+    // Планирует отправку через delayMs. Уже запланированная отправка переносится только на более
+    // ранний срок и только вне ожидания после ошибки
+    private void schedule(long delayMs) {
+        if (closed || inFlight > 0 || queue.isEmpty()) {
+            return;
+        }
+        if (scheduledFlush != null) {
+            if (failures > 0 || scheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= delayMs
+                    || !scheduledFlush.cancel(false)) {
+                return;
+            }
+        }
+        try {
+            scheduledFlush = scheduler.schedule(this::sendBatch, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Планировщик остановлен (ответ хранилища пришел после остановки): метки остаются
+            // в журнале и уйдут после перезапуска
+            scheduledFlush = null;
+        }
+    }
+
+    private void sendBatch() {
+        List<PendingMark> batch;
+        synchronized (this) {
+            scheduledFlush = null;
+            if (closed || inFlight > 0 || queue.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+            Iterator<PendingMark> it = queue.iterator();
+            while (it.hasNext() && batch.size() < maxBatchSize) {
+                batch.add(it.next());
+            }
+            inFlight = batch.size();
+        }
+        try {
+            sink.write(batch, new MarksSink.Callback() {
+                @Override
+                public void onSuccess() {
+                    // Callback может прийти на главный поток, а подтверждение пишется с fsync
+                    try {
+                        scheduler.execute(() -> onBatchWritten(batch));
+                    } catch (RejectedExecutionException e) {
+                        // Планировщик остановлен: пачка останется в журнале и уйдет после перезапуска
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception error) {
+                    onBatchFailed();
+                }
+            });
+        } catch (RuntimeException e) {
+            onBatchFailed();
+        }
+    }
+
+    private void onBatchWritten(List<PendingMark> batch) {
+        List<String> keys = new ArrayList<>(batch.size());
+        for (PendingMark mark : batch) {
+            keys.add(mark.key);
+        }
+        try {
+            journal.acknowledge(keys);
+        } catch (IOException e) {
+            // Подтверждение не записалось: после перезапуска пачка уйдет еще раз с теми же ключами
+        }
+        synchronized (this) {
+            for (int i = 0; i < batch.size(); i++) {
+                queue.poll();
+            }
+            acked += batch.size();
+            inFlight = 0;
+            failures = 0;
+            schedule(queue.size() >= maxBatchSize ? 0 : maxDelayMs);
+        }
+    }
+
+    private synchronized void onBatchFailed() {
+        inFlight = 0;
+        failures++;
+        long backoff = initialBackoffMs << Math.min(failures - 1, 20);
+        schedule(Math.min(backoff, maxBackoffMs));
+    }
+}
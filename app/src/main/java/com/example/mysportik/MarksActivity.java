@@ -10,7 +10,6 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.EdgeToEdge;
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
@@ -18,15 +17,13 @@ import androidx.core.view.WindowInsetsCompat;
 
 import com.example.mysportik.databinding.ActivityMarksBinding;
 import com.example.mysportik.databinding.ActivityRegisterBinding;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ServerValue;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 public class MarksActivity extends AppCompatActivity {
@@ -39,6 +36,9 @@ public class MarksActivity extends AppCompatActivity {
     private ActivityMarksBinding binding;
     private FirebaseAuth mAuth;
     private DatabaseReference mDatabase;
+    // Метки пишутся через журнал на диске и уходят в Marks пачками; очередь одна на процесс
+    // и переживает пересоздание экрана
+    private MarkWriteQueue writeQueue;
     //private DatabaseReference markersRef;
 
     @Override
@@ -56,6 +56,9 @@ public class MarksActivity extends AppCompatActivity {
         marker_text = findViewById(R.id.marker_text);
         public_marker = findViewById(R.id.public_marker);
 
+        writeQueue = MarkWriteQueue.get(new File(getFilesDir(), "marks.journal"),
+                new FirebaseMarksSink(mDatabase.child("Marks")));
+
 
 
 
@@ -82,45 +85,43 @@ public class MarksActivity extends AppCompatActivity {
             return;
         }
 
+        double lat;
+        double lon;
         try {
-            double lat = Double.parseDouble(center_latitude2);
-            double lon = Double.parseDouble(center_height2);
-
-            // Генерируем геохэш (предполагается, что класс GeoHashConverter существует)
-            String geohash = GeoHashConverter.encode(lat, lon, 7); // precision 7 (~150m)
-
-            // Создаем объект метки
-            HashMap<String, Object> marker = new HashMap<>();
-            marker.put("latitude", lat);
-            marker.put("longitude", lon);
-            marker.put("geohash", geohash);
-            marker.put("status", isPublic ? "public" : "private");
-            marker.put("userId", currentUser.getUid()); // ID авторизованного пользователя
-            marker.put("note", marker_text);
-            marker.put("timestamp", ServerValue.TIMESTAMP);
-
-            // Сохраняем в корень "Marks"
-            mDatabase.child("Marks").push().setValue(marker)
-                    .addOnCompleteListener(new OnCompleteListener<Void>() {
-                        @Override
-                        public void onComplete(@NonNull Task<Void> task) {
-                            if (task.isSuccessful()) {
-                                Toast.makeText(MarksActivity.this,
-                                        "Marker saved successfully",
-                                        Toast.LENGTH_SHORT).show();
-                                clearFields();
-                            } else {
-                                Toast.makeText(MarksActivity.this,
-                                        "Failed to save marker: " + task.getException().getMessage(),
-                                        Toast.LENGTH_SHORT).show();
-                            }
-                        }
-                    });
-
+            lat = Double.parseDouble(center_latitude2);
+            lon = Double.parseDouble(center_height2);
         } catch (NumberFormatException e) {
             Toast.makeText(this, "Invalid coordinates format", Toast.LENGTH_SHORT).show();
+            return;
         }
+        String userId = currentUser.getUid(); // ID авторизованного пользователя
+        String status = isPublic ? "public" : "private";
+
+        // Метка сохраняется в журнал на потоке конвейера и отправится в "Marks" вместе
+        // с ближайшей пачкой; результат сообщается на главный поток
+        writeQueue.enqueue(lat, lon, status, userId, marker_text, new MarkWriteQueue.Callback() {
+            @Override
+            public void onSaved(PendingMark mark) {
+                runOnUiThread(() -> {
+                    showToast("Marker saved successfully");
+                    if (!isDestroyed()) {
+                        clearFields();
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(IOException error) {
+                runOnUiThread(() -> showToast("Failed to save marker: " + error.getMessage()));
+            }
+        });
     }
+
+    // Через контекст приложения: ответ может прийти уже после пересоздания экрана
+    private void showToast(String message) {
+        Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
+    }
+
     private void clearFields() {
         binding.markerText.setText("");
         binding.centerLatitude2.setText("");
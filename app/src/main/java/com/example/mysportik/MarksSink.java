@@ -0,0 +1,20 @@
+package com.example.mysportik;
+
+import java.util.List;
+
+// Удаленное хранилище меток для MarkerWritePipeline. Выделено в интерфейс, чтобы конвейер
+// можно было проверять на локальной замене без сети
+public interface MarksSink {
+
+    interface Callback {
+        void onSuccess();
+
+        void onFailure(Exception error);
+    }
+
+    // Новый уникальный ключ записи, без обращения к сети
+    String newKey();
+
+    // Записывает пачку меток одной операцией; callback может прийти из любого потока
+    void write(List<PendingMark> batch, Callback callback);
+}
@@ -0,0 +1,29 @@
+package com.example.mysportik;
+
+// Источник меток из узла Marks, упорядоченных по полю geohash. Выделен в интерфейс,
+// чтобы синхронизацию можно было проверять без сети на подставном источнике
+public interface MarksSource {
+
+    // Точность поля geohash в записях Marks (~150 м)
+    int GEOHASH_PRECISION = 7;
+
+    // События одной подписки; key - ключ записи в узле Marks
+    interface Listener {
+        void onMarkAdded(String key, Marker marker);
+
+        void onMarkChanged(String key, Marker marker);
+
+        void onMarkRemoved(String key);
+
+        // Источник снял подписку сам (например, отозван доступ); событий по ней больше не будет
+        void onCancelled(Exception error);
+    }
+
+    interface Subscription {
+        void cancel();
+    }
+
+    // Подписка на записи с startGeohash <= geohash <= endGeohash (строковое сравнение).
+    // Уже существующие записи приходят через onMarkAdded сразу после подписки
+    Subscription subscribe(String startGeohash, String endGeohash, Listener listener);
+}
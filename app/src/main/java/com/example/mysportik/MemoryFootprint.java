@@ -0,0 +1,31 @@
+package com.example.mysportik;
+
+// Грубая оценка размеров объектов для 64-битной JVM со сжатыми ссылками:
+// заголовок объекта 12 байт, ссылка 4 байта, выравнивание по 8 байт
+public class MemoryFootprint {
+    public static final int OBJECT_HEADER = 12;
+    public static final int ARRAY_HEADER = 16;
+    public static final int REFERENCE = 4;
+    // Объект Marker: lat, lon и timestamp по 8 байт, id, name, userId и status - ссылки.
+    // При изменении полей Marker поправить здесь, иначе сравнения памяти хранилищ врут
+    public static final long MARKER = object(3 * 8 + 4 * REFERENCE);
+
+    // Размер объекта с полями общей длины fieldBytes
+    public static long object(long fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    // Размер массива из length элементов по elementBytes байт
+    public static long array(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    // Размер строки вместе с массивом символов (latin-1 строки по байту на символ)
+    public static long string(String value) {
+        return object(REFERENCE + 4 + 1) + array(value.length(), 1);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.mysportik;
+
+// Метка, ожидающая записи в узел Marks. Ключ генерируется локально при постановке в очередь,
+// поэтому повторная отправка после сбоя перезаписывает ту же запись, а не создает дубликат.
+// Время создания фиксируется тогда же и хранится в журнале: повтор пишет то же значение
+public class PendingMark {
+    public final String key;
+    public final double lat;
+    public final double lon;
+    public final String status;
+    public final String userId;
+    public final String note;
+    public final long timestamp;
+
+    public PendingMark(String key, double lat, double lon, String status, String userId, String note, long timestamp) {
+        this.key = key;
+        this.lat = lat;
+        this.lon = lon;
+        this.status = status;
+        this.userId = userId;
+        this.note = note;
+        this.timestamp = timestamp;
+    }
+}
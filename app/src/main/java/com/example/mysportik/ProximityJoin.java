@@ -0,0 +1,215 @@
+package com.example.mysportik;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Пространственное соединение меток с самими собой: все пары ближе порога.
+// Метки сгруппированы по ячейкам сетки геохэша такой точности, что высота ячейки не меньше порога,
+// поэтому пары лежат в одной строке сетки или в соседних. Каждая занятая ячейка сравнивается
+// с собой и со своей половиной окрестности: ячейками правее в той же строке и ячейками
+// строки выше, так что каждая пара проверяется ровно один раз. Ширина окрестности по долготе
+// считается для каждой строки по ее краю, ближнему к полюсу. Ячейки обрабатываются задачами
+// fork/join независимо друг от друга
+final class ProximityJoin {
+
+    // Пары по номерам меток (i < j не гарантируется)
+    interface IndexConsumer {
+        void accept(int i, int j);
+    }
+
+    // Сколько меток достается одной задаче
+    private static final int CHUNK = 1 << 13;
+
+    private final int precision;
+    private final double thresholdKm;
+    private final Marker[] markers;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    // Метки ячейки c - номера [starts[c], starts[c + 1])
+    private final int[] starts;
+    private final int[] rows;
+    private final int[] cols;
+    // Ячейки, упорядоченные по (строка << 32 | столбец), и их номера
+    private final long[] rowCols;
+    private final int[] cellAt;
+    private final int lonCells;
+    private final double accept;
+    private final double reject;
+    private final double angle;
+
+    // hashes - ключи ячеек точности precision в любом порядке
+    ProximityJoin(int precision, double thresholdKm, long[] hashes, int[] starts,
+                  Marker[] markers, double[] xs, double[] ys, double[] zs) {
+        this.precision = precision;
+        this.thresholdKm = thresholdKm;
+        this.markers = markers;
+        this.xs = xs;
+        this.ys = ys;
+        this.zs = zs;
+        this.starts = starts;
+        int n = hashes.length;
+        rows = new int[n];
+        cols = new int[n];
+        long[] keys = new long[n];
+        for (int c = 0; c < n; c++) {
+            rows[c] = GeoHashConverter.latIndex(hashes[c], precision);
+            cols[c] = GeoHashConverter.lonIndex(hashes[c], precision);
+            keys[c] = rowCol(rows[c], cols[c]);
+        }
+        cellAt = GeohashSort.sortedOrder(keys, 0, n);
+        rowCols = new long[n];
+        for (int k = 0; k < n; k++) {
+            rowCols[k] = keys[cellAt[k]];
+        }
+        lonCells = 1 << GeoHashConverter.lonBits(precision);
+        angle = thresholdKm / GeoMath.EARTH_RADIUS_KM;
+        // Тот же запас у порога по хорде, что и у поиска в радиусе
+        double halfChord = Math.sin(angle / 2);
+        double threshold = 4 * halfChord * halfChord;
+        double margin = threshold * 1e-9 + 1e-15;
+        accept = threshold - margin;
+        reject = threshold + margin;
+    }
+
+    // Самая мелкая точность не больше maxPrecision, у которой высота ячейки не меньше порога
+    static int joinPrecision(double thresholdKm, int maxPrecision) {
+        double angle = thresholdKm / GeoMath.EARTH_RADIUS_KM;
+        for (int p = maxPrecision; p > 0; p--) {
+            if (Math.PI / (1L << GeoHashConverter.latBits(p)) >= angle) {
+                return p;
+            }
+        }
+        return 0;
+    }
+
+    int size() {
+        return markers.length;
+    }
+
+    Marker marker(int index) {
+        return markers[index];
+    }
+
+    // Перебирает пары; без пула - в вызывающем потоке. С пулом consumer вызывается из его потоков
+    void run(ForkJoinPool pool, IndexConsumer consumer) {
+        Task task = new Task(0, starts.length - 1, consumer);
+        if (pool == null) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    private final class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int from;
+        final int to;
+        final IndexConsumer consumer;
+
+        Task(int from, int to, IndexConsumer consumer) {
+            this.from = from;
+            this.to = to;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && starts[to] - starts[from] > CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Task(from, middle, consumer), new Task(middle, to, consumer));
+                return;
+            }
+            for (int c = from; c < to; c++) {
+                joinCell(c, consumer);
+            }
+        }
+    }
+
+    private void joinCell(int c, IndexConsumer consumer) {
+        int end = starts[c + 1];
+        for (int i = starts[c]; i < end; i++) {
+            for (int j = i + 1; j < end; j++) {
+                test(i, j, consumer);
+            }
+        }
+        int row = rows[c];
+        int col = cols[c];
+        // Та же строка: только ячейки правее, чтобы пара ячеек встречалась один раз
+        int span = lonSpan(row, row);
+        if (span < 0) {
+            joinRange(c, row, col + 1, lonCells - 1, consumer);
+        } else {
+            joinWrapped(c, row, col + 1, col + span, consumer);
+        }
+        // Строка выше (по широте), если она есть
+        if (row + 1 < 1 << GeoHashConverter.latBits(precision)) {
+            span = lonSpan(row, row + 1);
+            if (span < 0) {
+                joinRange(c, row + 1, 0, lonCells - 1, consumer);
+            } else {
+                joinWrapped(c, row + 1, col - span, col + span, consumer);
+            }
+        }
+    }
+
+    // На сколько столбцов может отстоять пара меток из строк [lowRow, highRow];
+    // -1, если окрестность охватывает всю строку
+    private int lonSpan(int lowRow, int highRow) {
+        int latCells = 1 << GeoHashConverter.latBits(precision);
+        double latHeight = Math.PI / latCells;
+        double low = -Math.PI / 2 + lowRow * latHeight;
+        double high = -Math.PI / 2 + (highRow + 1) * latHeight;
+        double cos = Math.cos(Math.max(Math.abs(low), Math.abs(high)));
+        // hav(d) >= cos(lat1) cos(lat2) hav(dLon), отсюда sin(dLon / 2) <= sin(d / 2) / cos
+        double sinHalf = Math.sin(angle / 2) / cos;
+        if (!(sinHalf < 1)) {
+            return -1;
+        }
+        double lonWidth = 2 * Math.PI / lonCells;
+        int span = (int) (2 * Math.asin(sinHalf) / lonWidth) + 1;
+        return 2 * span + 1 >= lonCells ? -1 : span;
+    }
+
+    // Столбцы [first, last] с заворотом через антимеридиан
+    private void joinWrapped(int c, int row, int first, int last, IndexConsumer consumer) {
+        int from = Math.floorMod(first, lonCells);
+        int to = Math.floorMod(last, lonCells);
+        if (from <= to) {
+            joinRange(c, row, from, to, consumer);
+        } else {
+            joinRange(c, row, from, lonCells - 1, consumer);
+            joinRange(c, row, 0, to, consumer);
+        }
+    }
+
+    private void joinRange(int c, int row, int firstCol, int lastCol, IndexConsumer consumer) {
+        long last = rowCol(row, lastCol);
+        for (int k = GeohashSort.lowerBound(rowCols, 0, rowCols.length, rowCol(row, firstCol));
+             k < rowCols.length && rowCols[k] <= last; k++) {
+            int other = cellAt[k];
+            int otherEnd = starts[other + 1];
+            for (int i = starts[c]; i < starts[c + 1]; i++) {
+                for (int j = starts[other]; j < otherEnd; j++) {
+                    test(i, j, consumer);
+                }
+            }
+        }
+    }
+
+    private void test(int i, int j, IndexConsumer consumer) {
+        double dx = xs[i] - xs[j];
+        double dy = ys[i] - ys[j];
+        double dz = zs[i] - zs[j];
+        double chord2 = dx * dx + dy * dy + dz * dz;
+        if (chord2 < accept || (!(chord2 > reject)
+                && GeoMath.distanceKm(markers[i].lat, markers[i].lon, markers[j].lat, markers[j].lon) <= thresholdKm)) {
+            consumer.accept(i, j);
+        }
+    }
+
+    private static long rowCol(int row, int col) {
+        return ((long) row << 32) | col;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.mysportik;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Счетчики и гистограммы поиска в радиусе GeohashStorage. Для каждого запроса записывается,
+// сколько ячеек дало покрытие, сколько из них оказалось непустыми, сколько меток просмотрено,
+// сколько из них проверено точной формулой и сколько попало в результат, а также время
+// построения покрытия и просмотра ячеек. Запись - несколько сложений без выделения памяти.
+// Как и само хранилище, не потокобезопасен: снимок берется из потока, выполняющего поиск
+public class QueryMetrics {
+
+    // Гистограмма неотрицательных значений с логарифмическими корзинами: по четыре корзины
+    // на каждую степень двойки, так что погрешность квантиля не больше 25%
+    public static final class Histogram {
+        private static final int BUCKETS = 248;
+
+        private final long[] counts;
+        private long count;
+        private long sum;
+        private long max;
+
+        Histogram() {
+            counts = new long[BUCKETS];
+        }
+
+        private Histogram(Histogram source) {
+            counts = Arrays.copyOf(source.counts, BUCKETS);
+            count = source.count;
+            sum = source.sum;
+            max = source.max;
+        }
+
+        void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            counts[bucket(value)]++;
+            count++;
+            sum += value;
+            if (value > max) {
+                max = value;
+            }
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        // Верхняя граница корзины, в которую попадает квантиль q из [0, 1] (не больше максимума)
+        public long percentile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        void reset() {
+            Arrays.fill(counts, 0);
+            count = 0;
+            sum = 0;
+            max = 0;
+        }
+
+        static int bucket(long value) {
+            if (value < 4) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return (exponent - 1) * 4 + (int) ((value >>> (exponent - 2)) & 3);
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int shift = bucket / 4 - 1;
+            long lower = (long) (4 + bucket % 4) << shift;
+            return lower + (1L << shift) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "n=%d mean=%.0f p50=%d p90=%d p99=%d max=%d",
+                    count, mean(), percentile(0.5), percentile(0.9), percentile(0.99), max);
+        }
+    }
+
+    // Неизменяемый снимок счетчиков для вывода в лог
+    public static final class Snapshot {
+        // Запросы без кэша и их счетчики; запросы, обслуженные кэшем запросов, считаются отдельно
+        public final long queries;
+        public final long cachedQueries;
+        public final long cellsGenerated;
+        public final long cellsHit;
+        public final long candidatesScanned;
+        public final long exactChecks;
+        public final long results;
+        public final long cachedResults;
+        // Время в наносекундах: покрытие, просмотр ячеек с фильтрацией, весь запрос (включая кэш)
+        public final Histogram coverNanos;
+        public final Histogram scanNanos;
+        public final Histogram totalNanos;
+        public final Histogram candidatesPerQuery;
+
+        Snapshot(QueryMetrics metrics) {
+            queries = metrics.queries;
+            cachedQueries = metrics.cachedQueries;
+            cellsGenerated = metrics.cellsGenerated;
+            cellsHit = metrics.cellsHit;
+            candidatesScanned = metrics.candidatesScanned;
+            exactChecks = metrics.exactChecks;
+            results = metrics.results;
+            cachedResults = metrics.cachedResults;
+            coverNanos = new Histogram(metrics.coverNanos);
+            scanNanos = new Histogram(metrics.scanNanos);
+            totalNanos = new Histogram(metrics.totalNanos);
+            candidatesPerQuery = new Histogram(metrics.candidatesPerQuery);
+        }
+
+        // Доля просмотренных меток, не попавших в результат (запросы без кэша)
+        public double falsePositiveRatio() {
+            return candidatesScanned == 0 ? 0 : (double) (candidatesScanned - results) / candidatesScanned;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "queries=%d cells=%d hit=%d candidates=%d exact=%d results=%d falsePositive=%.3f"
+                            + " cached=%d cachedResults=%d%n"
+                            + "  cover ns: %s%n  scan ns: %s%n  total ns: %s%n  candidates: %s",
+                    queries, cellsGenerated, cellsHit, candidatesScanned, exactChecks, results, falsePositiveRatio(),
+                    cachedQueries, cachedResults, coverNanos, scanNanos, totalNanos, candidatesPerQuery);
+        }
+    }
+
+    private long queries;
+    private long cachedQueries;
+    private long cellsGenerated;
+    private long cellsHit;
+    private long candidatesScanned;
+    private long exactChecks;
+    private long results;
+    private long cachedResults;
+    private final Histogram coverNanos = new Histogram();
+    private final Histogram scanNanos = new Histogram();
+    private final Histogram totalNanos = new Histogram();
+    private final Histogram candidatesPerQuery = new Histogram();
+
+    // Запрос без кэша
+    void record(int generated, int hit, int candidates, int exact, int found, long coverTime, long scanTime) {
+        queries++;
+        cellsGenerated += generated;
+        cellsHit += hit;
+        candidatesScanned += candidates;
+        exactChecks += exact;
+        results += found;
+        coverNanos.record(coverTime);
+        scanNanos.record(scanTime);
+        totalNanos.record(coverTime + scanTime);
+        candidatesPerQuery.record(candidates);
+    }
+
+    // Запрос, обслуженный кэшем запросов: покрытие и просмотр ячеек учитывает сам кэш
+    void recordCached(int found, long time) {
+        cachedQueries++;
+        cachedResults += found;
+        totalNanos.record(time);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public void reset() {
+        queries = 0;
+        cachedQueries = 0;
+        cellsGenerated = 0;
+        cellsHit = 0;
+        candidatesScanned = 0;
+        exactChecks = 0;
+        results = 0;
+        cachedResults = 0;
+        coverNanos.reset();
+        scanNanos.reset();
+        totalNanos.reset();
+        candidatesPerQuery.reset();
+    }
+}
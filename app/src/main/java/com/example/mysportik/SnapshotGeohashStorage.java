@@ -0,0 +1,119 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// Хранилище поверх неизменяемого GeohashSnapshot. Одиночные добавления копятся в небольшом
+// буфере, который просматривается при поиске линейно; при заполнении буфер вливается в новый
+// снимок, и снимок вместе с буфером подменяется одной volatile-записью. Читатели не берут замков.
+// Буфер растет удвоением, и состояние видит только его первые count элементов, которые больше
+// не меняются, поэтому добавление не копирует буфер целиком
+public class SnapshotGeohashStorage implements MarkerStore {
+
+    // Сколько одиночных меток копится до пересборки снимка
+    private static final int PENDING_LIMIT = 1024;
+    private static final int INITIAL_PENDING_CAPACITY = 16;
+
+    private static final class State {
+        final GeohashSnapshot snapshot;
+        final Marker[] pending;
+        final int pendingCount;
+
+        State(GeohashSnapshot snapshot, Marker[] pending, int pendingCount) {
+            this.snapshot = snapshot;
+            this.pending = pending;
+            this.pendingCount = pendingCount;
+        }
+
+        State(GeohashSnapshot snapshot) {
+            this(snapshot, new Marker[INITIAL_PENDING_CAPACITY], 0);
+        }
+
+        List<Marker> pendingMarkers() {
+            return Arrays.asList(pending).subList(0, pendingCount);
+        }
+    }
+
+    private volatile State state = new State(GeohashSnapshot.EMPTY);
+
+    public SnapshotGeohashStorage() {
+    }
+
+    // Холодная загрузка: снимок строится сразу из всего набора
+    public SnapshotGeohashStorage(Collection<? extends Marker> markers) {
+        this(markers, GeoHashConverter.INSTANCE);
+    }
+
+    // То же с ключами снимка в кодировке encoder; последующие пересборки ее сохраняют
+    public SnapshotGeohashStorage(Collection<? extends Marker> markers, SpatialKeyEncoder encoder) {
+        state = new State(GeohashSnapshot.build(markers, encoder));
+    }
+
+    // Точность игнорируется: снимок хранит ключи максимальной точности
+    @Override
+    public synchronized void addMarker(Marker marker, int precision) {
+        State current = state;
+        int count = current.pendingCount;
+        if (count + 1 >= PENDING_LIMIT) {
+            List<Marker> added = new ArrayList<>(current.pendingMarkers());
+            added.add(marker);
+            state = new State(current.snapshot.withAdded(added));
+            return;
+        }
+        Marker[] pending = current.pending;
+        if (count == pending.length) {
+            pending = Arrays.copyOf(pending, count * 2);
+        }
+        // Элемент за границей count читателям не виден до публикации нового состояния
+        pending[count] = marker;
+        state = new State(current.snapshot, pending, count + 1);
+    }
+
+    // Пакетное обновление: новый снимок строится сбоку и подменяет текущий атомарно
+    public synchronized void addAll(Collection<? extends Marker> markers) {
+        State current = state;
+        List<Marker> added = new ArrayList<>(current.pendingCount + markers.size());
+        added.addAll(current.pendingMarkers());
+        added.addAll(markers);
+        state = new State(current.snapshot.withAdded(added));
+    }
+
+    // Полная замена содержимого заранее построенным снимком
+    public synchronized void replace(GeohashSnapshot snapshot) {
+        state = new State(snapshot);
+    }
+
+    // Текущий снимок (без еще не влитых одиночных меток)
+    public GeohashSnapshot snapshot() {
+        return state.snapshot;
+    }
+
+    @Override
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm, int precision) {
+        State current = state;
+        List<Marker> result = new ArrayList<>();
+        current.snapshot.searchInRadius(centerLat, centerLon, radiusKm, precision, result);
+        for (int i = 0; i < current.pendingCount; i++) {
+            Marker marker = current.pending[i];
+            if (GeoMath.distanceKm(centerLat, centerLon, marker.lat, marker.lon) <= radiusKm) {
+                result.add(marker);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        State current = state;
+        return current.snapshot.size() + current.pendingCount;
+    }
+
+    @Override
+    public long estimatedMemoryBytes() {
+        State current = state;
+        return current.snapshot.estimatedMemoryBytes()
+                + MemoryFootprint.array(current.pending.length, MemoryFootprint.REFERENCE)
+                + current.pendingCount * MemoryFootprint.MARKER;
+    }
+}
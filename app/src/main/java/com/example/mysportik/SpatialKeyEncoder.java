@@ -0,0 +1,22 @@
+package com.example.mysportik;
+
+// Отображение ячеек сетки геохэша в long-ключи вдоль кривой, заполняющей пространство.
+// Сетка у всех кодировок одна: точность p - это latBits(p) бит строки и lonBits(p) бит столбца
+// (GeoHashConverter); кодировки различаются только порядком ячеек. От порядка зависит,
+// на сколько непрерывных диапазонов ключей распадается покрытие запроса в отсортированном хранилище
+public interface SpatialKeyEncoder {
+
+    // Ключ ячейки, содержащей точку
+    long encodeToLong(double lat, double lon, int precision);
+
+    // Ключ ячейки по номерам строки и столбца сетки
+    long fromIndices(int latIdx, int lonIdx, int precision);
+
+    int latIndex(long key, int precision);
+
+    int lonIndex(long key, int precision);
+
+    // Ключ ячейки этой точности - префикс ключей ее точек точности MAX_PRECISION, то есть ячейка -
+    // диапазон [key << 5(12 - p), (key + 1) << 5(12 - p)) ключей максимальной точности
+    boolean isPrefixPrecision(int precision);
+}
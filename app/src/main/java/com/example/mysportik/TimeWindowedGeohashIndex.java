@@ -0,0 +1,188 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Индекс меток со временем жизни: хранит только метки за последние bucketCount интервалов
+// длиной bucketMillis. Время разбито на интервалы (корзины), корзины лежат в кольце, и в каждой
+// корзине свои ячейки геохэша фиксированной точности. Устаревшая корзина выбрасывается целиком
+// заменой одной ссылки в кольце, поэтому память ограничена окном, а поиск по времени
+// просматривает только корзины, пересекающие запрошенный интервал
+public class TimeWindowedGeohashIndex {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    // Метки одной ячейки за один интервал времени
+    private static final class Segment {
+        Marker[] markers = new Marker[INITIAL_CAPACITY];
+        double[] lats = new double[INITIAL_CAPACITY];
+        double[] lons = new double[INITIAL_CAPACITY];
+        long[] timestamps = new long[INITIAL_CAPACITY];
+        int size;
+
+        void add(Marker marker) {
+            if (size == markers.length) {
+                int capacity = size * 2;
+                markers = Arrays.copyOf(markers, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            markers[size] = marker;
+            lats[size] = marker.lat;
+            lons[size] = marker.lon;
+            timestamps[size] = marker.timestamp;
+            size++;
+        }
+    }
+
+    private static final class Bucket {
+        final long index;
+        final Map<Long, Segment> cells = new HashMap<>();
+        int size;
+
+        Bucket(long index) {
+            this.index = index;
+        }
+    }
+
+    private final int precision;
+    private final long bucketMillis;
+    private final Bucket[] ring;
+    // Номер самой новой корзины окна; корзины старше newest - ring.length + 1 устарели
+    private long newest = Long.MIN_VALUE;
+    private int size;
+
+    public TimeWindowedGeohashIndex(int precision, long bucketMillis, int bucketCount) {
+        if (precision < 1 || precision > GeoHashConverter.MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be in [1, " + GeoHashConverter.MAX_PRECISION + "]: "
+                    + precision);
+        }
+        if (bucketMillis < 1 || bucketCount < 1) {
+            throw new IllegalArgumentException("Bucket size and count must be positive: " + bucketMillis + ", "
+                    + bucketCount);
+        }
+        this.precision = precision;
+        this.bucketMillis = bucketMillis;
+        this.ring = new Bucket[bucketCount];
+    }
+
+    // Добавляет метку по ее timestamp. Метка старше окна не добавляется (возвращается false);
+    // метка новее окна сдвигает окно вперед, выбрасывая устаревшие корзины
+    public boolean addMarker(Marker marker) {
+        long index = Math.floorDiv(marker.timestamp, bucketMillis);
+        advanceTo(index);
+        if (index <= newest - ring.length) {
+            return false;
+        }
+        int slot = (int) Math.floorMod(index, (long) ring.length);
+        Bucket bucket = ring[slot];
+        if (bucket == null) {
+            bucket = new Bucket(index);
+            ring[slot] = bucket;
+        }
+        long hash = GeoHashConverter.encodeToLong(marker.lat, marker.lon, precision);
+        Segment segment = bucket.cells.get(hash);
+        if (segment == null) {
+            segment = new Segment();
+            bucket.cells.put(hash, segment);
+        }
+        segment.add(marker);
+        bucket.size++;
+        size++;
+        return true;
+    }
+
+    // Сдвигает окно так, чтобы оно заканчивалось интервалом, содержащим nowMillis
+    public void expire(long nowMillis) {
+        advanceTo(Math.floorDiv(nowMillis, bucketMillis));
+    }
+
+    // Метки в радиусе, созданные в интервале [fromMillis, toMillis]. Корзины, целиком лежащие
+    // внутри интервала, не проверяют время меток; время проверяется только в крайних корзинах
+    public List<Marker> searchInRadius(double centerLat, double centerLon, double radiusKm,
+                                       long fromMillis, long toMillis) {
+        List<Marker> result = new ArrayList<>();
+        if (size == 0 || fromMillis > toMillis) {
+            return result;
+        }
+        long first = Math.max(Math.floorDiv(fromMillis, bucketMillis), newest - ring.length + 1);
+        long last = Math.min(Math.floorDiv(toMillis, bucketMillis), newest);
+        if (first > last) {
+            return result;
+        }
+
+        LongList cover = new LongList();
+        int coverPrecision = GeohashCovering.cover(centerLat, centerLon, radiusKm, precision,
+                GeohashCovering.DEFAULT_MAX_CELLS, cover);
+        int shift = (precision - coverPrecision) * 5;
+        if (shift > 0) {
+            cover.sort();
+        }
+        for (long index = first; index <= last; index++) {
+            Bucket bucket = ring[(int) Math.floorMod(index, (long) ring.length)];
+            if (bucket == null || bucket.index != index) {
+                continue;
+            }
+            boolean whole = index * bucketMillis >= fromMillis && (index + 1) * bucketMillis - 1 <= toMillis;
+            long from = whole ? Long.MIN_VALUE : fromMillis;
+            long to = whole ? Long.MAX_VALUE : toMillis;
+            if (shift == 0) {
+                for (int i = 0; i < cover.size(); i++) {
+                    Segment segment = bucket.cells.get(cover.get(i));
+                    if (segment != null) {
+                        collect(segment, centerLat, centerLon, radiusKm, from, to, result);
+                    }
+                }
+            } else {
+                // Покрытие огрублено: проверяем префиксы ячеек корзины
+                for (Map.Entry<Long, Segment> entry : bucket.cells.entrySet()) {
+                    if (cover.binarySearch(entry.getKey() >>> shift) >= 0) {
+                        collect(entry.getValue(), centerLat, centerLon, radiusKm, from, to, result);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // Число меток в окне
+    public int size() {
+        return size;
+    }
+
+    public long windowMillis() {
+        return bucketMillis * ring.length;
+    }
+
+    private void advanceTo(long index) {
+        if (index <= newest) {
+            return;
+        }
+        // Чистим только слоты, которые переходят к новым корзинам; их не больше длины кольца
+        long from = newest == Long.MIN_VALUE ? index - ring.length + 1 : Math.max(newest + 1, index - ring.length + 1);
+        for (long i = from; i <= index; i++) {
+            int slot = (int) Math.floorMod(i, (long) ring.length);
+            Bucket expired = ring[slot];
+            if (expired != null) {
+                size -= expired.size;
+                ring[slot] = null;
+            }
+        }
+        newest = index;
+    }
+
+    private static void collect(Segment segment, double centerLat, double centerLon, double radiusKm,
+                                long from, long to, List<Marker> result) {
+        for (int i = 0; i < segment.size; i++) {
+            long timestamp = segment.timestamps[i];
+            if (timestamp >= from && timestamp <= to
+                    && GeoMath.distanceKm(centerLat, centerLon, segment.lats[i], segment.lons[i]) <= radiusKm) {
+                result.add(segment.markers[i]);
+            }
+        }
+    }
+}
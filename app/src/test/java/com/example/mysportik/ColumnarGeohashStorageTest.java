@@ -0,0 +1,92 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ColumnarGeohashStorageTest {
+
+    @Test
+    public void searchInRadius_matchesMapStorage_withInterleavedAdds() {
+        Random random = new Random(11);
+        GeohashStorage reference = new GeohashStorage();
+        ColumnarGeohashStorage columnar = new ColumnarGeohashStorage();
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 2000; i++) {
+                Marker marker = new Marker(55 + random.nextDouble(), 37 + random.nextDouble(), "m" + round + "_" + i);
+                reference.addMarker(marker, 7);
+                columnar.addMarker(marker, 7);
+            }
+            double lat = 55 + random.nextDouble();
+            double lon = 37 + random.nextDouble();
+            assertEquals(names(reference.searchInRadius(lat, lon, 5, 7)), names(columnar.searchInRadius(lat, lon, 5, 7)));
+            assertEquals(names(reference.searchInRadius(lat, lon, 60, 7)), names(columnar.searchInRadius(lat, lon, 60, 7)));
+        }
+    }
+
+    @Test
+    public void searchInRadius_restoresAllFieldsFromColumns() {
+        for (ColumnarGeohashStorage.CoordinateFormat format : ColumnarGeohashStorage.CoordinateFormat.values()) {
+            ColumnarGeohashStorage columnar = new ColumnarGeohashStorage(format);
+            Marker marker = new Marker("key", 55.7558, 37.6173, "center");
+            marker.userId = "u";
+            marker.status = "public";
+            marker.timestamp = 1_700_000_000_000L;
+            columnar.addMarker(marker, 7);
+            columnar.addMarker(new Marker(55.9, 37.9, "far"), 7);
+            List<Marker> found = columnar.searchInRadius(55.7560, 37.6170, 0.1, 7);
+            assertEquals(1, found.size());
+            Marker restored = found.get(0);
+            assertEquals("key", restored.id);
+            assertEquals("center", restored.name);
+            assertEquals("u", restored.userId);
+            assertEquals("public", restored.status);
+            assertEquals(1_700_000_000_000L, restored.timestamp);
+            assertEquals(55.7558, restored.lat, 1e-5);
+        }
+    }
+
+    @Test
+    public void searchInRadius_worksAtAnyQueryPrecision() {
+        ColumnarGeohashStorage columnar = new ColumnarGeohashStorage(ColumnarGeohashStorage.CoordinateFormat.FIXED_POINT);
+        columnar.addMarker(new Marker(55.7558, 37.6173, "center"), 7);
+        for (int precision = 1; precision <= GeoHashConverter.MAX_PRECISION; precision++) {
+            List<Marker> found = columnar.searchInRadius(55.7560, 37.6170, 0.1, precision);
+            assertEquals(1, found.size());
+            assertEquals(55.7558, found.get(0).lat, 1e-7);
+        }
+    }
+
+    @Test
+    public void estimatedMemory_isSmallerThanMapStorage() {
+        Random random = new Random(5);
+        GeohashStorage map = new GeohashStorage();
+        ColumnarGeohashStorage doubles = new ColumnarGeohashStorage();
+        ColumnarGeohashStorage floats = new ColumnarGeohashStorage(ColumnarGeohashStorage.CoordinateFormat.FLOAT);
+        for (int i = 0; i < 5000; i++) {
+            Marker marker = new Marker(40 + random.nextDouble() * 20, random.nextDouble() * 40, "m");
+            map.addMarker(marker, 7);
+            doubles.addMarker(marker, 7);
+            floats.addMarker(marker, 7);
+        }
+        doubles.trimToSize();
+        floats.trimToSize();
+        assertTrue(doubles.estimatedMemoryBytes() * 2 < map.estimatedMemoryBytes());
+        assertTrue(floats.estimatedMemoryBytes() < doubles.estimatedMemoryBytes());
+    }
+
+    private static Set<String> names(List<Marker> markers) {
+        Set<String> names = new HashSet<>();
+        for (Marker marker : markers) {
+            names.add(marker.name);
+        }
+        assertEquals(markers.size(), names.size());
+        return names;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentGeohashStorageTest {
+
+    private static final int PRECISION = 6;
+
+    @Test
+    public void concurrentWritersAndReaders_seeGrowingConsistentSnapshots() throws Exception {
+        ConcurrentGeohashStorage storage = new ConcurrentGeohashStorage();
+        int writers = 4;
+        int perWriter = 5000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(writers);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            final int seed = w;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    for (int i = 0; i < perWriter; i++) {
+                        storage.addMarker(randomMarker(random), PRECISION);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    done.countDown();
+                }
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    // Хранилище только растет, поэтому каждый следующий снимок не меньше предыдущего
+                    int previous = 0;
+                    while (writing.get()) {
+                        int found = storage.searchInRadius(55.75, 37.62, 30, PRECISION).size();
+                        assertTrue(found >= previous);
+                        previous = found;
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        done.await();
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(writers * perWriter, storage.size());
+        assertEquals(writers * perWriter, storage.searchInRadius(55.75, 37.62, 100, PRECISION).size());
+    }
+
+    private static Marker randomMarker(Random random) {
+        return new Marker(55.75 + (random.nextDouble() - 0.5) * 0.5, 37.62 + (random.nextDouble() - 0.5) * 0.8, "m");
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeoHashConverterTest {
+
+    @Test
+    public void encode_knownValues() {
+        assertEquals("u4pruydqqvj", GeoHashConverter.encode(57.64911, 10.40744, 11));
+        assertEquals("", GeoHashConverter.encode(10, 10, 0));
+    }
+
+    @Test
+    public void stringApi_matchesBisectionReference() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            int precision = 1 + random.nextInt(GeoHashConverter.MAX_PRECISION);
+            String hash = GeoHashConverter.encode(lat, lon, precision);
+            assertEquals(referenceEncode(lat, lon, precision), hash);
+            assertArrayEquals(referenceDecode(hash), GeoHashConverter.decode(hash), 0.0);
+        }
+        // Точки ровно на границах ячеек уходят в нижнюю половину, как и раньше
+        assertEquals(referenceEncode(0, 0, 6), GeoHashConverter.encode(0, 0, 6));
+        assertEquals(referenceEncode(90, 180, 6), GeoHashConverter.encode(90, 180, 6));
+        assertEquals(referenceEncode(-90, -180, 6), GeoHashConverter.encode(-90, -180, 6));
+        for (int precision = 1; precision <= GeoHashConverter.MAX_PRECISION; precision++) {
+            double lonWidth = 360.0 / (1L << GeoHashConverter.lonBits(precision));
+            double latHeight = 180.0 / (1L << GeoHashConverter.latBits(precision));
+            for (int i = 0; i < 200; i++) {
+                double lat = -90 + random.nextInt(1 << Math.min(20, GeoHashConverter.latBits(precision))) * latHeight;
+                double lon = -180 + random.nextInt(1 << Math.min(20, GeoHashConverter.lonBits(precision))) * lonWidth;
+                for (double dLat : new double[]{Math.nextDown(lat), lat, Math.nextUp(lat)}) {
+                    for (double dLon : new double[]{Math.nextDown(lon), lon, Math.nextUp(lon)}) {
+                        assertEquals(referenceEncode(dLat, dLon, precision), GeoHashConverter.encode(dLat, dLon, precision));
+                    }
+                }
+            }
+        }
+        assertEquals(referenceEncode(Double.NaN, Double.NEGATIVE_INFINITY, 8),
+                GeoHashConverter.encode(Double.NaN, Double.NEGATIVE_INFINITY, 8));
+        assertEquals(referenceEncode(Double.POSITIVE_INFINITY, 500, 8),
+                GeoHashConverter.encode(Double.POSITIVE_INFINITY, 500, 8));
+    }
+
+    @Test
+    public void longApi_roundTripsThroughIndicesAndBase32() {
+        Random random = new Random(7);
+        char[] chars = new char[GeoHashConverter.MAX_PRECISION];
+        double[] box = new double[4];
+        for (int i = 0; i < 5000; i++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            int precision = random.nextInt(GeoHashConverter.MAX_PRECISION + 1);
+            long hash = GeoHashConverter.encodeToLong(lat, lon, precision);
+
+            int latIdx = GeoHashConverter.latIndex(hash, precision);
+            int lonIdx = GeoHashConverter.lonIndex(hash, precision);
+            assertEquals(hash, GeoHashConverter.fromIndices(latIdx, lonIdx, precision));
+
+            int end = GeoHashConverter.toBase32(hash, precision, chars, 0);
+            assertEquals(hash, GeoHashConverter.fromBase32(new String(chars, 0, end)));
+
+            GeoHashConverter.getBoundingBox(hash, precision, box);
+            assertTrue(lat >= box[0] && lat <= box[1]);
+            assertTrue(lon >= box[2] && lon <= box[3]);
+        }
+    }
+
+    @Test
+    public void parallelEncodeAll_matchesSequential() {
+        Random random = new Random(20);
+        int n = GeoHashConverter.PARALLEL_ENCODE_THRESHOLD * 3 + 17;
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = random.nextDouble() * 180 - 90;
+            lons[i] = random.nextDouble() * 360 - 180;
+        }
+        long[] sequential = new long[n];
+        long[] parallel = new long[n];
+        GeoHashConverter.encodeAll(lats, lons, n, 9, sequential);
+        GeoHashConverter.parallelEncodeAll(lats, lons, n, 9, parallel);
+        assertArrayEquals(sequential, parallel);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromBase32_rejectsCharactersOutsideAlphabet() {
+        GeoHashConverter.fromBase32("u4pa");
+    }
+
+    // Исходная реализация кодирования бисекцией интервалов
+    private static String referenceEncode(double lat, double lon, int precision) {
+        String base32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+        double[] latInterval = {-90.0, 90.0};
+        double[] lonInterval = {-180.0, 180.0};
+        StringBuilder hash = new StringBuilder();
+        boolean isEven = true;
+        int bit = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            double[] interval = isEven ? lonInterval : latInterval;
+            double value = isEven ? lon : lat;
+            double mid = (interval[0] + interval[1]) / 2;
+            if (value > mid) {
+                ch |= (1 << (4 - bit));
+                interval[0] = mid;
+            } else {
+                interval[1] = mid;
+            }
+            isEven = !isEven;
+            if (bit < 4) {
+                bit++;
+            } else {
+                hash.append(base32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    private static double[] referenceDecode(String geohash) {
+        String base32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+        boolean isEven = true;
+        double[] latInterval = {-90.0, 90.0};
+        double[] lonInterval = {-180.0, 180.0};
+        for (char c : geohash.toCharArray()) {
+            int val = base32.indexOf(c);
+            for (int i = 0; i < 5; i++) {
+                double[] interval = isEven ? lonInterval : latInterval;
+                double mid = (interval[0] + interval[1]) / 2;
+                if ((val & (1 << (4 - i))) != 0) {
+                    interval[0] = mid;
+                } else {
+                    interval[1] = mid;
+                }
+                isEven = !isEven;
+            }
+        }
+        return new double[]{(latInterval[0] + latInterval[1]) / 2, (lonInterval[0] + lonInterval[1]) / 2};
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeohashCoveringTest {
+
+    @Test
+    public void cover_containsEveryPointOfCircle_nearAntimeridianAndPoles() {
+        Random random = new Random(1);
+        double[][] centers = {{0, 0}, {60, 30}, {10, 179.99}, {-45, -179.95}, {89.95, 20}, {-89.9, -100}, {85, 179.5}};
+        for (double[] center : centers) {
+            for (double radiusKm : new double[]{0.5, 5, 40}) {
+                int precision = radiusKm < 1 ? 7 : 5;
+                LongList cells = new LongList();
+                int used = GeohashCovering.cover(center[0], center[1], radiusKm, precision,
+                        GeohashCovering.DEFAULT_MAX_CELLS, cells);
+                cells.sort();
+                for (int i = 0; i < 500; i++) {
+                    double[] point = destination(center[0], center[1],
+                            radiusKm * random.nextDouble(), random.nextDouble() * 360);
+                    long cell = GeoHashConverter.encodeToLong(point[0], point[1], used);
+                    assertTrue("missing cell for " + point[0] + "," + point[1] + " around "
+                            + center[0] + "," + center[1], cells.binarySearch(cell) >= 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cover_fallsBackToCoarserPrecisionAboveCellLimit() {
+        LongList cells = new LongList();
+        int used = GeohashCovering.cover(55.75, 37.62, 50, 7, 100, cells);
+        assertTrue(used < 7);
+        assertTrue(cells.size() <= 100);
+    }
+
+    @Test
+    public void searchInRadius_matchesBruteForce() {
+        Random random = new Random(3);
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            // Часть меток возле антимеридиана
+            double lon = i % 2 == 0 ? 179.5 + random.nextDouble() : 37 + random.nextDouble();
+            if (lon > 180) {
+                lon -= 360;
+            }
+            Marker marker = new Marker(55 + random.nextDouble(), lon, "m" + i);
+            all.add(marker);
+            storage.addMarker(marker, 6);
+        }
+        double[][] queries = {{55.5, 37.5, 10}, {55.5, 179.99, 25}, {55.5, -179.9, 5}, {55.5, 37.5, 200}};
+        for (double[] q : queries) {
+            List<Marker> found = storage.searchInRadius(q[0], q[1], q[2], 6);
+            int expected = 0;
+            for (Marker marker : all) {
+                if (haversine(q[0], q[1], marker.lat, marker.lon) <= q[2]) {
+                    expected++;
+                    assertTrue(found.contains(marker));
+                }
+            }
+            assertEquals(expected, found.size());
+        }
+    }
+
+    static double[] destination(double lat, double lon, double distanceKm, double bearingDeg) {
+        double d = distanceKm / 6371.0;
+        double b = Math.toRadians(bearingDeg);
+        double lat1 = Math.toRadians(lat);
+        double lat2 = Math.asin(Math.sin(lat1) * Math.cos(d) + Math.cos(lat1) * Math.sin(d) * Math.cos(b));
+        double lon2 = Math.toRadians(lon) + Math.atan2(Math.sin(b) * Math.sin(d) * Math.cos(lat1),
+                Math.cos(d) - Math.sin(lat1) * Math.sin(lat2));
+        double lonDeg = Math.toDegrees(lon2);
+        lonDeg = ((lonDeg + 540) % 360) - 180;
+        return new double[]{Math.toDegrees(lat2), lonDeg};
+    }
+
+    static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 6371 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
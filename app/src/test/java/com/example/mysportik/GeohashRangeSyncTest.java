@@ -0,0 +1,214 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeohashRangeSyncTest {
+
+    // Подставной узел Marks в памяти: подписки получают события записей из своего диапазона
+    private static class FakeMarks implements MarksSource {
+        final Map<String, Marker> records = new LinkedHashMap<>();
+        final List<Range> active = new ArrayList<>();
+        int subscribeCalls;
+        // Порядок, в котором подписки получают событие одной записи
+        boolean reverseDelivery;
+
+        private class Range implements Subscription {
+            final String start;
+            final String end;
+            final Listener listener;
+
+            Range(String start, String end, Listener listener) {
+                this.start = start;
+                this.end = end;
+                this.listener = listener;
+            }
+
+            boolean contains(Marker marker) {
+                String geohash = GeoHashConverter.encode(marker.lat, marker.lon, GEOHASH_PRECISION);
+                return geohash.compareTo(start) >= 0 && geohash.compareTo(end) <= 0;
+            }
+
+            @Override
+            public void cancel() {
+                active.remove(this);
+            }
+        }
+
+        @Override
+        public Subscription subscribe(String startGeohash, String endGeohash, Listener listener) {
+            subscribeCalls++;
+            Range range = new Range(startGeohash, endGeohash, listener);
+            active.add(range);
+            for (Map.Entry<String, Marker> record : records.entrySet()) {
+                if (range.contains(record.getValue())) {
+                    listener.onMarkAdded(record.getKey(), record.getValue());
+                }
+            }
+            return range;
+        }
+
+        private List<Range> delivery() {
+            List<Range> ranges = new ArrayList<>(active);
+            if (reverseDelivery) {
+                Collections.reverse(ranges);
+            }
+            return ranges;
+        }
+
+        void put(String key, Marker marker) {
+            Marker old = records.put(key, marker);
+            for (Range range : delivery()) {
+                boolean was = old != null && range.contains(old);
+                boolean is = range.contains(marker);
+                if (is) {
+                    if (was) {
+                        range.listener.onMarkChanged(key, marker);
+                    } else {
+                        range.listener.onMarkAdded(key, marker);
+                    }
+                } else if (was) {
+                    range.listener.onMarkRemoved(key);
+                }
+            }
+        }
+
+        void remove(String key) {
+            Marker old = records.remove(key);
+            for (Range range : delivery()) {
+                if (range.contains(old)) {
+                    range.listener.onMarkRemoved(key);
+                }
+            }
+        }
+
+        // Источник сам снимает подписку с ошибкой
+        void fail(Range range, Exception error) {
+            active.remove(range);
+            range.listener.onCancelled(error);
+        }
+    }
+
+    @Test
+    public void viewport_loadsOnlyCoveredMarkersAndFollowsEvents() {
+        FakeMarks marks = new FakeMarks();
+        Random random = new Random(4);
+        for (int i = 0; i < 3000; i++) {
+            marks.records.put("m" + i, new Marker(55 + random.nextDouble() * 2, 36 + random.nextDouble() * 3, "m" + i));
+        }
+        GeohashStorage storage = new GeohashStorage();
+        GeohashRangeSync sync = new GeohashRangeSync(marks, storage, 6);
+
+        sync.setViewport(55.7, 55.8, 37.5, 37.7);
+        assertEquals(marks.active.size(), sync.subscriptionCount());
+        assertTrue(sync.subscriptionCount() > 0);
+        assertLoadedMatches(marks, storage, sync, 55.7, 55.8, 37.5, 37.7);
+
+        // Изменения, перемещения и удаления приходят в индекс инкрементально
+        marks.put("new", new Marker(55.75, 37.6, "new"));
+        marks.put("m0", new Marker(55.76, 37.61, "m0"));
+        marks.put("far", new Marker(10, 10, "far"));
+        String removed = null;
+        for (Marker marker : storage.searchInRadius(55.75, 37.6, 3, 6)) {
+            if (!marker.name.equals("new") && !marker.name.equals("m0")) {
+                removed = marker.name;
+            }
+        }
+        assertNotNull(removed);
+        marks.remove(removed);
+        assertLoadedMatches(marks, storage, sync, 55.7, 55.8, 37.5, 37.7);
+
+        // Сдвиг области: старые подписки сняты, метки вне новой области выгружены
+        int callsBefore = marks.subscribeCalls;
+        sync.setViewport(56.5, 56.6, 38.5, 38.7);
+        assertTrue(marks.subscribeCalls > callsBefore);
+        assertEquals(marks.active.size(), sync.subscriptionCount());
+        assertTrue(storage.searchInRadius(55.75, 37.6, 20, 6).isEmpty());
+        assertLoadedMatches(marks, storage, sync, 56.5, 56.6, 38.5, 38.7);
+
+        // Та же область повторно не переподписывается
+        callsBefore = marks.subscribeCalls;
+        sync.setViewport(56.5, 56.6, 38.5, 38.7);
+        assertEquals(callsBefore, marks.subscribeCalls);
+
+        sync.stop();
+        assertTrue(marks.active.isEmpty());
+    }
+
+    @Test
+    public void markerMovedBetweenRanges_staysLoadedWhateverTheEventOrder() {
+        FakeMarks marks = new FakeMarks();
+        Random random = new Random(9);
+        for (int i = 0; i < 500; i++) {
+            marks.records.put("m" + i, new Marker(55.7 + random.nextDouble() * 0.1, 37.5 + random.nextDouble() * 0.2,
+                    "m" + i));
+        }
+        GeohashStorage storage = new GeohashStorage();
+        GeohashRangeSync sync = new GeohashRangeSync(marks, storage, 6);
+        sync.setViewport(55.7, 55.8, 37.5, 37.7);
+        assertTrue(sync.subscriptionCount() > 1);
+        // Новый диапазон сообщает о метке раньше, чем старый о ее уходе, и наоборот
+        for (int i = 0; i < 400; i++) {
+            marks.reverseDelivery = i % 2 == 0;
+            String key = "m" + random.nextInt(500);
+            marks.put(key, new Marker(55.7 + random.nextDouble() * 0.1, 37.5 + random.nextDouble() * 0.2, key));
+        }
+        assertLoadedMatches(marks, storage, sync, 55.7, 55.8, 37.5, 37.7);
+    }
+
+    @Test
+    public void cancelledRange_isReportedAndResubscribedOnNextViewport() {
+        FakeMarks marks = new FakeMarks();
+        marks.records.put("a", new Marker(55.75, 37.6, "a"));
+        GeohashStorage storage = new GeohashStorage();
+        GeohashRangeSync sync = new GeohashRangeSync(marks, storage, 6);
+        List<String> failed = new ArrayList<>();
+        sync.setErrorListener((start, end, error) -> failed.add(start + ".." + end + ": " + error.getMessage()));
+        sync.setViewport(55.7, 55.8, 37.5, 37.7);
+        int subscribed = sync.subscriptionCount();
+        FakeMarks.Range range = marks.active.get(0);
+
+        marks.fail(range, new IllegalStateException("Permission denied"));
+        assertEquals(Collections.singletonList(range.start + ".." + range.end + ": Permission denied"), failed);
+        assertEquals(subscribed - 1, sync.subscriptionCount());
+        // Загруженные метки остаются, а та же область подписывается на диапазон заново
+        assertEquals(1, sync.loadedCount());
+        int callsBefore = marks.subscribeCalls;
+        sync.setViewport(55.7, 55.8, 37.5, 37.7);
+        assertEquals(callsBefore + 1, marks.subscribeCalls);
+        assertEquals(subscribed, sync.subscriptionCount());
+        assertLoadedMatches(marks, storage, sync, 55.7, 55.8, 37.5, 37.7);
+    }
+
+    // Загружено ровно то, что попадает в подписанные диапазоны, и все это видно поиску
+    private static void assertLoadedMatches(FakeMarks marks, GeohashStorage storage, GeohashRangeSync sync,
+                                            double minLat, double maxLat, double minLon, double maxLon) {
+        HashSet<String> expected = new HashSet<>();
+        for (Map.Entry<String, Marker> record : marks.records.entrySet()) {
+            for (FakeMarks.Range range : marks.active) {
+                if (range.contains(record.getValue())) {
+                    expected.add(record.getValue().name);
+                }
+            }
+            Marker marker = record.getValue();
+            if (marker.lat >= minLat && marker.lat <= maxLat && marker.lon >= minLon && marker.lon <= maxLon) {
+                assertTrue(expected.contains(marker.name));
+            }
+        }
+        assertEquals(expected.size(), sync.loadedCount());
+        HashSet<String> indexed = new HashSet<>();
+        for (Marker marker : storage.searchInRadius(55, 37, 1000, 6)) {
+            indexed.add(marker.name);
+        }
+        assertEquals(expected, indexed);
+    }
+}
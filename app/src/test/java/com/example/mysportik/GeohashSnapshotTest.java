@@ -0,0 +1,94 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeohashSnapshotTest {
+
+    @Test
+    public void parallelSortedOrder_sortsClusteredKeysStably() {
+        Random random = new Random(2);
+        int n = GeohashSort.PARALLEL_THRESHOLD * 3;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = GeoHashConverter.encodeToLong(55.7 + random.nextDouble() * 0.1, 37.6 + random.nextDouble() * 0.1, 12)
+                    & ~0xFFL;
+        }
+        int[] order = GeohashSort.parallelSortedOrder(keys, n);
+        assertEquals(n, new HashSet<>(toList(order)).size());
+        for (int i = 1; i < n; i++) {
+            long previous = keys[order[i - 1]];
+            long current = keys[order[i]];
+            assertTrue(previous < current || (previous == current && order[i - 1] < order[i]));
+        }
+    }
+
+    @Test
+    public void bulkPaths_matchIncrementalStorage() {
+        Random random = new Random(9);
+        List<Marker> markers = randomMarkers(random, 30000);
+        GeohashStorage incremental = new GeohashStorage();
+        for (Marker marker : markers) {
+            incremental.addMarker(marker, 6);
+        }
+        GeohashStorage bulk = new GeohashStorage();
+        bulk.addAll(markers, 6);
+        GeohashSnapshot snapshot = GeohashSnapshot.build(markers);
+
+        SnapshotGeohashStorage swapped = new SnapshotGeohashStorage(markers.subList(0, 10000));
+        swapped.addAll(markers.subList(10000, 20000));
+        for (Marker marker : markers.subList(20000, markers.size())) {
+            swapped.addMarker(marker, 6);
+        }
+        assertEquals(markers.size(), swapped.size());
+
+        for (int q = 0; q < 20; q++) {
+            double lat = 55 + random.nextDouble();
+            double lon = 37 + random.nextDouble();
+            double radius = 1 + random.nextDouble() * 10;
+            HashSet<Marker> expected = new HashSet<>(incremental.searchInRadius(lat, lon, radius, 6));
+            assertEquals(expected, new HashSet<>(bulk.searchInRadius(lat, lon, radius, 6)));
+            assertEquals(expected, new HashSet<>(snapshot.searchInRadius(lat, lon, radius, 6)));
+            assertEquals(expected, new HashSet<>(swapped.searchInRadius(lat, lon, radius, 6)));
+        }
+    }
+
+    @Test
+    public void replace_keepsLaterSingleAdds() {
+        SnapshotGeohashStorage storage = new SnapshotGeohashStorage();
+        for (int i = 0; i < 100; i++) {
+            storage.addMarker(new Marker(55.75, 37.6, "old" + i), 7);
+        }
+        storage.replace(GeohashSnapshot.build(Collections.singletonList(new Marker(59.94, 30.31, "Эрмитаж"))));
+        // Буфер растет удвоением и вливается в снимок на пределе
+        for (int i = 0; i < 3000; i++) {
+            storage.addMarker(new Marker(59.94, 30.31, "new" + i), 7);
+        }
+        assertEquals(3001, storage.size());
+        assertTrue(storage.searchInRadius(55.75, 37.6, 1, 7).isEmpty());
+        assertEquals(3001, storage.searchInRadius(59.94, 30.31, 1, 7).size());
+    }
+
+    private static List<Marker> randomMarkers(Random random, int count) {
+        List<Marker> markers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            markers.add(new Marker(55 + random.nextDouble(), 37 + random.nextDouble(), "m" + i));
+        }
+        return markers;
+    }
+
+    private static List<Integer> toList(int[] values) {
+        List<Integer> list = new ArrayList<>(values.length);
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
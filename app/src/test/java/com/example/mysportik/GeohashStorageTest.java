@@ -0,0 +1,573 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class GeohashStorageTest {
+
+    @Test
+    public void nearest_matchesBruteForceOrder() {
+        Random random = new Random(8);
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            double lon = 179 + random.nextDouble() * 2;
+            Marker marker = new Marker(60 + random.nextDouble(), lon > 180 ? lon - 360 : lon, "m" + i);
+            all.add(marker);
+            storage.addMarker(marker, 6);
+        }
+        double[][] centers = {{60.5, 180.0}, {60.5, -179.9}, {61.2, 179.2}, {58, 179}};
+        for (double[] center : centers) {
+            for (int k : new int[]{1, 20, 100}) {
+                List<Marker> expected = bruteForce(all, center[0], center[1], k, 50);
+                List<Marker> actual = storage.nearest(center[0], center[1], k, 50);
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(distance(center, expected.get(i)), distance(center, actual.get(i)), 1e-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void nearest_findsFarMarkersInSparseStorage() {
+        GeohashStorage storage = new GeohashStorage();
+        storage.addMarker(new Marker(89.9, 10, "pole"), 7);
+        storage.addMarker(new Marker(-33.86, 151.2, "sydney"), 7);
+        storage.addMarker(new Marker(55.75, 37.62, "moscow"), 5);
+
+        List<Marker> found = storage.nearest(55.7, 37.5, 3, Double.MAX_VALUE);
+        assertEquals(3, found.size());
+        assertEquals("moscow", found.get(0).name);
+        assertEquals("pole", found.get(1).name);
+        assertEquals("sydney", found.get(2).name);
+        assertTrue(storage.nearest(55.7, 37.5, 3, 100).size() == 1);
+    }
+
+    @Test
+    public void searchInRadius_matchesReferenceExactly() {
+        Random random = new Random(12);
+        GeohashStorage storage = new GeohashStorage();
+        double[][] centers = {{55.75, 37.62}, {0.0, 179.99}, {89.5, 10.0}, {-33.86, 151.2}};
+        double[] radii = {0.001, 0.05, 1, 25, 400, 5000};
+        for (double[] center : centers) {
+            for (int i = 0; i < 2000; i++) {
+                double[] point = GeohashCoveringTest.destination(center[0], center[1],
+                        random.nextDouble() * 600, random.nextDouble() * 360);
+                storage.addMarker(new Marker(point[0], point[1], "p"), 6);
+            }
+            // Метки ровно на окружностях запросов - самый трудный случай для быстрой проверки
+            for (double radius : radii) {
+                for (int b = 0; b < 36; b++) {
+                    double[] point = GeohashCoveringTest.destination(center[0], center[1], radius, b * 10);
+                    storage.addMarker(new Marker(point[0], point[1], "edge"), 6);
+                }
+            }
+        }
+        for (double[] center : centers) {
+            for (double radius : radii) {
+                for (int precision : new int[]{3, 6}) {
+                    assertEquals(storage.searchInRadiusReference(center[0], center[1], radius, precision),
+                            storage.searchInRadius(center[0], center[1], radius, precision));
+                }
+            }
+        }
+        Marker removed = storage.searchInRadius(55.75, 37.62, 1, 6).get(0);
+        assertTrue(storage.removeMarker(removed, 6));
+        assertFalse(storage.searchInRadius(55.75, 37.62, 1, 6).contains(removed));
+        assertEquals(storage.searchInRadiusReference(55.75, 37.62, 1, 6), storage.searchInRadius(55.75, 37.62, 1, 6));
+    }
+
+    @Test
+    public void shapeQueries_matchBruteForce() {
+        Random random = new Random(13);
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            Marker marker = new Marker(55.6 + random.nextDouble() * 0.3, 37.4 + random.nextDouble() * 0.4, "m" + i);
+            all.add(marker);
+            storage.addMarker(marker, 7);
+        }
+        // Невыпуклый полигон в форме буквы L
+        double[] polygonLats = {55.65, 55.65, 55.70, 55.70, 55.80, 55.80};
+        double[] polygonLons = {37.45, 37.70, 37.70, 37.52, 37.52, 37.45};
+        assertSameMarkers(filter(all, new GeoPolygon(polygonLats, polygonLons)),
+                storage.searchInPolygon(polygonLats, polygonLons, 7));
+
+        // Извилистый маршрут около 20 км
+        double[] routeLats = new double[40];
+        double[] routeLons = new double[40];
+        for (int i = 0; i < routeLats.length; i++) {
+            routeLats[i] = 55.65 + i * 0.004;
+            routeLons[i] = 37.5 + 0.03 * Math.sin(i / 4.0);
+        }
+        for (double buffer : new double[]{0.05, 0.3, 2}) {
+            assertSameMarkers(filter(all, new GeoCorridor(routeLats, routeLons, buffer)),
+                    storage.searchAlongRoute(routeLats, routeLons, buffer, 7));
+        }
+    }
+
+    @Test
+    public void routeCover_isMuchSmallerThanBoundingBox() {
+        double[] routeLats = {55.70, 55.88};
+        double[] routeLons = {37.40, 37.65};
+        LongList inside = new LongList();
+        LongList partial = new LongList();
+        GeohashShapeCovering.cover(new GeoCorridor(routeLats, routeLons, 0.1), 7, 100000, inside, partial);
+        long boxCells = GeohashCovering.cellCount(55.70, 55.88, 37.40, 37.65, 7);
+        assertTrue(inside.size() + partial.size() < boxCells / 10);
+        // Коридор через антимеридиан
+        GeoCorridor corridor = new GeoCorridor(new double[]{-17, -17.1}, new double[]{179.95, -179.95}, 1);
+        assertTrue(corridor.contains(-17.05, 180.0));
+        assertFalse(corridor.contains(-17.05, 0));
+        GeohashStorage storage = new GeohashStorage();
+        storage.addMarker(new Marker(-17.05, -179.999, "east"), 6);
+        storage.addMarker(new Marker(-17.05, 179.999, "west"), 6);
+        storage.addMarker(new Marker(-16, 179.999, "far"), 6);
+        assertEquals(2, storage.searchAlongRoute(new double[]{-17, -17.1}, new double[]{179.95, -179.95}, 1, 6).size());
+    }
+
+    @Test
+    public void clusters_followAddsAndRemoves() {
+        Random random = new Random(14);
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            double lon = 179.5 + random.nextDouble();
+            Marker marker = new Marker(-17 + random.nextDouble(), lon > 180 ? lon - 360 : lon, "m" + i);
+            all.add(marker);
+            storage.addMarker(marker, i % 3 == 0 ? 5 : 7);
+        }
+        List<Marker> bulk = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            bulk.add(new Marker(-17 + random.nextDouble(), 179.5 + random.nextDouble() * 0.5, "b" + i));
+        }
+        storage.addAll(bulk, 6);
+        all.addAll(bulk);
+        Collections.shuffle(all, random);
+        for (Marker marker : all.subList(0, 3000)) {
+            int precision = marker.name.startsWith("b") ? 6 : Integer.parseInt(marker.name.substring(1)) % 3 == 0 ? 5 : 7;
+            assertTrue(storage.removeMarker(marker, precision));
+        }
+        List<Marker> left = all.subList(3000, all.size());
+
+        for (int precision = 1; precision <= 5; precision++) {
+            List<MarkerCluster> clusters = storage.clusters(-17.5, -15.5, 179, 181, precision, 100000);
+            int total = 0;
+            for (MarkerCluster cluster : clusters) {
+                double sumX = 0;
+                double sumY = 0;
+                double sumZ = 0;
+                int count = 0;
+                for (Marker marker : left) {
+                    if (GeoHashConverter.encode(marker.lat, marker.lon, precision).equals(cluster.geohash)) {
+                        count++;
+                        sumX += Math.cos(Math.toRadians(marker.lat)) * Math.cos(Math.toRadians(marker.lon));
+                        sumY += Math.cos(Math.toRadians(marker.lat)) * Math.sin(Math.toRadians(marker.lon));
+                        sumZ += Math.sin(Math.toRadians(marker.lat));
+                    }
+                }
+                assertEquals(count, cluster.count);
+                assertTrue(left.contains(cluster.representative));
+                assertEquals(cluster.geohash, GeoHashConverter.encode(cluster.representative.lat,
+                        cluster.representative.lon, precision));
+                double[] centroid = {cluster.centroidLat, cluster.centroidLon};
+                double expectedLat = Math.toDegrees(Math.atan2(sumZ, Math.sqrt(sumX * sumX + sumY * sumY)));
+                double expectedLon = Math.toDegrees(Math.atan2(sumY, sumX));
+                assertEquals(0, GeoMath.distanceKm(centroid[0], centroid[1], expectedLat, expectedLon), 1e-6);
+                total += cluster.count;
+            }
+            assertEquals(left.size(), total);
+        }
+        assertEquals(4, GeohashStorage.precisionForZoom(8));
+        assertEquals(1, GeohashStorage.precisionForZoom(0));
+    }
+
+    @Test
+    public void queryCache_staysConsistentWithUncachedSearch() {
+        Random random = new Random(15);
+        GeohashStorage cached = new GeohashStorage();
+        GeohashStorage plain = new GeohashStorage();
+        cached.enableQueryCache(8, 100000);
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Marker marker = new Marker(55.7 + random.nextDouble() * 0.1, 37.5 + random.nextDouble() * 0.2, "m" + i);
+            all.add(marker);
+            cached.addMarker(marker, 7);
+            plain.addMarker(marker, 7);
+        }
+        double[][] spots = new double[12][];
+        for (int i = 0; i < spots.length; i++) {
+            spots[i] = new double[]{55.72 + random.nextDouble() * 0.06, 37.52 + random.nextDouble() * 0.16};
+        }
+        for (int step = 0; step < 3000; step++) {
+            int action = random.nextInt(10);
+            if (action == 0) {
+                Marker marker = new Marker(55.7 + random.nextDouble() * 0.1, 37.5 + random.nextDouble() * 0.2, "n" + step);
+                all.add(marker);
+                cached.addMarker(marker, 7);
+                plain.addMarker(marker, 7);
+            } else if (action == 1) {
+                Marker marker = all.remove(random.nextInt(all.size()));
+                assertTrue(cached.removeMarker(marker, 7));
+                assertTrue(plain.removeMarker(marker, 7));
+            } else {
+                // Пользователь водит карту туда-обратно: центры дрожат около нескольких мест
+                double[] spot = spots[random.nextInt(spots.length)];
+                double lat = spot[0] + random.nextGaussian() * 2e-5;
+                double lon = spot[1] + random.nextGaussian() * 2e-5;
+                double radius = random.nextBoolean() ? 0.5 : 1.5;
+                assertEquals(new HashSet<>(plain.searchInRadius(lat, lon, radius, 7)),
+                        new HashSet<>(cached.searchInRadius(lat, lon, radius, 7)));
+            }
+        }
+        GeohashQueryCache cache = cached.queryCache();
+        assertTrue(cache.hits() > 0);
+        assertTrue(cache.misses() > 0);
+        assertTrue(cache.evictions() > 0);
+        assertTrue(cache.invalidations() > 0);
+
+        // Метка далеко от закэшированных запросов не сбрасывает их
+        cached.searchInRadius(55.75, 37.6, 0.5, 7);
+        long invalidations = cache.invalidations();
+        cached.addMarker(new Marker(10, 10, "far"), 7);
+        assertEquals(invalidations, cache.invalidations());
+        long hits = cache.hits();
+        cached.searchInRadius(55.75, 37.6, 0.5, 7);
+        assertEquals(hits + 1, cache.hits());
+        cached.addMarker(new Marker(55.7501, 37.6001, "near"), 7);
+        assertTrue(cache.invalidations() > invalidations);
+    }
+
+    @Test
+    public void nearestFirst_pagesMatchFullDistanceOrder() {
+        Random random = new Random(16);
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            // Плотное облако, дубликаты на одинаковом расстоянии и редкие далекие метки
+            Marker marker = i % 10 == 0
+                    ? new Marker(-60 + random.nextDouble() * 120, -180 + random.nextDouble() * 360, "far" + i)
+                    : i % 10 == 1 ? new Marker(55.75, 37.62, "same" + (i % 3))
+                    : new Marker(55.7 + random.nextDouble() * 0.1, 37.55 + random.nextDouble() * 0.15, "m" + i);
+            all.add(marker);
+            storage.addMarker(marker, 7);
+        }
+        for (double radius : new double[]{2, 500, 30000}) {
+            List<Marker> expected = new ArrayList<>();
+            for (Marker marker : all) {
+                if (GeoMath.distanceKm(55.76, 37.6, marker.lat, marker.lon) <= radius) {
+                    expected.add(marker);
+                }
+            }
+            Collections.sort(expected, (a, b) -> Double.compare(
+                    GeoMath.distanceKm(55.76, 37.6, a.lat, a.lon), GeoMath.distanceKm(55.76, 37.6, b.lat, b.lon)));
+
+            List<Marker> paged = new ArrayList<>();
+            String token = null;
+            while (true) {
+                MarkerCursor cursor = storage.nearestFirst(55.76, 37.6, radius, 7, 97, token);
+                int page = 0;
+                while (cursor.hasNext()) {
+                    paged.add(cursor.next());
+                    page++;
+                }
+                token = cursor.resumeToken();
+                if (page < 97) {
+                    break;
+                }
+            }
+            assertEquals(expected.size(), paged.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(paged));
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(GeoMath.distanceKm(55.76, 37.6, expected.get(i).lat, expected.get(i).lon),
+                        GeoMath.distanceKm(55.76, 37.6, paged.get(i).lat, paged.get(i).lon), 0);
+            }
+        }
+        // Берется ровно столько, сколько запрошено
+        MarkerCursor cursor = storage.nearestFirst(55.76, 37.6, 30000, 7);
+        for (int i = 0; i < 5; i++) {
+            cursor.next();
+        }
+        assertTrue(cursor.lastDistanceKm() < 1);
+        // Без явного limit выдается одна страница, а не весь радиус
+        int count = 5;
+        while (cursor.hasNext()) {
+            cursor.next();
+            count++;
+        }
+        assertEquals(GeohashStorage.NEAREST_PAGE_SIZE, count);
+        try {
+            storage.nearestFirst(55.76, 37.6, 30000, 7, 0, null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // ожидаемо
+        }
+    }
+
+    @Test
+    public void metrics_countEveryPhaseOfRadiusSearch() {
+        Random random = new Random(19);
+        GeohashStorage storage = new GeohashStorage();
+        for (int i = 0; i < 5000; i++) {
+            storage.addMarker(new Marker(55.7 + random.nextDouble() * 0.1, 37.5 + random.nextDouble() * 0.2, "m"), 7);
+        }
+        assertNull(storage.metrics());
+        storage.enableMetrics();
+        long found = 0;
+        for (int q = 0; q < 200; q++) {
+            found += storage.searchInRadius(55.72 + random.nextDouble() * 0.06, 37.52 + random.nextDouble() * 0.16,
+                    q % 2 == 0 ? 0.3 : 2, 7).size();
+        }
+        QueryMetrics.Snapshot stats = storage.metrics().snapshot();
+        assertEquals(200, stats.queries);
+        assertEquals(found, stats.results);
+        assertTrue(stats.cellsHit > 0 && stats.cellsHit <= stats.cellsGenerated);
+        assertTrue(stats.candidatesScanned >= stats.results);
+        assertTrue(stats.exactChecks <= stats.candidatesScanned);
+        assertTrue(stats.falsePositiveRatio() > 0 && stats.falsePositiveRatio() < 1);
+        assertEquals(200, stats.totalNanos.count());
+        assertTrue(stats.totalNanos.percentile(0.5) <= stats.totalNanos.percentile(0.99));
+
+        storage.enableQueryCache(16, 100000);
+        storage.searchInRadius(55.75, 37.6, 1, 7);
+        storage.searchInRadius(55.75, 37.6, 1, 7);
+        assertEquals(2, storage.metrics().snapshot().cachedQueries);
+        // Снимок не меняется при дальнейших запросах
+        assertEquals(200, stats.totalNanos.count());
+        storage.disableMetrics();
+        assertNull(storage.metrics());
+    }
+
+    @Test
+    public void metricsHistogram_percentilesWithinBucketError() {
+        QueryMetrics.Histogram histogram = new QueryMetrics.Histogram();
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100000, histogram.max());
+        for (double q : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            long exact = (long) Math.ceil(q * 100000);
+            long estimate = histogram.percentile(q);
+            assertTrue(estimate >= exact && estimate <= exact * 1.25);
+        }
+    }
+
+    @Test
+    public void searchInRadiusParallel_matchesSequentialOrder() {
+        Random random = new Random(20);
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            all.add(new Marker(55.55 + random.nextDouble() * 0.4, 37.35 + random.nextDouble() * 0.5, "m" + i));
+        }
+        storage.addAll(all, 7);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Весь город (много кусков) и маленький круг (без распараллеливания)
+            for (double radius : new double[]{15, 0.3}) {
+                List<Marker> expected = storage.searchInRadius(55.75, 37.6, radius, 7);
+                assertEquals(expected, storage.searchInRadiusParallel(55.75, 37.6, radius, 7, pool));
+            }
+            assertTrue(storage.searchInRadiusParallel(10, 10, 1, 7, pool).isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void proximityJoin_findsEveryPairOnce() {
+        Random random = new Random(21);
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> all = new ArrayList<>();
+        // Москва, антимеридиан и высокие широты, где окрестность по долготе шире
+        double[][] areas = {{55.75, 37.6}, {-16.5, 179.99}, {78.2, 15.6}};
+        for (double[] area : areas) {
+            for (int i = 0; i < 1500; i++) {
+                double lon = area[1] + (random.nextDouble() - 0.5) * 0.06;
+                all.add(new Marker(area[0] + (random.nextDouble() - 0.5) * 0.03, lon > 180 ? lon - 360 : lon,
+                        "m" + all.size()));
+            }
+        }
+        for (Marker marker : all) {
+            storage.addMarker(marker, 8);
+        }
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < all.size(); i++) {
+            for (int j = i + 1; j < all.size(); j++) {
+                Marker a = all.get(i);
+                Marker b = all.get(j);
+                if (GeoMath.distanceKm(a.lat, a.lon, b.lat, b.lon) <= 0.2) {
+                    expected.add(pairKey(a, b));
+                }
+            }
+        }
+        assertTrue(expected.size() > 1000);
+
+        List<String> sequential = new ArrayList<>();
+        storage.proximityJoin(0.2, 8, (a, b) -> sequential.add(pairKey(a, b)));
+        assertEquals(expected.size(), sequential.size());
+        assertEquals(expected, new HashSet<>(sequential));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Set<String> parallel = Collections.synchronizedSet(new HashSet<>());
+            storage.proximityJoin(0.2, 8, pool, (a, b) -> assertTrue(parallel.add(pairKey(a, b))));
+            assertEquals(expected, parallel);
+
+            // Группы - компоненты связности графа пар
+            List<List<Marker>> clusters = storage.proximityClusters(0.2, 8, pool);
+            Map<String, Integer> clusterOf = new HashMap<>();
+            for (int c = 0; c < clusters.size(); c++) {
+                assertTrue(clusters.get(c).size() >= 2);
+                for (Marker marker : clusters.get(c)) {
+                    assertNull(clusterOf.put(marker.name, c));
+                }
+            }
+            Map<String, Integer> linked = new HashMap<>();
+            for (String pair : expected) {
+                String[] names = pair.split("\\|");
+                assertNotNull(clusterOf.get(names[0]));
+                assertEquals(clusterOf.get(names[0]), clusterOf.get(names[1]));
+                linked.put(names[0], 1);
+                linked.put(names[1], 1);
+            }
+            // В группах нет меток без пары
+            assertEquals(linked.keySet(), clusterOf.keySet());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void filteredSearch_matchesReferenceWithPredicate() {
+        Random random = new Random(23);
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> all = new ArrayList<>();
+        String[] statuses = {"public", MarkerFilter.PRIVATE_STATUS, null};
+        for (int i = 0; i < 6000; i++) {
+            Marker marker = new Marker("k" + i, 55.7 + random.nextDouble() * 0.1, 37.55 + random.nextDouble() * 0.1,
+                    "m" + i);
+            marker.userId = i % 11 == 0 ? null : "u" + random.nextInt(30);
+            marker.status = statuses[random.nextInt(statuses.length)];
+            all.add(marker);
+        }
+        storage.addAll(all.subList(0, 3000), 7);
+        for (Marker marker : all.subList(3000, all.size())) {
+            storage.addMarker(marker, 7);
+        }
+        for (int i = 0; i < 500; i++) {
+            assertTrue(storage.removeMarker(all.get(i * 7), 7));
+        }
+        MarkerFilter[] filters = {MarkerFilter.publicOnly(), MarkerFilter.ownedBy("u3"),
+                MarkerFilter.publicOrOwnedBy("u17"), MarkerFilter.ownedBy("nobody")};
+        for (MarkerFilter filter : filters) {
+            List<Marker> expected = new ArrayList<>();
+            for (Marker marker : storage.searchInRadius(55.75, 37.6, 2, 7)) {
+                if (filter.accepts(marker)) {
+                    expected.add(marker);
+                }
+            }
+            List<Marker> actual = storage.searchInRadius(55.75, 37.6, 2, 7, filter);
+            assertSameMarkers(expected, actual);
+        }
+        assertFalse(storage.searchInRadius(55.75, 37.6, 2, 7, MarkerFilter.publicOnly()).isEmpty());
+        assertTrue(storage.searchInRadius(55.75, 37.6, 2, 7, MarkerFilter.ownedBy("nobody")).isEmpty());
+    }
+
+    @Test
+    public void hotCell_filteredSearchMatchesPredicateWhileFilling() {
+        // Все метки в одной ячейке; запросы идут вперемешку с добавлением и удалением
+        Random random = new Random(29);
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> added = new ArrayList<>();
+        MarkerFilter[] filters = {MarkerFilter.publicOnly(), MarkerFilter.ownedBy("u2"),
+                MarkerFilter.publicOrOwnedBy("u5")};
+        for (int i = 0; i < 3000; i++) {
+            Marker marker = new Marker(55.75 + random.nextDouble() * 1e-3, 37.6 + random.nextDouble() * 1e-3, "m" + i);
+            marker.userId = "u" + random.nextInt(8);
+            marker.status = random.nextBoolean() ? MarkerFilter.PRIVATE_STATUS : null;
+            storage.addMarker(marker, 5);
+            added.add(marker);
+            if (i % 97 == 0) {
+                assertTrue(storage.removeMarker(added.remove(random.nextInt(added.size())), 5));
+            }
+            if (i % 37 == 0) {
+                MarkerFilter filter = filters[i % filters.length];
+                List<Marker> expected = new ArrayList<>();
+                for (Marker candidate : added) {
+                    if (filter.accepts(candidate)) {
+                        expected.add(candidate);
+                    }
+                }
+                assertSameMarkers(expected, storage.searchInRadius(55.75, 37.6, 5, 5, filter));
+            }
+        }
+        assertEquals(added, storage.searchInRadius(55.75, 37.6, 5, 5));
+    }
+
+    @Test
+    public void markersWithoutStatus_keepInsertionOrder() {
+        GeohashStorage storage = new GeohashStorage();
+        Marker a = new Marker(55.75, 37.6, "a");
+        Marker b = new Marker(55.75001, 37.60001, "b");
+        Marker hidden = new Marker(55.75002, 37.60002, "hidden");
+        hidden.status = MarkerFilter.PRIVATE_STATUS;
+        hidden.userId = "u";
+        Marker c = new Marker(55.75003, 37.60003, "c");
+        storage.addMarker(a, 7);
+        storage.addMarker(hidden, 7);
+        storage.addMarker(b, 7);
+        storage.addMarker(c, 7);
+        assertEquals(Arrays.asList(a, hidden, b, c), storage.searchInRadius(55.75, 37.6, 1, 7));
+        assertEquals(Arrays.asList(a, b, c), storage.searchInRadius(55.75, 37.6, 1, 7, MarkerFilter.publicOnly()));
+        assertEquals(Arrays.asList(hidden), storage.searchInRadius(55.75, 37.6, 1, 7, MarkerFilter.ownedBy("u")));
+    }
+
+    private static List<Marker> filter(List<Marker> all, GeoShape shape) {
+        List<Marker> result = new ArrayList<>();
+        for (Marker marker : all) {
+            if (shape.contains(marker.lat, marker.lon)) {
+                result.add(marker);
+            }
+        }
+        return result;
+    }
+
+    private static void assertSameMarkers(List<Marker> expected, List<Marker> actual) {
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        assertEquals(expected.size(), actual.size());
+    }
+
+    private static List<Marker> bruteForce(List<Marker> all, double lat, double lon, int k, double maxRadiusKm) {
+        List<Marker> sorted = new ArrayList<>();
+        for (Marker marker : all) {
+            if (GeoMath.distanceKm(lat, lon, marker.lat, marker.lon) <= maxRadiusKm) {
+                sorted.add(marker);
+            }
+        }
+        Collections.sort(sorted, (a, b) -> Double.compare(
+                GeoMath.distanceKm(lat, lon, a.lat, a.lon), GeoMath.distanceKm(lat, lon, b.lat, b.lon)));
+        return sorted.subList(0, Math.min(k, sorted.size()));
+    }
+
+    private static String pairKey(Marker a, Marker b) {
+        return a.name.compareTo(b.name) < 0 ? a.name + "|" + b.name : b.name + "|" + a.name;
+    }
+
+    private static double distance(double[] center, Marker marker) {
+        return GeoMath.distanceKm(center[0], center[1], marker.lat, marker.lon);
+    }
+}
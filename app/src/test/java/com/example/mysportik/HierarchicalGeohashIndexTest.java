@@ -0,0 +1,108 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HierarchicalGeohashIndexTest {
+
+    @Test
+    public void searchAndCount_workAtAnyPrecision() {
+        Random random = new Random(21);
+        HierarchicalGeohashIndex index = new HierarchicalGeohashIndex();
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            // Плотный кластер и разреженный фон
+            Marker marker = i % 4 == 0
+                    ? new Marker(40 + random.nextDouble() * 20, 20 + random.nextDouble() * 30, "bg" + i)
+                    : new Marker(55.75 + random.nextGaussian() * 0.02, 37.62 + random.nextGaussian() * 0.03, "c" + i);
+            all.add(marker);
+            // Добавляем с разной точностью: на поиск это не влияет
+            index.addMarker(marker, 3 + i % 6);
+        }
+        assertEquals(all.size(), index.size());
+
+        double[][] queries = {{55.75, 37.62, 1}, {55.76, 37.6, 5}, {50, 30, 150}};
+        for (double[] q : queries) {
+            int expected = 0;
+            for (Marker marker : all) {
+                if (GeoMath.distanceKm(q[0], q[1], marker.lat, marker.lon) <= q[2]) {
+                    expected++;
+                }
+            }
+            for (int precision : new int[]{4, 6, 7}) {
+                assertEquals(expected, index.searchInRadius(q[0], q[1], q[2], precision).size());
+            }
+            assertEquals(expected, index.searchInRadius(q[0], q[1], q[2]).size());
+            assertEquals(expected, index.countInRadius(q[0], q[1], q[2]));
+        }
+    }
+
+    @Test
+    public void countInRadius_nearPoleAndAntipodalMeridian_matchesBruteForce() {
+        // Ячейки у полюса и ячейки, через которые проходит меридиан напротив центра: все углы
+        // могут быть в круге, а середина края - нет
+        Random random = new Random(4);
+        HierarchicalGeohashIndex index = new HierarchicalGeohashIndex();
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            double lat = (i % 2 == 0 ? 1 : -1) * (60 + random.nextDouble() * 30);
+            Marker marker = new Marker(lat, -180 + random.nextDouble() * 360, "m" + i);
+            all.add(marker);
+            index.addMarker(marker, 7);
+        }
+        for (int q = 0; q < 300; q++) {
+            double lat = (q % 2 == 0 ? 1 : -1) * (70 + random.nextDouble() * 20);
+            double lon = -180 + random.nextDouble() * 360;
+            double radius = 200 + random.nextDouble() * 3000;
+            int expected = 0;
+            for (Marker marker : all) {
+                if (GeoMath.distanceKm(lat, lon, marker.lat, marker.lon) <= radius) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, index.countInRadius(lat, lon, radius));
+        }
+
+        // Ячейка "zx" (широта 84.375..90, долгота 157.5..168.75) при центре (80, -20): углы ближе
+        // 1737.04 км, а точка края на меридиане 160 (напротив центра) - дальше 1737.4 км
+        HierarchicalGeohashIndex polar = new HierarchicalGeohashIndex();
+        for (int i = 0; i < 100; i++) {
+            polar.addMarker(new Marker(89 + i * 0.001, 160 + i * 0.01, "in" + i), 7);
+        }
+        Marker edge = new Marker(84.3751, 160, "edge");
+        polar.addMarker(edge, 7);
+        assertTrue(GeoMath.distanceKm(80, -20, edge.lat, edge.lon) > 1737.2);
+        assertEquals(100, polar.countInRadius(80, -20, 1737.2));
+    }
+
+    @Test
+    public void count_usesNodeCountsForPrefixes() {
+        HierarchicalGeohashIndex index = new HierarchicalGeohashIndex();
+        for (int i = 0; i < 100; i++) {
+            index.addMarker(new Marker(55.7558 + i * 1e-6, 37.6173, "m" + i), 7);
+        }
+        index.addMarker(new Marker(-33.86, 151.2, "sydney"), 7);
+        String moscow = GeoHashConverter.encode(55.7558, 37.6173, 6);
+        assertEquals(100, index.count(moscow));
+        assertEquals(100, index.count(moscow.substring(0, 2)));
+        assertEquals(101, index.count(""));
+        assertEquals(1, index.count(GeoHashConverter.encode(-33.86, 151.2, 9)));
+        assertEquals(0, index.count("zzzz"));
+    }
+
+    @Test
+    public void chooseLevel_prefersCoarseCellsInSparseAreas() {
+        HierarchicalGeohashIndex index = new HierarchicalGeohashIndex();
+        Random random = new Random(4);
+        for (int i = 0; i < 50000; i++) {
+            index.addMarker(new Marker(55.75 + random.nextDouble() * 0.1, 37.6 + random.nextDouble() * 0.1, "m"), 7);
+        }
+        index.addMarker(new Marker(-33.86, 151.2, "sydney"), 7);
+        assertTrue(index.chooseLevel(-33.86, 151.2, 2) < index.chooseLevel(55.8, 37.65, 2));
+    }
+}
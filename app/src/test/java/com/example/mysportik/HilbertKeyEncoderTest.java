@@ -0,0 +1,93 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HilbertKeyEncoderTest {
+
+    private final HilbertKeyEncoder hilbert = HilbertKeyEncoder.INSTANCE;
+
+    @Test
+    public void indices_roundTripOnEveryPrecision() {
+        Random random = new Random(24);
+        for (int precision = 0; precision <= GeoHashConverter.MAX_PRECISION; precision++) {
+            int latCells = 1 << GeoHashConverter.latBits(precision);
+            int lonCells = 1 << GeoHashConverter.lonBits(precision);
+            for (int i = 0; i < 200; i++) {
+                int row = random.nextInt(latCells);
+                int col = random.nextInt(lonCells);
+                long key = hilbert.fromIndices(row, col, precision);
+                assertTrue(key >= 0 && key < (long) latCells * lonCells);
+                assertEquals(row, hilbert.latIndex(key, precision));
+                assertEquals(col, hilbert.lonIndex(key, precision));
+            }
+            // Та же ячейка, что у геохэша
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            long hash = GeoHashConverter.encodeToLong(lat, lon, precision);
+            long key = hilbert.encodeToLong(lat, lon, precision);
+            assertEquals(GeoHashConverter.latIndex(hash, precision), hilbert.latIndex(key, precision));
+            assertEquals(GeoHashConverter.lonIndex(hash, precision), hilbert.lonIndex(key, precision));
+        }
+    }
+
+    @Test
+    public void consecutiveKeys_areAdjacentCellsAndEvenPrecisionsArePrefixes() {
+        int precision = 4;
+        long cells = 1L << (5 * precision);
+        for (long key = 1; key < cells; key++) {
+            int dRow = Math.abs(hilbert.latIndex(key, precision) - hilbert.latIndex(key - 1, precision));
+            int dCol = Math.abs(hilbert.lonIndex(key, precision) - hilbert.lonIndex(key - 1, precision));
+            assertEquals(1, dRow + dCol);
+        }
+        Random random = new Random(25);
+        for (int i = 0; i < 1000; i++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            long full = hilbert.encodeToLong(lat, lon, GeoHashConverter.MAX_PRECISION);
+            for (int p = 0; p < GeoHashConverter.MAX_PRECISION; p += 2) {
+                assertEquals(hilbert.encodeToLong(lat, lon, p), full >>> (5 * (GeoHashConverter.MAX_PRECISION - p)));
+            }
+        }
+    }
+
+    @Test
+    public void hilbertSnapshot_matchesGeohashWithFewerRanges() {
+        Random random = new Random(26);
+        List<Marker> markers = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            markers.add(new Marker(55 + random.nextDouble(), 37 + random.nextDouble(), "m" + i));
+        }
+        GeohashSnapshot geohash = GeohashSnapshot.build(markers);
+        GeohashSnapshot curve = GeohashSnapshot.build(markers, hilbert);
+        long geohashRanges = 0;
+        long curveRanges = 0;
+        for (int q = 0; q < 200; q++) {
+            double lat = 55 + random.nextDouble();
+            double lon = 37 + random.nextDouble();
+            double radius = 0.5 + random.nextDouble() * 10;
+            int precision = 4 + q % 5;
+            assertEquals(new HashSet<>(geohash.searchInRadius(lat, lon, radius, precision)),
+                    new HashSet<>(curve.searchInRadius(lat, lon, radius, precision)));
+            geohashRanges += rangeCount(lat, lon, radius, precision, GeoHashConverter.INSTANCE);
+            curveRanges += rangeCount(lat, lon, radius, precision, hilbert);
+        }
+        assertTrue(curveRanges + " vs " + geohashRanges, curveRanges < geohashRanges);
+
+        GeohashSnapshot grown = curve.withAdded(markers.subList(0, 100));
+        assertSame(hilbert, grown.encoder());
+        assertEquals(markers.size() + 100, grown.size());
+    }
+
+    private static int rangeCount(double lat, double lon, double radius, int precision, SpatialKeyEncoder encoder) {
+        LongList ranges = new LongList();
+        GeohashCovering.coverKeyRanges(lat, lon, radius, precision, encoder, ranges);
+        return ranges.size() / 2;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LiveTrackingIndexTest {
+
+    private static final int PRECISION = 7;
+
+    @Test
+    public void moveAndRemove_matchBruteForceOverCurrentPositions() {
+        LiveTrackingIndex index = new LiveTrackingIndex(PRECISION);
+        Map<String, double[]> positions = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            String id = "p" + i;
+            double[] position = randomPosition(random);
+            index.put(new Marker(id, position[0], position[1], "runner " + i));
+            positions.put(id, position);
+        }
+        for (int step = 0; step < 20000; step++) {
+            String id = "p" + random.nextInt(2500);
+            int action = random.nextInt(10);
+            if (action == 0) {
+                assertEquals(positions.remove(id) != null, index.remove(id));
+            } else if (action < 5 && positions.containsKey(id)) {
+                // Небольшой шаг: чаще всего метка остается в своей ячейке
+                double[] position = positions.get(id);
+                position[0] += (random.nextDouble() - 0.5) * 1e-4;
+                position[1] += (random.nextDouble() - 0.5) * 1e-4;
+                assertTrue(index.move(id, position[0], position[1]));
+            } else {
+                double[] position = randomPosition(random);
+                boolean known = positions.containsKey(id);
+                assertEquals(known, index.move(id, position[0], position[1]));
+                if (known) {
+                    positions.put(id, position);
+                }
+            }
+        }
+        assertEquals(positions.size(), index.size());
+        assertFalse(index.move("missing", 0, 0));
+        assertNull(index.get("missing"));
+
+        for (int q = 0; q < 50; q++) {
+            double[] center = randomPosition(random);
+            double radiusKm = q % 2 == 0 ? 1 : 8;
+            Set<String> expected = new HashSet<>();
+            for (Map.Entry<String, double[]> entry : positions.entrySet()) {
+                double[] position = entry.getValue();
+                if (GeoMath.distanceKm(center[0], center[1], position[0], position[1]) <= radiusKm) {
+                    expected.add(entry.getKey());
+                }
+            }
+            Set<String> actual = new HashSet<>();
+            for (Marker marker : index.searchInRadius(center[0], center[1], radiusKm)) {
+                assertTrue(actual.add(marker.id));
+                double[] position = positions.get(marker.id);
+                assertEquals(position[0], marker.lat, 0);
+                assertEquals(position[1], marker.lon, 0);
+                assertEquals("runner " + marker.id.substring(1), marker.name);
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void move_keepsTimestampAuthorAndStatus() {
+        LiveTrackingIndex index = new LiveTrackingIndex(PRECISION);
+        Marker runner = new Marker("p", 55.75, 37.62, "runner");
+        runner.timestamp = 1_700_000_000_000L;
+        runner.userId = "u1";
+        runner.status = "public";
+        index.put(runner);
+        // Шаг внутри ячейки и переход далеко, в другую ячейку
+        for (double[] position : new double[][]{{55.750001, 37.620001}, {59.94, 30.31}}) {
+            assertTrue(index.move("p", position[0], position[1]));
+            Marker moved = index.get("p");
+            assertEquals(position[0], moved.lat, 0);
+            assertEquals("runner", moved.name);
+            assertEquals(1_700_000_000_000L, moved.timestamp);
+            assertEquals("u1", moved.userId);
+            assertEquals("public", moved.status);
+        }
+        assertEquals(55.75, runner.lat, 0);
+    }
+
+    @Test
+    public void concurrentSearches_seeEachParticipantOnceDuringMoves() throws Exception {
+        LiveTrackingIndex index = new LiveTrackingIndex(PRECISION);
+        int participants = 2000;
+        Random seed = new Random(1);
+        double[][] positions = new double[participants][];
+        for (int i = 0; i < participants; i++) {
+            positions[i] = randomPosition(seed);
+            index.put(new Marker("p" + i, positions[i][0], positions[i][1], "m"));
+        }
+        AtomicLong searches = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            Random random = new Random(2);
+            for (int step = 0; step < 20000; step++) {
+                // Шаг участника за доли секунды - несколько метров
+                int i = random.nextInt(participants);
+                positions[i][0] += (random.nextDouble() - 0.5) * 1e-4;
+                positions[i][1] += (random.nextDouble() - 0.5) * 1e-4;
+                index.move("p" + i, positions[i][0], positions[i][1]);
+            }
+            running.set(false);
+        }));
+        for (int t = 0; t < 2; t++) {
+            final int id = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(10 + id);
+                do {
+                    double[] center = randomPosition(random);
+                    Set<String> seen = new HashSet<>();
+                    for (Marker marker : index.searchInRadius(center[0], center[1], 1)) {
+                        if (!seen.add(marker.id)
+                                || GeoMath.distanceKm(center[0], center[1], marker.lat, marker.lon) > 1) {
+                            failure.set("Inconsistent result for " + marker.id);
+                        }
+                    }
+                    searches.incrementAndGet();
+                } while (running.get());
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals(participants, index.size());
+        assertTrue(searches.get() > 0);
+    }
+
+    private static double[] randomPosition(Random random) {
+        return new double[]{55.75 + (random.nextDouble() - 0.5) * 0.2, 37.62 + (random.nextDouble() - 0.5) * 0.3};
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MarkerBatchWriterTest {
+
+    private static final String[] STATUSES = {"open", "closed", null};
+
+    @Test
+    public void roundTrip_restoresAllFieldsInCellOrder() throws IOException {
+        Random random = new Random(22);
+        List<Marker> markers = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            Marker marker = new Marker(i % 7 == 0 ? null : "key" + i, random.nextDouble() * 180 - 90,
+                    random.nextDouble() * 360 - 180, i % 5 == 0 ? null : "Площадка " + random.nextInt(300));
+            marker.userId = "user" + random.nextInt(50);
+            marker.status = STATUSES[random.nextInt(STATUSES.length)];
+            marker.timestamp = 1_700_000_000_000L + random.nextInt(1_000_000) - 500_000;
+            markers.add(marker);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MarkerBatchWriter writer = new MarkerBatchWriter(bytes, 7, 1000)) {
+            for (Marker marker : markers) {
+                writer.write(marker);
+            }
+            assertEquals(markers.size(), writer.written());
+        }
+
+        List<Marker> read = new ArrayList<>();
+        long previousCell = -1;
+        try (MarkerBatchReader reader = new MarkerBatchReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(7, reader.precision());
+            int inBlock = 0;
+            Marker marker;
+            while ((marker = reader.read()) != null) {
+                // Внутри блока метки упорядочены по ячейке
+                if (inBlock++ % 1000 != 0) {
+                    assertTrue(reader.cell() >= previousCell);
+                }
+                previousCell = reader.cell();
+                read.add(marker);
+            }
+            assertNull(reader.read());
+        }
+        assertEquals(markers.size(), read.size());
+        List<Marker> expected = new ArrayList<>(markers);
+        expected.sort(MarkerBatchWriterTest::compareFields);
+        read.sort(MarkerBatchWriterTest::compareFields);
+        for (int i = 0; i < expected.size(); i++) {
+            Marker a = expected.get(i);
+            Marker b = read.get(i);
+            assertEquals(a.lat, b.lat, 1e-7);
+            assertEquals(a.lon, b.lon, 1e-7);
+            assertEquals(a.id, b.id);
+            assertEquals(a.name, b.name);
+            assertEquals(a.userId, b.userId);
+            assertEquals(a.status, b.status);
+            assertEquals(a.timestamp, b.timestamp);
+        }
+    }
+
+    @Test
+    public void storageExport_isSortedByCellAndImportsBack() throws IOException {
+        Random random = new Random(23);
+        GeohashStorage storage = new GeohashStorage();
+        for (int i = 0; i < 20000; i++) {
+            Marker marker = new Marker("k" + i, 55.5 + random.nextDouble() * 0.5, 37.3 + random.nextDouble() * 0.6, "m");
+            marker.userId = "u" + random.nextInt(20);
+            storage.addMarker(marker, 7);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MarkerBatchWriter writer = new MarkerBatchWriter(bytes, 7)) {
+            storage.writeTo(writer, 7);
+        }
+        // Около 9 байт занимают уникальные ключи, остальные поля - около 10 байт на метку
+        assertTrue(bytes.size() < 20000 * 20);
+
+        GeohashStorage imported = new GeohashStorage();
+        long previousCell = -1;
+        try (MarkerBatchReader reader = new MarkerBatchReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            List<Marker> block;
+            while ((block = reader.readBlock()) != null) {
+                imported.addAll(block, 7);
+                for (Marker marker : block) {
+                    long cell = GeoHashConverter.encodeToLong(marker.lat, marker.lon, 7);
+                    assertTrue(cell >= previousCell);
+                    previousCell = cell;
+                }
+            }
+        }
+        assertEquals(ids(storage.searchInRadius(55.75, 37.6, 5, 7)), ids(imported.searchInRadius(55.75, 37.6, 5, 7)));
+    }
+
+    @Test
+    public void truncatedOrForeignStream_isRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MarkerBatchWriter writer = new MarkerBatchWriter(bytes, 7)) {
+            writer.write(new Marker(55.75, 37.6, "a"));
+        }
+        byte[] data = bytes.toByteArray();
+        try (MarkerBatchReader reader = new MarkerBatchReader(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 2)))) {
+            reader.read();
+            fail();
+        } catch (EOFException expected) {
+            // ожидаемо
+        }
+        try {
+            new MarkerBatchReader(new ByteArrayInputStream("{\"latitude\":1}".getBytes("UTF-8")));
+            fail();
+        } catch (IOException expected) {
+            // ожидаемо
+        }
+    }
+
+    @Test
+    public void negativeVarints_areRejectedAsCorrupt() throws IOException {
+        // Десятибайтовый varint декодируется в отрицательный long
+        long[][] tails = {
+                {-1},        // размер словаря
+                {1, -1},     // длина строки
+                {0, -1},     // номер строки
+        };
+        for (long[] tail : tails) {
+            ByteArrayOutputStream bytes = header(7);
+            // Блок из одной метки: одна серия в ячейке 0, нулевые смещения и время
+            for (long value : new long[]{1, 1, 0, 1, 0, 0, 0}) {
+                varint(bytes, value);
+            }
+            for (long value : tail) {
+                varint(bytes, value);
+            }
+            try (MarkerBatchReader reader = new MarkerBatchReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+                reader.read();
+                fail("accepted " + Arrays.toString(tail));
+            } catch (EOFException e) {
+                fail("read past " + Arrays.toString(tail));
+            } catch (IOException expected) {
+                // ожидаемо
+            }
+        }
+        ByteArrayOutputStream bytes = header(-3);
+        try {
+            new MarkerBatchReader(new ByteArrayInputStream(bytes.toByteArray()));
+            fail();
+        } catch (IOException expected) {
+            // ожидаемо
+        }
+    }
+
+    @Test
+    public void writer_rejectsStringsTheReaderWouldReject() throws IOException {
+        char[] note = new char[MarkerBatchWriter.MAX_STRING_BYTES / 2 + 1];
+        Arrays.fill(note, 'ж');
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MarkerBatchWriter writer = new MarkerBatchWriter(bytes, 7)) {
+            writer.write(new Marker(55.75, 37.6, "a"));
+            try {
+                writer.write(new Marker(55.75, 37.6, new String(note)));
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // ожидаемо
+            }
+        }
+        try (MarkerBatchReader reader = new MarkerBatchReader(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals("a", reader.read().name);
+            assertNull(reader.read());
+        }
+    }
+
+    private static ByteArrayOutputStream header(long precision) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            bytes.write(MarkerBatchWriter.MAGIC >>> shift);
+        }
+        varint(bytes, MarkerBatchWriter.VERSION);
+        varint(bytes, precision);
+        return bytes;
+    }
+
+    private static void varint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int compareFields(Marker a, Marker b) {
+        int c = Long.compare(a.timestamp, b.timestamp);
+        if (c == 0) {
+            c = Double.compare(a.lat, b.lat);
+        }
+        return c;
+    }
+
+    private static Set<String> ids(List<Marker> markers) {
+        Set<String> ids = new HashSet<>();
+        for (Marker marker : markers) {
+            ids.add(marker.id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.mysportik;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MarkerIndexFileTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("markers", ".idx");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void mappedSearch_matchesBruteForce() throws IOException {
+        Random random = new Random(8);
+        List<Marker> markers = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            // Повторяющиеся названия проверяют пул строк, null - отсутствующее название
+            String name = i % 7 == 0 ? null : "Точка " + (i % 500) + "#" + i;
+            markers.add(new Marker(55 + random.nextDouble(), 37 + random.nextDouble(), name));
+        }
+        MarkerIndexFile.write(file, markers);
+        MappedMarkerIndex index = MappedMarkerIndex.open(file);
+        assertEquals(markers.size(), index.size());
+        assertTrue(index.verifyChecksum());
+
+        for (int q = 0; q < 30; q++) {
+            double lat = 55 + random.nextDouble();
+            double lon = 37 + random.nextDouble();
+            double radius = 0.5 + random.nextDouble() * 8;
+            List<String> expected = new ArrayList<>();
+            for (Marker marker : markers) {
+                // В файле координаты хранятся с шагом 1e-7 градуса, сравниваем с округленными
+                double storedLat = Math.round(marker.lat * 1e7) / 1e7;
+                double storedLon = Math.round(marker.lon * 1e7) / 1e7;
+                if (GeoMath.distanceKm(lat, lon, storedLat, storedLon) <= radius) {
+                    expected.add(marker.name + "@" + Math.round(marker.lat * 1e7) + "," + Math.round(marker.lon * 1e7));
+                }
+            }
+            List<String> actual = new ArrayList<>();
+            for (Marker marker : index.searchInRadius(lat, lon, radius, 7)) {
+                actual.add(marker.name + "@" + Math.round(marker.lat * 1e7) + "," + Math.round(marker.lon * 1e7));
+            }
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void search_returnsAllStoredFields() throws IOException {
+        Marker full = new Marker("key-1", 55.75581234567, 37.61731234567, "Кремль");
+        full.userId = "u1";
+        full.status = MarkerFilter.PRIVATE_STATUS;
+        full.timestamp = 1_700_000_000_000L;
+        MarkerIndexFile.write(file, Arrays.asList(full, new Marker(55.9, 37.9, null)));
+        List<Marker> found = MappedMarkerIndex.open(file).searchInRadius(55.7558, 37.6173, 1, 7);
+        assertEquals(1, found.size());
+        Marker marker = found.get(0);
+        assertEquals("key-1", marker.id);
+        assertEquals("Кремль", marker.name);
+        assertEquals("u1", marker.userId);
+        assertEquals(MarkerFilter.PRIVATE_STATUS, marker.status);
+        assertEquals(1_700_000_000_000L, marker.timestamp);
+        assertEquals(557558123, Math.round(marker.lat * 1e7));
+    }
+
+    @Test
+    public void corruptedBody_failsChecksum() throws IOException {
+        MarkerIndexFile.write(file, Collections.singletonList(new Marker(55.75, 37.62, "Кремль")));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 1);
+        }
+        assertFalse(MappedMarkerIndex.open(file).verifyChecksum());
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedHeader_rejectedOnOpen() throws IOException {
+        MarkerIndexFile.write(file, Collections.singletonList(new Marker(55.75, 37.62, "Кремль")));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(12);
+            raf.writeInt(2);
+        }
+        MappedMarkerIndex.open(file);
+    }
+
+    @Test
+    public void openOrRebuild_replacesTruncatedFile() throws IOException {
+        MarkerIndexFile.write(file, Collections.singletonList(new Marker(55.75, 37.62, "Кремль")));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        MappedMarkerIndex index = MappedMarkerIndex.openOrRebuild(file,
+                () -> Collections.singletonList(new Marker(59.94, 30.31, "Эрмитаж")));
+        assertEquals(1, index.size());
+        assertEquals("Эрмитаж", index.searchInRadius(59.94, 30.31, 1, 7).get(0).name);
+    }
+
+    @Test
+    public void openOrRebuild_checksBodyOnlyWhenAsked() throws IOException {
+        List<Marker> markers = tenMarkers();
+        MarkerIndexFile.write(file, markers);
+        flipByte(-1);
+        // Обычное открытие читает только заголовок и оставляет файл как есть
+        MappedMarkerIndex index = MappedMarkerIndex.openOrRebuild(file,
+                () -> Collections.singletonList(new Marker(59.94, 30.31, "Эрмитаж")));
+        assertEquals(markers.size(), index.size());
+        assertFalse(index.verifyChecksum());
+
+        index = MappedMarkerIndex.openOrRebuild(file,
+                () -> Collections.singletonList(new Marker(59.94, 30.31, "Эрмитаж")), true);
+        assertEquals(1, index.size());
+        assertTrue(index.verifyChecksum());
+    }
+
+    @Test
+    public void corruptedDirectoryAndNames_failSearchInsteadOfReadingOutOfBounds() throws IOException {
+        // Номер первой метки второй ячейки и длина первого названия
+        long[] offsets = {MarkerIndexFile.HEADER_BYTES + MarkerIndexFile.DIRECTORY_ENTRY_BYTES + 8,
+                MarkerIndexFile.HEADER_BYTES + 10L * MarkerIndexFile.DIRECTORY_ENTRY_BYTES
+                        + 10L * MarkerIndexFile.COORDINATE_BYTES + 4};
+        for (long offset : offsets) {
+            MarkerIndexFile.write(file, tenMarkers());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(offset);
+                raf.writeInt(1 << 20);
+            }
+            MappedMarkerIndex index = MappedMarkerIndex.open(file);
+            assertFalse(index.verifyChecksum());
+            try {
+                index.searchInRadius(55.75, 37.6, 50, 7);
+                fail("corruption at " + offset + " not detected");
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+
+    private static List<Marker> tenMarkers() {
+        List<Marker> markers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            markers.add(new Marker(55.7 + i * 0.01, 37.6, "m" + i));
+        }
+        return markers;
+    }
+
+    private void flipByte(long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long position = offset < 0 ? raf.length() + offset : offset;
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0x40);
+        }
+    }
+}
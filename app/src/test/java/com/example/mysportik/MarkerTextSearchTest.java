@@ -0,0 +1,98 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MarkerTextSearchTest {
+
+    @Test
+    public void search_matchesBruteForceOnBothSides() {
+        Random random = new Random(25);
+        String[] words = {"Фонтан", "питьевой", "WATER", "fountain", "Ёлка", "турник", "площадка", "brusya"};
+        GeohashStorage storage = new GeohashStorage();
+        List<Marker> all = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            String name = words[random.nextInt(words.length)] + ", " + words[random.nextInt(words.length)]
+                    + (i % 500 == 0 ? " редкий-" + i : "");
+            all.add(new Marker(55.6 + random.nextDouble() * 0.3, 37.4 + random.nextDouble() * 0.4, name));
+        }
+        storage.addAll(all.subList(0, 2000), 7);
+        MarkerTextSearch search = new MarkerTextSearch(storage);
+        for (Marker marker : all.subList(2000, all.size())) {
+            storage.addMarker(marker, 7);
+        }
+        for (int i = 0; i < 300; i++) {
+            assertTrue(storage.removeMarker(all.get(i * 13), 7));
+        }
+        List<Marker> present = new ArrayList<>(all);
+        for (int i = 299; i >= 0; i--) {
+            present.remove(i * 13);
+        }
+        // Частое слово по области, редкое - по своему списку; регистр, "ё" и префиксы
+        String[] queries = {"water fountain", "фонт", "ЕЛКА питьев", "редкий", "РЕДКИЙ 1500", "нет такого", " - "};
+        for (String query : queries) {
+            List<String> tokens = MarkerTextIndex.tokenize(query);
+            for (double radius : new double[]{0.5, 3, 30}) {
+                List<Marker> expected = new ArrayList<>();
+                for (Marker marker : present) {
+                    if (GeoMath.distanceKm(55.75, 37.6, marker.lat, marker.lon) <= radius
+                            && MarkerTextIndex.matches(marker, tokens)) {
+                        expected.add(marker);
+                    }
+                }
+                assertSameMarkers(expected, search.search(55.75, 37.6, radius, 7, query));
+            }
+        }
+        assertFalse(search.search(55.75, 37.6, 30, 7, "ёлк").isEmpty());
+        assertTrue(search.estimatedMemoryBytes() > 0);
+        assertEquals(Arrays.asList("фонтан", "water", "елка"), MarkerTextIndex.tokenize("Фонтан/water, ЁЛКА фонтан"));
+    }
+
+    @Test
+    public void driverWord_isCountedOnlyAtTheSearchedPrecision() {
+        GeohashStorage storage = new GeohashStorage();
+        MarkerTextIndex index = new MarkerTextIndex();
+        storage.setChangeListener(new GeohashStorage.ChangeListener() {
+            @Override
+            public void onMarkerAdded(String geohash, Marker marker) {
+                index.add(geohash, marker);
+            }
+
+            @Override
+            public void onMarkerRemoved(String geohash, Marker marker) {
+                index.remove(geohash, marker);
+            }
+        });
+        for (int i = 0; i < 50; i++) {
+            storage.addMarker(new Marker(55.75 + i * 1e-4, 37.6, "турник"), 5);
+        }
+        storage.addMarker(new Marker(55.75, 37.6, "турник"), 7);
+        // Метки точности 5 не попадут в collect точности 7 и не должны делать слово "частым"
+        assertEquals(1, index.postingCount("тур", 7, 10));
+        assertTrue(index.postingCount("тур", 5, 10) > 10);
+    }
+
+    @Test
+    public void detach_stopsUpdatingTheIndex() {
+        GeohashStorage storage = new GeohashStorage();
+        storage.addMarker(new Marker(55.75, 37.6, "фонтан"), 7);
+        MarkerTextSearch search = new MarkerTextSearch(storage);
+        storage.addMarker(new Marker(55.7501, 37.6001, "фонтан"), 7);
+        assertEquals(2, search.search(55.75, 37.6, 1, 7, "фонтан").size());
+        search.detach();
+        storage.addMarker(new Marker(55.7502, 37.6002, "фонтан"), 7);
+        assertEquals(2, search.search(55.75, 37.6, 1, 7, "фонтан").size());
+    }
+
+    private static void assertSameMarkers(List<Marker> expected, List<Marker> actual) {
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+        assertEquals(expected.size(), actual.size());
+    }
+}
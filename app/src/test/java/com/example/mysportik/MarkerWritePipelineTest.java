@@ -0,0 +1,200 @@
+package com.example.mysportik;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class MarkerWritePipelineTest {
+
+    // Локальная замена удаленного хранилища: может отказывать первые failuresLeft записей
+    // или не отвечать вовсе
+    private static class FakeSink implements MarksSink {
+        final Map<String, PendingMark> stored = new LinkedHashMap<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        int failuresLeft;
+        boolean silent;
+        int nextKey;
+
+        @Override
+        public synchronized String newKey() {
+            return "k" + (nextKey++);
+        }
+
+        @Override
+        public synchronized void write(List<PendingMark> batch, Callback callback) {
+            batchSizes.add(batch.size());
+            if (silent) {
+                return;
+            }
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                callback.onFailure(new IOException("offline"));
+                return;
+            }
+            for (PendingMark mark : batch) {
+                stored.put(mark.key, mark);
+            }
+            callback.onSuccess();
+        }
+    }
+
+    private File file;
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("marks", ".journal");
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void marks_areCoalescedIntoBatchesBySizeAndTime() throws Exception {
+        FakeSink sink = new FakeSink();
+        MarkerWritePipeline pipeline = new MarkerWritePipeline(new MarkJournal(file), sink, scheduler, 100, 50, 10, 100);
+        for (int i = 0; i < 250; i++) {
+            pipeline.enqueue(55 + i * 1e-4, 37, "public", "user", "point " + i);
+        }
+        waitFor(() -> pipeline.ackedCount() == 250);
+        assertEquals(0, pipeline.pendingCount());
+        assertEquals(250, sink.stored.size());
+        assertTrue(sink.batchSizes.size() <= 5);
+        for (int size : sink.batchSizes) {
+            assertTrue(size <= 100);
+        }
+        // Порядок меток сохраняется
+        int i = 0;
+        for (PendingMark mark : sink.stored.values()) {
+            assertEquals("point " + i++, mark.note);
+        }
+        pipeline.close();
+        assertEquals(0, new MarkJournal(file).pendingCount());
+    }
+
+    @Test
+    public void failedBatch_isRetriedWithSameKeys() throws Exception {
+        FakeSink sink = new FakeSink();
+        sink.failuresLeft = 3;
+        MarkerWritePipeline pipeline = new MarkerWritePipeline(new MarkJournal(file), sink, scheduler, 10, 5, 5, 20);
+        for (int i = 0; i < 7; i++) {
+            pipeline.enqueue(55, 37, "private", "user", "n" + i);
+        }
+        waitFor(() -> pipeline.ackedCount() == 7);
+        assertEquals(7, sink.stored.size());
+        assertTrue(sink.batchSizes.size() >= 4);
+        pipeline.close();
+    }
+
+    @Test
+    public void unsentMarks_surviveRestart() throws Exception {
+        FakeSink offline = new FakeSink();
+        offline.silent = true;
+        MarkerWritePipeline pipeline = new MarkerWritePipeline(new MarkJournal(file), offline, scheduler, 100, 5, 5, 20);
+        List<String> keys = new ArrayList<>();
+        List<Long> timestamps = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            PendingMark mark = pipeline.enqueue(55, 37, "public", "user", "n" + i);
+            keys.add(mark.key);
+            timestamps.add(mark.timestamp);
+        }
+        assertEquals(5, pipeline.pendingCount());
+        pipeline.close();
+
+        // Оборванная последняя запись (сбой во время записи) отбрасывается при открытии
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2});
+        }
+        FakeSink online = new FakeSink();
+        MarkJournal journal = new MarkJournal(file);
+        assertEquals(5, journal.pendingCount());
+        MarkerWritePipeline restarted = new MarkerWritePipeline(journal, online, scheduler, 100, 5, 5, 20);
+        waitFor(() -> restarted.ackedCount() == 5);
+        assertEquals(keys, new ArrayList<>(online.stored.keySet()));
+        // Повторная отправка несет время создания, а не время загрузки
+        List<Long> resent = new ArrayList<>();
+        for (PendingMark mark : online.stored.values()) {
+            resent.add(mark.timestamp);
+        }
+        assertEquals(timestamps, resent);
+        restarted.close();
+        assertEquals(0, new MarkJournal(file).pendingCount());
+    }
+
+    @Test
+    public void lateSinkCallbacks_afterSchedulerShutdown_doNotThrow() throws Exception {
+        List<MarksSink.Callback> callbacks = new ArrayList<>();
+        FakeSink sink = new FakeSink() {
+            @Override
+            public synchronized void write(List<PendingMark> batch, Callback callback) {
+                callbacks.add(callback);
+            }
+        };
+        MarkerWritePipeline pipeline = new MarkerWritePipeline(new MarkJournal(file), sink, scheduler, 100, 5, 5, 20);
+        pipeline.enqueue(55, 37, "public", "user", "n");
+        waitFor(() -> {
+            synchronized (sink) {
+                return !callbacks.isEmpty();
+            }
+        });
+        scheduler.shutdown();
+        // Ответы хранилища, пришедшие после остановки, не бросают в вызывающий поток
+        callbacks.get(0).onFailure(new IOException("offline"));
+        callbacks.get(0).onSuccess();
+        assertEquals(1, pipeline.pendingCount());
+        pipeline.close();
+        assertEquals(1, new MarkJournal(file).pendingCount());
+    }
+
+    @Test
+    public void journal_compactsAcknowledgedRecords() throws IOException {
+        MarkJournal journal = new MarkJournal(file);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < MarkJournal.COMPACT_THRESHOLD; i++) {
+            PendingMark mark = new PendingMark("k" + i, 55, 37, null, "user", null, 1_700_000_000_000L + i);
+            journal.append(Collections.singletonList(mark));
+            keys.add(mark.key);
+        }
+        journal.append(Collections.singletonList(new PendingMark("last", 1, 2, "public", null, "note", 1_700_000_123_456L)));
+        long before = file.length();
+        journal.acknowledge(keys);
+        assertTrue(file.length() < before / 100);
+        journal.close();
+
+        List<PendingMark> pending = new MarkJournal(file).pending();
+        assertEquals(1, pending.size());
+        assertEquals("last", pending.get(0).key);
+        assertNull(pending.get(0).userId);
+        assertEquals("note", pending.get(0).note);
+        assertEquals(1_700_000_123_456L, pending.get(0).timestamp);
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.holds()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.mysportik;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeWindowedGeohashIndexTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    @Test
+    public void searchInRadius_matchesBruteForceWithinWindow() {
+        // Окно - 2 часа корзинами по 5 минут
+        TimeWindowedGeohashIndex index = new TimeWindowedGeohashIndex(6, 5 * MINUTE, 24);
+        List<Marker> all = new ArrayList<>();
+        Random random = new Random(9);
+        long now = 1_700_000_000_000L;
+        for (int i = 0; i < 5000; i++) {
+            Marker marker = new Marker(55.75 + (random.nextDouble() - 0.5) * 0.3,
+                    37.62 + (random.nextDouble() - 0.5) * 0.4, "m" + i);
+            // Время идет вперед с небольшим разбросом порядка прихода
+            marker.timestamp = now - 3 * HOUR + i * (3 * HOUR / 5000) + random.nextInt(60_000);
+            if (index.addMarker(marker)) {
+                all.add(marker);
+            }
+        }
+        long newest = all.get(all.size() - 1).timestamp;
+        index.expire(newest);
+        long windowStart = (Math.floorDiv(newest, 5 * MINUTE) - 23) * 5 * MINUTE;
+        List<Marker> live = new ArrayList<>();
+        for (Marker marker : all) {
+            if (marker.timestamp >= windowStart) {
+                live.add(marker);
+            }
+        }
+        assertEquals(live.size(), index.size());
+
+        for (int q = 0; q < 40; q++) {
+            double lat = 55.75 + (random.nextDouble() - 0.5) * 0.3;
+            double lon = 37.62 + (random.nextDouble() - 0.5) * 0.4;
+            double radiusKm = q % 2 == 0 ? 2 : 10;
+            long from = newest - (q % 4 + 1) * 37 * MINUTE;
+            long to = from + (q % 3 + 1) * 23 * MINUTE;
+            Set<Marker> expected = new HashSet<>();
+            for (Marker marker : live) {
+                if (marker.timestamp >= from && marker.timestamp <= to
+                        && GeoMath.distanceKm(lat, lon, marker.lat, marker.lon) <= radiusKm) {
+                    expected.add(marker);
+                }
+            }
+            List<Marker> actual = index.searchInRadius(lat, lon, radiusKm, from, to);
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected, new HashSet<>(actual));
+        }
+    }
+
+    @Test
+    public void expire_dropsWholeBucketsAndRejectsStaleMarkers() {
+        TimeWindowedGeohashIndex index = new TimeWindowedGeohashIndex(7, MINUTE, 60);
+        long start = 10 * HOUR;
+        for (int i = 0; i < 120; i++) {
+            Marker marker = new Marker(55.75, 37.62, "m" + i);
+            marker.timestamp = start + i * MINUTE;
+            assertTrue(index.addMarker(marker));
+        }
+        // Последние 60 минут: метки 60..119
+        assertEquals(60, index.size());
+        assertEquals(60, index.searchInRadius(55.75, 37.62, 1, 0, Long.MAX_VALUE).size());
+
+        Marker stale = new Marker(55.75, 37.62, "stale");
+        stale.timestamp = start;
+        assertFalse(index.addMarker(stale));
+
+        index.expire(start + 150 * MINUTE);
+        assertEquals(29, index.size());
+        index.expire(start + 5 * HOUR);
+        assertEquals(0, index.size());
+        assertTrue(index.searchInRadius(55.75, 37.62, 1, 0, Long.MAX_VALUE).isEmpty());
+    }
+}
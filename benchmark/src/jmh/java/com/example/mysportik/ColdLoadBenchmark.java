@@ -0,0 +1,51 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Холодная загрузка всех меток при старте: построение неизменяемого снимка одной сортировкой
+// против поштучного addMarker в GeohashStorage
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ColdLoadBenchmark {
+
+    private static final int PRECISION = 7;
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public SyntheticMarkers.Distribution distribution;
+
+    private List<Marker> markers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        markers = SyntheticMarkers.generate(distribution, size, 1);
+    }
+
+    @Benchmark
+    public GeohashSnapshot snapshotBuild() {
+        return GeohashSnapshot.build(markers);
+    }
+
+    @Benchmark
+    public GeohashStorage addMarkerOneByOne() {
+        GeohashStorage storage = new GeohashStorage();
+        for (Marker marker : markers) {
+            storage.addMarker(marker, PRECISION);
+        }
+        return storage;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Колоночное хранилище против GeohashStorage: время поиска и оценка занимаемой памяти
+// (выводится один раз при подготовке набора)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColumnarStorageBenchmark {
+
+    private static final int QUERIES = 256;
+    private static final int PRECISION = 7;
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"DOUBLE", "FLOAT", "FIXED_POINT"})
+    public ColumnarGeohashStorage.CoordinateFormat format;
+
+    @Param({"1", "10"})
+    public double radiusKm;
+
+    private GeohashStorage map;
+    private ColumnarGeohashStorage columnar;
+    private final double[] queryLats = new double[QUERIES];
+    private final double[] queryLons = new double[QUERIES];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Marker> markers = SyntheticMarkers.generate(SyntheticMarkers.Distribution.UNIFORM, size, 5);
+        map = new GeohashStorage();
+        columnar = new ColumnarGeohashStorage(format);
+        for (Marker marker : markers) {
+            map.addMarker(marker, PRECISION);
+            columnar.addMarker(marker, PRECISION);
+        }
+        columnar.trimToSize();
+        System.out.printf("%n%d markers: map %d B, columnar %s %d B%n", size,
+                map.estimatedMemoryBytes(), format, columnar.estimatedMemoryBytes());
+        Random random = new Random(3);
+        for (int q = 0; q < QUERIES; q++) {
+            Marker center = markers.get(random.nextInt(size));
+            queryLats[q] = center.lat;
+            queryLons[q] = center.lon;
+        }
+    }
+
+    @Benchmark
+    public List<Marker> geohashStorage() {
+        int q = next++ & (QUERIES - 1);
+        return map.searchInRadius(queryLats[q], queryLons[q], radiusKm, PRECISION);
+    }
+
+    @Benchmark
+    public List<Marker> columnarStorage() {
+        int q = next++ & (QUERIES - 1);
+        return columnar.searchInRadius(queryLats[q], queryLons[q], radiusKm, PRECISION);
+    }
+}
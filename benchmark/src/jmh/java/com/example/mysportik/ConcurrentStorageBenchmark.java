@@ -0,0 +1,74 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Смешанная нагрузка на ConcurrentGeohashStorage: четыре поиска на одну запись, как у карты
+// с живыми метками. Масштабирование по потокам проверяется через -tg с тем же соотношением:
+// 1,3 (4 потока) и 2,6 (8 потоков); однопоточная база - отдельные запуски write и search с -t 1.
+// Ускорение видно только на машине, где ядер не меньше, чем потоков
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConcurrentStorageBenchmark {
+
+    private static final int PRECISION = 6;
+    private static final int QUERIES = 256;
+
+    @Param({"50000"})
+    public int size;
+
+    private ConcurrentGeohashStorage storage;
+    private List<Marker> incoming;
+    private final double[] queryLats = new double[QUERIES];
+    private final double[] queryLons = new double[QUERIES];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        final Random random = new Random(Thread.currentThread().getId());
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = new ConcurrentGeohashStorage();
+        for (Marker marker : SyntheticMarkers.generate(SyntheticMarkers.Distribution.CLUSTERED, size, 1)) {
+            storage.addMarker(marker, PRECISION);
+        }
+        incoming = SyntheticMarkers.generate(SyntheticMarkers.Distribution.CLUSTERED, size, 2);
+        Random random = new Random(3);
+        for (int q = 0; q < QUERIES; q++) {
+            Marker center = incoming.get(random.nextInt(size));
+            queryLats[q] = center.lat;
+            queryLons[q] = center.lon;
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void write(Cursor cursor) {
+        storage.addMarker(incoming.get(cursor.random.nextInt(size)), PRECISION);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public List<Marker> search(Cursor cursor) {
+        int q = cursor.next++ & (QUERIES - 1);
+        return storage.searchInRadius(queryLats[q], queryLons[q], 1, PRECISION);
+    }
+}
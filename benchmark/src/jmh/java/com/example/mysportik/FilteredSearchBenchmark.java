@@ -0,0 +1,73 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Поиск с условием на видимость и владельца против поиска всех меток с фильтрацией результата.
+// privateShare - доля личных меток; чем избирательнее условие, тем меньше меток просматривается
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FilteredSearchBenchmark {
+
+    private static final int SIZE = 200000;
+    private static final int PRECISION = 7;
+    private static final int USERS = 1000;
+    private static final double RADIUS_KM = 5;
+
+    @Param({"0.5", "0.9"})
+    public double privateShare;
+
+    private GeohashStorage storage;
+    private double centerLat;
+    private double centerLon;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Marker> markers = SyntheticMarkers.generate(SyntheticMarkers.Distribution.CLUSTERED, SIZE, 7);
+        Random random = new Random(23);
+        for (Marker marker : markers) {
+            marker.userId = "user" + random.nextInt(USERS);
+            marker.status = random.nextDouble() < privateShare ? MarkerFilter.PRIVATE_STATUS : "public";
+        }
+        storage = new GeohashStorage();
+        storage.addAll(markers, PRECISION);
+        centerLat = markers.get(0).lat;
+        centerLon = markers.get(0).lon;
+    }
+
+    @Benchmark
+    public List<Marker> publicOnly() {
+        return storage.searchInRadius(centerLat, centerLon, RADIUS_KM, PRECISION, MarkerFilter.publicOnly());
+    }
+
+    @Benchmark
+    public List<Marker> ownedBy() {
+        return storage.searchInRadius(centerLat, centerLon, RADIUS_KM, PRECISION, MarkerFilter.ownedBy("user7"));
+    }
+
+    // Точка отсчета: все метки в радиусе, затем проверка условия по каждой
+    @Benchmark
+    public List<Marker> publicOnlyPostFilter() {
+        MarkerFilter filter = MarkerFilter.publicOnly();
+        List<Marker> result = new ArrayList<>();
+        for (Marker marker : storage.searchInRadius(centerLat, centerLon, RADIUS_KM, PRECISION)) {
+            if (filter.accepts(marker)) {
+                result.add(marker);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Пропускная способность кодирования и декодирования геохэша на каждой точности
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeoHashCodecBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12"})
+    public int precision;
+
+    private final double[] lats = new double[POINTS];
+    private final double[] lons = new double[POINTS];
+    private final String[] hashes = new String[POINTS];
+    private final long[] longHashes = new long[POINTS];
+    private final double[] out = new double[4];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < POINTS; i++) {
+            lats[i] = random.nextDouble() * 180 - 90;
+            lons[i] = random.nextDouble() * 360 - 180;
+            hashes[i] = GeoHashConverter.encode(lats[i], lons[i], precision);
+            longHashes[i] = GeoHashConverter.encodeToLong(lats[i], lons[i], precision);
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (POINTS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public String encode() {
+        int i = nextIndex();
+        return GeoHashConverter.encode(lats[i], lons[i], precision);
+    }
+
+    @Benchmark
+    public long encodeToLong() {
+        int i = nextIndex();
+        return GeoHashConverter.encodeToLong(lats[i], lons[i], precision);
+    }
+
+    @Benchmark
+    public double[] decode() {
+        return GeoHashConverter.decode(hashes[nextIndex()]);
+    }
+
+    @Benchmark
+    public double[] decodeLong() {
+        GeoHashConverter.decode(longHashes[nextIndex()], precision, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[][] getBoundingBox() {
+        return GeoHashConverter.getBoundingBox(hashes[nextIndex()]);
+    }
+
+    @Benchmark
+    public double[] getBoundingBoxLong() {
+        GeoHashConverter.getBoundingBox(longHashes[nextIndex()], precision, out);
+        return out;
+    }
+}
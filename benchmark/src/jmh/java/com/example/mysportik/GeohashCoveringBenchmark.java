@@ -0,0 +1,58 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Построение покрытия круга ячейками для разных радиусов и широт
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeohashCoveringBenchmark {
+
+    public enum Location {
+        EQUATOR(0.0, 20.0),
+        NORTH_60(60.0, 30.0),
+        // Круг пересекает линию перемены дат
+        ANTIMERIDIAN(-17.0, 179.99);
+
+        final double lat;
+        final double lon;
+
+        Location(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
+        }
+    }
+
+    @Param({"EQUATOR", "NORTH_60", "ANTIMERIDIAN"})
+    public Location location;
+
+    @Param({"0.5", "5", "50"})
+    public double radiusKm;
+
+    @Param({"5", "7"})
+    public int precision;
+
+    private final LongList cells = new LongList();
+
+    @Benchmark
+    public LongList cover() {
+        cells.clear();
+        GeohashCovering.cover(location.lat, location.lon, radiusKm, precision, GeohashCovering.DEFAULT_MAX_CELLS, cells);
+        return cells;
+    }
+
+    @Benchmark
+    public LongList coverKeyRanges() {
+        cells.clear();
+        GeohashCovering.coverKeyRanges(location.lat, location.lon, radiusKm, precision, cells);
+        return cells;
+    }
+}
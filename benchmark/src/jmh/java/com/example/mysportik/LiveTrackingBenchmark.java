@@ -0,0 +1,87 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Живое отслеживание: один поток непрерывно двигает участников, два потока одновременно ищут
+// в радиусе. JMH выводит пропускную способность каждой роли отдельно; цель - не меньше
+// 100 тысяч перемещений в секунду при идущих поисках
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LiveTrackingBenchmark {
+
+    private static final int PRECISION = 7;
+    private static final int QUERIES = 256;
+
+    @Param({"10000", "100000"})
+    public int participants;
+
+    private LiveTrackingIndex index;
+    private String[] ids;
+    private double[] lats;
+    private double[] lons;
+    private final double[] queryLats = new double[QUERIES];
+    private final double[] queryLons = new double[QUERIES];
+
+    // Состояние генератора у каждого потока свое
+    @State(Scope.Thread)
+    public static class Cursor {
+        final Random random = new Random(Thread.currentThread().getId());
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Marker> markers = SyntheticMarkers.generate(SyntheticMarkers.Distribution.CLUSTERED, participants, 7);
+        index = new LiveTrackingIndex(PRECISION);
+        ids = new String[participants];
+        lats = new double[participants];
+        lons = new double[participants];
+        for (int i = 0; i < participants; i++) {
+            Marker marker = markers.get(i);
+            ids[i] = "p" + i;
+            lats[i] = marker.lat;
+            lons[i] = marker.lon;
+            index.put(new Marker(ids[i], marker.lat, marker.lon, marker.name));
+        }
+        Random random = new Random(3);
+        for (int q = 0; q < QUERIES; q++) {
+            int i = random.nextInt(participants);
+            queryLats[q] = lats[i];
+            queryLons[q] = lons[i];
+        }
+    }
+
+    // Шаг в несколько метров; изредка участник переходит в соседнюю ячейку
+    @Benchmark
+    @Group("tracking")
+    @GroupThreads(1)
+    public boolean move(Cursor cursor) {
+        int i = cursor.random.nextInt(participants);
+        lats[i] += (cursor.random.nextDouble() - 0.5) * 1e-4;
+        lons[i] += (cursor.random.nextDouble() - 0.5) * 1e-4;
+        return index.move(ids[i], lats[i], lons[i]);
+    }
+
+    @Benchmark
+    @Group("tracking")
+    @GroupThreads(2)
+    public List<Marker> search(Cursor cursor) {
+        int q = cursor.next++ & (QUERIES - 1);
+        return index.searchInRadius(queryLats[q], queryLons[q], 1);
+    }
+}
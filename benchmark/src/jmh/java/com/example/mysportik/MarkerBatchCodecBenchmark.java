@@ -0,0 +1,151 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Колоночный пакетный формат против представления "карта на метку", как в saveMarker:
+// HashMap с полными именами полей, сериализованный в JSON (так данные идут по сети в Firebase).
+// Размеры обоих представлений печатаются при подготовке
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MarkerBatchCodecBenchmark {
+
+    private static final int PRECISION = 7;
+    private static final String[] STATUSES = {"open", "closed", "hidden"};
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public SyntheticMarkers.Distribution distribution;
+
+    private GeohashStorage storage;
+    private List<Marker> markers;
+    private byte[] batch;
+    private List<Map<String, Object>> maps;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        markers = SyntheticMarkers.generate(distribution, size, 7);
+        Random random = new Random(5);
+        for (Marker marker : markers) {
+            // Ключи как у push(): 20 символов
+            marker.id = String.format("-N%018d", random.nextLong() & Long.MAX_VALUE);
+            marker.userId = "user" + random.nextInt(2000);
+            marker.status = STATUSES[random.nextInt(STATUSES.length)];
+            marker.timestamp = 1_700_000_000_000L + random.nextInt(86_400_000);
+        }
+        storage = new GeohashStorage();
+        storage.addAll(markers, PRECISION);
+        batch = encodeBatch();
+        maps = toMaps();
+        System.out.printf("%n%s %d markers: batch %d bytes (%.1f per marker), JSON maps %d bytes (%.1f per marker)%n",
+                distribution, size, batch.length, (double) batch.length / size, encodeJson().length,
+                (double) encodeJson().length / size);
+    }
+
+    @Benchmark
+    public byte[] encodeBatch() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch == null ? 1 << 20 : batch.length);
+        try (MarkerBatchWriter writer = new MarkerBatchWriter(bytes, PRECISION)) {
+            storage.writeTo(writer, PRECISION);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int decodeBatch() throws IOException {
+        int count = 0;
+        try (MarkerBatchReader reader = new MarkerBatchReader(new ByteArrayInputStream(batch))) {
+            List<Marker> block;
+            while ((block = reader.readBlock()) != null) {
+                count += block.size();
+            }
+        }
+        return count;
+    }
+
+    // Карты на каждую метку и их JSON-текст
+    @Benchmark
+    public byte[] encodeJson() {
+        StringBuilder json = new StringBuilder(size * 200);
+        json.append('{');
+        for (Map<String, Object> map : toMaps()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(map.get("key")).append("\":{");
+            boolean first = true;
+            for (Map.Entry<String, Object> field : map.entrySet()) {
+                if (field.getKey().equals("key")) {
+                    continue;
+                }
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                json.append('"').append(field.getKey()).append("\":");
+                Object value = field.getValue();
+                if (value instanceof String) {
+                    json.append('"').append(value).append('"');
+                } else {
+                    json.append(value);
+                }
+            }
+            json.append('}');
+        }
+        json.append('}');
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Чтение обратно: одна карта на дочерний узел, поля достаются по именам
+    @Benchmark
+    public List<Marker> decodeMaps() {
+        List<Marker> result = new ArrayList<>(maps.size());
+        for (Map<String, Object> map : maps) {
+            Marker marker = new Marker((String) map.get("key"), (Double) map.get("latitude"),
+                    (Double) map.get("longitude"), (String) map.get("note"));
+            marker.userId = (String) map.get("userId");
+            marker.status = (String) map.get("status");
+            marker.timestamp = (Long) map.get("timestamp");
+            result.add(marker);
+        }
+        return result;
+    }
+
+    private List<Map<String, Object>> toMaps() {
+        List<Map<String, Object>> result = new ArrayList<>(markers.size());
+        for (Marker marker : markers) {
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("key", marker.id);
+            map.put("latitude", marker.lat);
+            map.put("longitude", marker.lon);
+            map.put("geohash", GeoHashConverter.encode(marker.lat, marker.lon, MarksSource.GEOHASH_PRECISION));
+            map.put("status", marker.status);
+            map.put("userId", marker.userId);
+            map.put("note", marker.name);
+            map.put("timestamp", marker.timestamp);
+            result.add(map);
+        }
+        return result;
+    }
+}
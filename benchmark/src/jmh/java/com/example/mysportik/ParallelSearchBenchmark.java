@@ -0,0 +1,85 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Кривая масштабирования параллельного поиска и пакетного кодирования: одна и та же работа
+// в пуле fork/join из parallelism потоков. Последовательные варианты - точка отсчета
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParallelSearchBenchmark {
+
+    private static final int SIZE = 1000000;
+    private static final int PRECISION = 7;
+    // Поиск по всему городу
+    private static final double CITY_RADIUS_KM = 15;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private GeohashStorage storage;
+    private ForkJoinPool pool;
+    private double[] lats;
+    private double[] lons;
+    private long[] keys;
+    private double centerLat;
+    private double centerLon;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Marker> markers = SyntheticMarkers.generate(SyntheticMarkers.Distribution.CLUSTERED, SIZE, 7);
+        storage = new GeohashStorage();
+        storage.addAll(markers, PRECISION);
+        lats = new double[SIZE];
+        lons = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            lats[i] = markers.get(i).lat;
+            lons[i] = markers.get(i).lon;
+        }
+        keys = new long[SIZE];
+        centerLat = lats[0];
+        centerLon = lons[0];
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<Marker> searchSequential() {
+        return storage.searchInRadius(centerLat, centerLon, CITY_RADIUS_KM, PRECISION);
+    }
+
+    @Benchmark
+    public List<Marker> searchParallel() {
+        return storage.searchInRadiusParallel(centerLat, centerLon, CITY_RADIUS_KM, PRECISION, pool);
+    }
+
+    @Benchmark
+    public long[] encodeSequential() {
+        GeoHashConverter.encodeAll(lats, lons, SIZE, PRECISION, keys);
+        return keys;
+    }
+
+    // Параллельный поток, запущенный из задачи пула, выполняется в этом же пуле
+    @Benchmark
+    public long[] encodeParallel() {
+        pool.submit(() -> GeoHashConverter.parallelEncodeAll(lats, lons, SIZE, PRECISION, keys)).join();
+        return keys;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Ночная задача: все пары меток ближе 200 м и группы дубликатов ближе 50 м на миллионе меток,
+// в пуле fork/join из parallelism потоков
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProximityJoinBenchmark {
+
+    private static final int SIZE = 1000000;
+    private static final int PRECISION = 7;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public SyntheticMarkers.Distribution distribution;
+
+    private GeohashStorage storage;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        storage = new GeohashStorage();
+        storage.addAll(SyntheticMarkers.generate(distribution, SIZE, 7), PRECISION);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long pairsWithin200m() {
+        LongAdder pairs = new LongAdder();
+        storage.proximityJoin(0.2, PRECISION, pool, (a, b) -> pairs.increment());
+        return pairs.sum();
+    }
+
+    @Benchmark
+    public List<List<Marker>> duplicatesWithin50m() {
+        return storage.proximityClusters(0.05, PRECISION, pool);
+    }
+}
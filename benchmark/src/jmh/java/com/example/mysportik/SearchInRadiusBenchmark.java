@@ -0,0 +1,74 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Поиск в радиусе на равномерных и кластеризованных наборах разного размера.
+// Центры запросов берутся из самих меток, чтобы запросы попадали в заполненные области
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchInRadiusBenchmark {
+
+    private static final int QUERIES = 256;
+    private static final int PRECISION = 6;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"UNIFORM", "CLUSTERED"})
+    public SyntheticMarkers.Distribution distribution;
+
+    @Param({"1", "10"})
+    public double radiusKm;
+
+    private GeohashStorage storage;
+    private GeohashSnapshot snapshot;
+    private final double[] queryLats = new double[QUERIES];
+    private final double[] queryLons = new double[QUERIES];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Marker> markers = SyntheticMarkers.generate(distribution, size, 7);
+        storage = new GeohashStorage();
+        storage.addAll(markers, PRECISION);
+        snapshot = GeohashSnapshot.build(markers);
+        Random random = new Random(3);
+        for (int q = 0; q < QUERIES; q++) {
+            Marker center = markers.get(random.nextInt(size));
+            queryLats[q] = center.lat;
+            queryLons[q] = center.lon;
+        }
+    }
+
+    @Benchmark
+    public List<Marker> geohashStorage() {
+        int q = next++ & (QUERIES - 1);
+        return storage.searchInRadius(queryLats[q], queryLons[q], radiusKm, PRECISION);
+    }
+
+    // Прежний путь: список кандидатов и гаверсинус для каждой метки
+    @Benchmark
+    public List<Marker> geohashStorageReference() {
+        int q = next++ & (QUERIES - 1);
+        return storage.searchInRadiusReference(queryLats[q], queryLons[q], radiusKm, PRECISION);
+    }
+
+    @Benchmark
+    public List<Marker> geohashSnapshot() {
+        int q = next++ & (QUERIES - 1);
+        return snapshot.searchInRadius(queryLats[q], queryLons[q], radiusKm, PRECISION);
+    }
+}
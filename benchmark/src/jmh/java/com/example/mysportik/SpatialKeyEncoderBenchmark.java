@@ -0,0 +1,83 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Геохэш (Z-order) против кривой Гильберта в отсортированном снимке на одних и тех же метках:
+// время поиска, а при подготовке - среднее число диапазонов ключей и просмотренных меток на запрос
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialKeyEncoderBenchmark {
+
+    private static final int SIZE = 1000000;
+    private static final int QUERIES = 256;
+
+    public enum Encoding {
+        GEOHASH, HILBERT
+    }
+
+    @Param({"GEOHASH", "HILBERT"})
+    public Encoding encoding;
+
+    @Param({"CLUSTERED"})
+    public SyntheticMarkers.Distribution distribution;
+
+    @Param({"1", "10"})
+    public double radiusKm;
+
+    @Param({"6", "7"})
+    public int precision;
+
+    private GeohashSnapshot snapshot;
+    private double[][] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Marker> markers = SyntheticMarkers.generate(distribution, SIZE, 7);
+        SpatialKeyEncoder encoder = encoding == Encoding.HILBERT ? HilbertKeyEncoder.INSTANCE
+                : GeoHashConverter.INSTANCE;
+        snapshot = GeohashSnapshot.build(markers, encoder);
+        Random random = new Random(11);
+        queries = new double[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            Marker marker = markers.get(random.nextInt(SIZE));
+            queries[i] = new double[]{marker.lat, marker.lon};
+        }
+        long ranges = 0;
+        long candidates = 0;
+        long found = 0;
+        LongList keyRanges = new LongList();
+        for (double[] query : queries) {
+            keyRanges.clear();
+            GeohashCovering.coverKeyRanges(query[0], query[1], radiusKm, precision, encoder, keyRanges);
+            ranges += keyRanges.size() / 2;
+            candidates += snapshot.candidateCount(query[0], query[1], radiusKm, precision);
+            found += snapshot.searchInRadius(query[0], query[1], radiusKm, precision).size();
+        }
+        System.out.printf("%n%s r=%.0f km p=%d: %.1f ranges, %.0f scanned, %.0f found per query%n", encoding,
+                radiusKm, precision, (double) ranges / QUERIES, (double) candidates / QUERIES,
+                (double) found / QUERIES);
+    }
+
+    @Benchmark
+    public List<Marker> searchInRadius() {
+        double[] query = queries[next++ & (QUERIES - 1)];
+        List<Marker> result = new ArrayList<>();
+        snapshot.searchInRadius(query[0], query[1], radiusKm, precision, result);
+        return result;
+    }
+}
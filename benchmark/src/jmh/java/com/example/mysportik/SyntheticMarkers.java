@@ -0,0 +1,48 @@
+package com.example.mysportik;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Синтетические наборы меток для бенчмарков
+public class SyntheticMarkers {
+
+    public enum Distribution {
+        // Равномерно по прямоугольнику примерно 100 x 100 км вокруг Москвы
+        UNIFORM,
+        // Плотные скопления (парки, стадионы) по 1 км с редким фоном между ними
+        CLUSTERED
+    }
+
+    static final double MIN_LAT = 55.3;
+    static final double MIN_LON = 37.0;
+    static final double SPAN_LAT = 0.9;
+    static final double SPAN_LON = 1.6;
+    private static final int CLUSTERS = 200;
+    private static final double CLUSTER_SPREAD_DEGREES = 0.01;
+
+    public static List<Marker> generate(Distribution distribution, int count, long seed) {
+        Random random = new Random(seed);
+        double[] clusterLats = new double[CLUSTERS];
+        double[] clusterLons = new double[CLUSTERS];
+        for (int c = 0; c < CLUSTERS; c++) {
+            clusterLats[c] = MIN_LAT + random.nextDouble() * SPAN_LAT;
+            clusterLons[c] = MIN_LON + random.nextDouble() * SPAN_LON;
+        }
+        List<Marker> markers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double lat;
+            double lon;
+            if (distribution == Distribution.CLUSTERED && random.nextInt(10) != 0) {
+                int c = random.nextInt(CLUSTERS);
+                lat = clusterLats[c] + random.nextGaussian() * CLUSTER_SPREAD_DEGREES;
+                lon = clusterLons[c] + random.nextGaussian() * CLUSTER_SPREAD_DEGREES;
+            } else {
+                lat = MIN_LAT + random.nextDouble() * SPAN_LAT;
+                lon = MIN_LON + random.nextDouble() * SPAN_LON;
+            }
+            markers.add(new Marker(lat, lon, "m" + i));
+        }
+        return markers;
+    }
+}
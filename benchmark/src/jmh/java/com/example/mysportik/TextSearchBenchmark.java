@@ -0,0 +1,78 @@
+package com.example.mysportik;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Поиск по словам заметки рядом с пользователем: обратный индекс слов по ячейкам против поиска
+// в радиусе с проверкой подстроки у каждой найденной метки. Память индекса печатается при подготовке
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextSearchBenchmark {
+
+    private static final int SIZE = 200000;
+    private static final int PRECISION = 7;
+    private static final String[] COMMON = {"площадка", "турник", "брусья", "стадион", "корт", "дорожка",
+            "workout", "field"};
+
+    // Частое слово и слово, которое есть у малой доли меток
+    @Param({"турник", "фонтан"})
+    public String query;
+
+    @Param({"1", "10"})
+    public double radiusKm;
+
+    private GeohashStorage storage;
+    private MarkerTextSearch textSearch;
+    private double centerLat;
+    private double centerLon;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Marker> markers = SyntheticMarkers.generate(SyntheticMarkers.Distribution.CLUSTERED, SIZE, 7);
+        Random random = new Random(25);
+        for (Marker marker : markers) {
+            marker.name = COMMON[random.nextInt(COMMON.length)] + " " + COMMON[random.nextInt(COMMON.length)]
+                    + (random.nextInt(1000) == 0 ? " Питьевой фонтан" : "");
+        }
+        storage = new GeohashStorage();
+        storage.addAll(markers, PRECISION);
+        long before = storage.estimatedMemoryBytes();
+        textSearch = new MarkerTextSearch(storage);
+        centerLat = markers.get(0).lat;
+        centerLon = markers.get(0).lon;
+        System.out.printf("%nText index: %d bytes (%.1f per marker, +%.0f%% to storage)%n",
+                textSearch.estimatedMemoryBytes(), (double) textSearch.estimatedMemoryBytes() / SIZE,
+                100.0 * textSearch.estimatedMemoryBytes() / before);
+    }
+
+    @Benchmark
+    public List<Marker> searchText() {
+        return textSearch.search(centerLat, centerLon, radiusKm, PRECISION, query);
+    }
+
+    // Точка отсчета: все метки в радиусе и подстрока в названии каждой
+    @Benchmark
+    public List<Marker> radiusThenSubstring() {
+        List<Marker> result = new ArrayList<>();
+        for (Marker marker : storage.searchInRadius(centerLat, centerLon, radiusKm, PRECISION)) {
+            if (marker.name != null && marker.name.toLowerCase(Locale.ROOT).contains(query)) {
+                result.add(marker);
+            }
+        }
+        return result;
+    }
+}